@@ -0,0 +1,160 @@
+package com.spring.module.codegen;
+
+import org.springframework.boot.Banner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.SpringApplicationRunListener;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.aot.ContextAotProcessor;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.util.Assert;
+import org.springframework.util.FileSystemUtils;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 模块打包时执行Spring AOT处理，生成模块上下文的bean注册代码
+ * <p>
+ * 按模块的groupId和artifactId生成与运行时虚拟应用类同名、注解相同的应用类，刷新到bean定义注册完成后生成
+ * {@code <应用类>__ApplicationContextInitializer}，编译后和生成的资源一起放入模块的classes目录。
+ * 运行时发现这个初始化器时直接注册生成的bean定义，不再扫描组件、解析配置类和评估自动配置的条件
+ * <p>
+ * 构建时只能看到模块自身和构建类路径上的类，宿主应用和父模块的bean不可见，条件注解按构建时的环境固定下来。
+ * 模块依赖宿主或者父模块的bean决定装配结果时不要开启AOT，或者通过spring.module.aot-enabled关闭
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-18
+ * @since 1.0
+ */
+public class ModuleAotProcessor extends ContextAotProcessor {
+
+    public ModuleAotProcessor(Class<?> applicationClass, Settings settings) {
+        super(applicationClass, settings);
+    }
+
+    /**
+     * 参数依次为模块的groupId、artifactId、classes目录和AOT输出目录，类路径需要包含模块的编译期依赖
+     */
+    public static void main(String[] args) throws Exception {
+        Assert.isTrue(args.length == 4, "用法：ModuleAotProcessor <groupId> <artifactId> <classesDir> <outputDir>");
+        String groupId = args[0];
+        String artifactId = args[1];
+        Path classesDir = Path.of(args[2]);
+        Path outputDir = Path.of(args[3]);
+
+        String applicationClassName = groupId + "." + artifactId.replace("-", "") + ".SpringModuleApplication";
+        Path applicationSources = outputDir.resolve("application");
+        compile(writeApplicationSource(applicationClassName, applicationSources), classesDir);
+
+        Path sourceOutput = outputDir.resolve("sources");
+        Path resourceOutput = outputDir.resolve("resources");
+        Path classOutput = outputDir.resolve("classes");
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{classesDir.toUri().toURL()},
+                ModuleAotProcessor.class.getClassLoader())) {
+            Thread.currentThread().setContextClassLoader(classLoader);
+            Class<?> applicationClass = classLoader.loadClass(applicationClassName);
+            Settings settings = Settings.builder()
+                    .sourceOutput(sourceOutput)
+                    .resourceOutput(resourceOutput)
+                    .classOutput(classOutput)
+                    .groupId(groupId)
+                    .artifactId(artifactId)
+                    .build();
+            new ModuleAotProcessor(applicationClass, settings).process();
+        }
+
+        compile(listFiles(sourceOutput, ".java"), classesDir);
+        copyDirectory(resourceOutput, classesDir);
+        copyDirectory(classOutput, classesDir);
+    }
+
+    /**
+     * 按模块启动的方式运行到上下文加载完成，不刷新上下文
+     */
+    @Override
+    protected GenericApplicationContext prepareApplicationContext(Class<?> applicationClass) {
+        SpringApplication application = new SpringApplicationBuilder(applicationClass)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .logStartupInfo(false)
+                .build();
+        SpringApplicationRunListener listener = new SpringApplicationRunListener() {
+            @Override
+            public void contextLoaded(ConfigurableApplicationContext context) {
+                throw new SpringApplication.AbandonedRunException(context);
+            }
+        };
+        try {
+            SpringApplication.withHook(springApplication -> listener, () -> application.run());
+        } catch (SpringApplication.AbandonedRunException ex) {
+            if (ex.getApplicationContext() instanceof GenericApplicationContext applicationContext) {
+                return applicationContext;
+            }
+            throw new IllegalStateException("不支持AOT处理的上下文类型：" + ex.getApplicationContext());
+        }
+        throw new IllegalStateException("模块应用未加载上下文：" + applicationClass.getName());
+    }
+
+    /**
+     * 生成与运行时虚拟应用类注解相同的应用类源码
+     */
+    private static List<Path> writeApplicationSource(String applicationClassName, Path sourceDir) throws IOException {
+        int index = applicationClassName.lastIndexOf('.');
+        String packageName = applicationClassName.substring(0, index);
+        String simpleName = applicationClassName.substring(index + 1);
+        String source = "package " + packageName + ";\n\n"
+                + "@" + SpringBootApplication.class.getName() + "(excludeName = {}, nameGenerator = "
+                + "org.springframework.context.annotation.FullyQualifiedAnnotationBeanNameGenerator.class, "
+                + "proxyBeanMethods = false)\n"
+                + "public class " + simpleName + " {\n}\n";
+        Path sourceFile = sourceDir.resolve(packageName.replace('.', File.separatorChar)).resolve(simpleName + ".java");
+        Files.createDirectories(sourceFile.getParent());
+        Files.writeString(sourceFile, source, StandardCharsets.UTF_8);
+        return List.of(sourceFile);
+    }
+
+    private static void compile(List<Path> sourceFiles, Path classesDir) {
+        if (sourceFiles.isEmpty()) {
+            return;
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assert.state(compiler != null, "AOT处理需要在JDK中运行");
+        List<String> arguments = new ArrayList<>(List.of(
+                "-d", classesDir.toString(),
+                "-classpath", System.getProperty("java.class.path") + File.pathSeparator + classesDir,
+                "-encoding", StandardCharsets.UTF_8.name(),
+                "-proc:none"));
+        sourceFiles.forEach(sourceFile -> arguments.add(sourceFile.toString()));
+        int result = compiler.run(null, null, null, arguments.toArray(new String[0]));
+        Assert.state(result == 0, "编译AOT生成的源码失败：" + sourceFiles);
+    }
+
+    private static List<Path> listFiles(Path dir, String suffix) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(file -> file.toString().endsWith(suffix)).toList();
+        }
+    }
+
+    private static void copyDirectory(Path source, Path target) throws IOException {
+        if (Files.isDirectory(source)) {
+            FileSystemUtils.copyRecursively(source, target);
+        }
+    }
+
+}
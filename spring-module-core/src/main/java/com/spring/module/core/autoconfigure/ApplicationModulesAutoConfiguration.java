@@ -9,6 +9,8 @@ import com.spring.module.core.parse.DependencyAnalyzer;
 import com.spring.module.core.parse.MavenDependencyAnalyzer;
 import com.spring.module.core.parse.MavenModuleNameResolver;
 import com.spring.module.core.parse.ModuleNameResolver;
+import com.spring.module.core.process.ClassWarmupModulePostProcessor;
+import com.spring.module.core.process.ConditionCacheModulePostProcessor;
 import com.spring.module.core.process.ControllerModulePostProcessor;
 import com.spring.module.core.process.DestructionModulePostProcessor;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -73,6 +75,18 @@ public class ApplicationModulesAutoConfiguration {
             return new ControllerModulePostProcessor((ControllerHandlerMapping) controllerHandlerMapping);
         }
 
+        @Bean
+        @ConditionalOnMissingBean
+        public ClassWarmupModulePostProcessor classWarmupModulePostProcessor(ModuleProperties moduleProperties) {
+            return new ClassWarmupModulePostProcessor(moduleProperties);
+        }
+
+        @Bean
+        @ConditionalOnMissingBean
+        public ConditionCacheModulePostProcessor conditionCacheModulePostProcessor(ModuleProperties moduleProperties) {
+            return new ConditionCacheModulePostProcessor(moduleProperties);
+        }
+
     }
 
     @Configuration(proxyBeanMethods = false)
@@ -0,0 +1,106 @@
+package com.spring.module.core.autoconfigure;
+
+import com.spring.module.core.context.AnnotationApplicationModuleContext;
+import com.spring.module.core.process.ConditionCacheModulePostProcessor;
+import com.spring.module.core.process.ConditionCacheModulePostProcessor.CachedOutcome;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.autoconfigure.AutoConfigurationImportFilter;
+import org.springframework.boot.autoconfigure.AutoConfigurationMetadata;
+import org.springframework.boot.autoconfigure.condition.ConditionEvaluationReport;
+import org.springframework.boot.autoconfigure.condition.ConditionOutcome;
+import org.springframework.context.ResourceLoaderAware;
+import org.springframework.context.annotation.Condition;
+import org.springframework.core.PriorityOrdered;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.lang.NonNull;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.CollectionUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 使用{@link ConditionCacheModulePostProcessor}缓存结果的自动配置过滤器
+ * <p>
+ * 实现{@link PriorityOrdered}排在Spring Boot内置的过滤器之前，缓存中不匹配的自动配置类直接排除，
+ * 后面的过滤器跳过已经排除的类。缓存的结果以原来的条件记录到条件评估报告中，报告的内容和没有缓存时一致。
+ * 主应用上下文中不做任何处理
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-18
+ * @since 1.0
+ */
+public class CachedConditionImportFilter implements AutoConfigurationImportFilter, BeanFactoryAware,
+        ResourceLoaderAware, PriorityOrdered {
+
+    private static final Map<String, Condition> CONDITIONS = new ConcurrentHashMap<>();
+
+    private BeanFactory beanFactory;
+    private ResourceLoader resourceLoader;
+
+    @Override
+    public boolean[] match(String[] autoConfigurationClasses, AutoConfigurationMetadata autoConfigurationMetadata) {
+        boolean[] match = new boolean[autoConfigurationClasses.length];
+        Arrays.fill(match, true);
+        if (!(this.resourceLoader instanceof AnnotationApplicationModuleContext moduleContext)) {
+            return match;
+        }
+        ConditionCacheModulePostProcessor conditionCache = this.beanFactory
+                .getBeanProvider(ConditionCacheModulePostProcessor.class).getIfAvailable();
+        if (conditionCache == null) {
+            return match;
+        }
+        Map<String, List<CachedOutcome>> outcomes = conditionCache.getOutcomes(moduleContext);
+        if (CollectionUtils.isEmpty(outcomes)) {
+            return match;
+        }
+
+        ConditionEvaluationReport report = this.beanFactory instanceof ConfigurableListableBeanFactory listableBeanFactory ?
+                ConditionEvaluationReport.get(listableBeanFactory) : null;
+        for (int i = 0; i < autoConfigurationClasses.length; i++) {
+            String autoConfigurationClass = autoConfigurationClasses[i];
+            List<CachedOutcome> cachedOutcomes = autoConfigurationClass != null ? outcomes.get(autoConfigurationClass) : null;
+            if (CollectionUtils.isEmpty(cachedOutcomes)) {
+                continue;
+            }
+            match[i] = false;
+            if (report != null) {
+                for (CachedOutcome cachedOutcome : cachedOutcomes) {
+                    report.recordConditionEvaluation(autoConfigurationClass, getCondition(cachedOutcome.conditionClass()),
+                            ConditionOutcome.noMatch(cachedOutcome.message()));
+                }
+            }
+        }
+        return match;
+    }
+
+    /**
+     * 报告按条件类分组展示，使用原来的条件类实例记录
+     */
+    private static Condition getCondition(String conditionClass) {
+        return CONDITIONS.computeIfAbsent(conditionClass, className -> BeanUtils.instantiateClass(
+                ClassUtils.resolveClassName(className, ConditionEvaluationReport.class.getClassLoader()), Condition.class));
+    }
+
+    @Override
+    public void setBeanFactory(@NonNull BeanFactory beanFactory) throws BeansException {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public void setResourceLoader(@NonNull ResourceLoader resourceLoader) {
+        this.resourceLoader = resourceLoader;
+    }
+
+    @Override
+    public int getOrder() {
+        return HIGHEST_PRECEDENCE;
+    }
+
+}
@@ -1,5 +1,7 @@
 package com.spring.module.core.autoconfigure;
 
+import com.spring.module.core.context.SharedMetadataReaderCache;
+import com.spring.module.core.loading.JarFilePool;
 import com.spring.module.tools.utils.JarFilePaths;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -8,6 +10,7 @@ import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 
 /**
  * 模块应用的配置
@@ -24,6 +27,128 @@ public class ModuleProperties implements InitializingBean {
      */
     private String packagesPath = "E:\\spring-module";
 
+    /**
+     * 模块包的加载方式，默认解压到{@link #packagesPath}后加载
+     */
+    private LoadingMode loadingMode = LoadingMode.EXTRACT;
+
+    /**
+     * 是否开启lib依赖的共享存储，内容相同的JAR包在{@link #packagesPath}下只存一份
+     */
+    private boolean sharedLibraries = false;
+
+    /**
+     * 是否开启共享依赖类加载器，没有父子关系的模块依赖相同坐标的JAR包时只定义一次类
+     */
+    private boolean sharedClassLoaders = false;
+
+    /**
+     * 是否使用内存映射读取模块JAR包的类文件，模块JAR包的类文件未压缩存储时效果最好
+     */
+    private boolean memoryMappedJars = false;
+
+    /**
+     * 所有模块类加载器同时打开的JAR包数量上限，超过后关闭最久未使用的JAR包
+     */
+    private int maxOpenJarFiles = JarFilePool.DEFAULT_MAX_OPEN_FILES;
+
+    /**
+     * 模块类预热的方式，默认不预热
+     */
+    private ClassWarmup classWarmup = ClassWarmup.NONE;
+
+    /**
+     * 注册模块接口前等待类预热完成的最长时间
+     */
+    private Duration warmupTimeout = Duration.ofSeconds(30);
+
+    /**
+     * 是否要求校验模块包的摘要，开启后安装时既没有提供预期的摘要、模块包中也没有摘要清单的模块包会被拒绝
+     */
+    private boolean requireDigest = false;
+
+    /**
+     * 异步安装、卸载模块的线程数
+     */
+    private int installThreads = 2;
+
+    /**
+     * 异步安装、卸载模块的等待队列长度，超过后新提交的任务直接失败
+     */
+    private int installQueueCapacity = 32;
+
+    /**
+     * 批量安装模块时并行刷新模块上下文的最大线程数
+     */
+    private int batchParallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 应用关闭时等待单个模块关闭的最长时间，超时的模块记录日志后跳过
+     */
+    private Duration destroyTimeout = Duration.ofSeconds(30);
+
+    /**
+     * 卸载模块时停止路由后等待正在处理的请求结束的最长时间，超时后继续关闭模块。升级后的旧版本在后台等待
+     */
+    private Duration drainTimeout = Duration.ofSeconds(30);
+
+    /**
+     * 灰度发布时携带粘性标识的请求头，同一个标识总是访问同一个版本
+     */
+    private String canaryStickyHeader = "X-Canary-Key";
+
+    /**
+     * 灰度发布时携带粘性标识的Cookie，请求头没有标识时使用，默认不读取Cookie
+     */
+    private String canaryStickyCookie;
+
+    /**
+     * 新版本至少处理多少请求后才评估灰度指标
+     */
+    private long canaryMinRequests = 100;
+
+    /**
+     * 新版本处理多少请求且指标正常后自动全量发布，小于等于0时不自动全量发布
+     */
+    private long canaryPromoteRequests = 1000;
+
+    /**
+     * 新版本错误率比旧版本最多高出的比例，超过后自动回滚
+     */
+    private double canaryMaxErrorRateIncrease = 0.01;
+
+    /**
+     * 新版本平均耗时最多是旧版本的倍数，超过后自动回滚
+     */
+    private double canaryMaxLatencyRatio = 1.5;
+
+    /**
+     * 评估灰度指标的间隔
+     */
+    private Duration canaryEvaluationInterval = Duration.ofSeconds(10);
+
+    /**
+     * 模块包中有构建时AOT生成的bean注册代码时是否使用，使用时跳过组件扫描和自动配置的条件评估。
+     * 条件注解在构建时按模块自身的类路径评估，依赖主应用bean的条件（例如{@code @ConditionalOnMissingBean}）结果可能与运行时不同，
+     * 确认模块的条件不依赖主应用后再开启；依赖其他模块的模块总是在运行时刷新
+     */
+    private boolean aotEnabled = false;
+
+    /**
+     * 模块上下文是否排除主应用和父模块已经应用的自动配置，开启后模块只评估自己独有的自动配置，共用父上下文的基础设施bean
+     */
+    private boolean excludeParentAutoConfigurations = false;
+
+    /**
+     * 自动配置类存在性条件的缓存方式，默认只在内存中缓存
+     */
+    private ConditionCache conditionCache = ConditionCache.MEMORY;
+
+    /**
+     * 模块上下文共享的类元数据缓存数量上限，超过后淘汰最久未使用的类
+     */
+    private int metadataReaderCacheSize = SharedMetadataReaderCache.DEFAULT_MAX_SIZE;
+
     public String getPackagesPath() {
         return packagesPath;
     }
@@ -32,6 +157,198 @@ public class ModuleProperties implements InitializingBean {
         this.packagesPath = packagesPath;
     }
 
+    public LoadingMode getLoadingMode() {
+        return loadingMode;
+    }
+
+    public void setLoadingMode(LoadingMode loadingMode) {
+        this.loadingMode = loadingMode;
+    }
+
+    public boolean isSharedLibraries() {
+        return sharedLibraries;
+    }
+
+    public void setSharedLibraries(boolean sharedLibraries) {
+        this.sharedLibraries = sharedLibraries;
+    }
+
+    public boolean isSharedClassLoaders() {
+        return sharedClassLoaders;
+    }
+
+    public void setSharedClassLoaders(boolean sharedClassLoaders) {
+        this.sharedClassLoaders = sharedClassLoaders;
+    }
+
+    public boolean isMemoryMappedJars() {
+        return memoryMappedJars;
+    }
+
+    public void setMemoryMappedJars(boolean memoryMappedJars) {
+        this.memoryMappedJars = memoryMappedJars;
+    }
+
+    public int getMaxOpenJarFiles() {
+        return maxOpenJarFiles;
+    }
+
+    public void setMaxOpenJarFiles(int maxOpenJarFiles) {
+        this.maxOpenJarFiles = maxOpenJarFiles;
+    }
+
+    public ClassWarmup getClassWarmup() {
+        return classWarmup;
+    }
+
+    public void setClassWarmup(ClassWarmup classWarmup) {
+        this.classWarmup = classWarmup;
+    }
+
+    public Duration getWarmupTimeout() {
+        return warmupTimeout;
+    }
+
+    public void setWarmupTimeout(Duration warmupTimeout) {
+        this.warmupTimeout = warmupTimeout;
+    }
+
+    public boolean isRequireDigest() {
+        return requireDigest;
+    }
+
+    public void setRequireDigest(boolean requireDigest) {
+        this.requireDigest = requireDigest;
+    }
+
+    public int getInstallThreads() {
+        return installThreads;
+    }
+
+    public void setInstallThreads(int installThreads) {
+        this.installThreads = installThreads;
+    }
+
+    public int getInstallQueueCapacity() {
+        return installQueueCapacity;
+    }
+
+    public void setInstallQueueCapacity(int installQueueCapacity) {
+        this.installQueueCapacity = installQueueCapacity;
+    }
+
+    public int getBatchParallelism() {
+        return batchParallelism;
+    }
+
+    public void setBatchParallelism(int batchParallelism) {
+        this.batchParallelism = batchParallelism;
+    }
+
+    public Duration getDestroyTimeout() {
+        return destroyTimeout;
+    }
+
+    public void setDestroyTimeout(Duration destroyTimeout) {
+        this.destroyTimeout = destroyTimeout;
+    }
+
+    public Duration getDrainTimeout() {
+        return drainTimeout;
+    }
+
+    public void setDrainTimeout(Duration drainTimeout) {
+        this.drainTimeout = drainTimeout;
+    }
+
+    public String getCanaryStickyHeader() {
+        return canaryStickyHeader;
+    }
+
+    public void setCanaryStickyHeader(String canaryStickyHeader) {
+        this.canaryStickyHeader = canaryStickyHeader;
+    }
+
+    public String getCanaryStickyCookie() {
+        return canaryStickyCookie;
+    }
+
+    public void setCanaryStickyCookie(String canaryStickyCookie) {
+        this.canaryStickyCookie = canaryStickyCookie;
+    }
+
+    public long getCanaryMinRequests() {
+        return canaryMinRequests;
+    }
+
+    public void setCanaryMinRequests(long canaryMinRequests) {
+        this.canaryMinRequests = canaryMinRequests;
+    }
+
+    public long getCanaryPromoteRequests() {
+        return canaryPromoteRequests;
+    }
+
+    public void setCanaryPromoteRequests(long canaryPromoteRequests) {
+        this.canaryPromoteRequests = canaryPromoteRequests;
+    }
+
+    public double getCanaryMaxErrorRateIncrease() {
+        return canaryMaxErrorRateIncrease;
+    }
+
+    public void setCanaryMaxErrorRateIncrease(double canaryMaxErrorRateIncrease) {
+        this.canaryMaxErrorRateIncrease = canaryMaxErrorRateIncrease;
+    }
+
+    public double getCanaryMaxLatencyRatio() {
+        return canaryMaxLatencyRatio;
+    }
+
+    public void setCanaryMaxLatencyRatio(double canaryMaxLatencyRatio) {
+        this.canaryMaxLatencyRatio = canaryMaxLatencyRatio;
+    }
+
+    public Duration getCanaryEvaluationInterval() {
+        return canaryEvaluationInterval;
+    }
+
+    public void setCanaryEvaluationInterval(Duration canaryEvaluationInterval) {
+        this.canaryEvaluationInterval = canaryEvaluationInterval;
+    }
+
+    public boolean isAotEnabled() {
+        return aotEnabled;
+    }
+
+    public void setAotEnabled(boolean aotEnabled) {
+        this.aotEnabled = aotEnabled;
+    }
+
+    public boolean isExcludeParentAutoConfigurations() {
+        return excludeParentAutoConfigurations;
+    }
+
+    public void setExcludeParentAutoConfigurations(boolean excludeParentAutoConfigurations) {
+        this.excludeParentAutoConfigurations = excludeParentAutoConfigurations;
+    }
+
+    public ConditionCache getConditionCache() {
+        return conditionCache;
+    }
+
+    public void setConditionCache(ConditionCache conditionCache) {
+        this.conditionCache = conditionCache;
+    }
+
+    public int getMetadataReaderCacheSize() {
+        return metadataReaderCacheSize;
+    }
+
+    public void setMetadataReaderCacheSize(int metadataReaderCacheSize) {
+        this.metadataReaderCacheSize = metadataReaderCacheSize;
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception {
         Path path = Paths.get(packagesPath);
@@ -44,4 +361,54 @@ public class ModuleProperties implements InitializingBean {
             Files.createDirectories(path);
         }
     }
+
+    public enum LoadingMode {
+        /**
+         * 解压整个模块包，类加载器读取解压后的JAR包
+         */
+        EXTRACT,
+
+        /**
+         * 只解压依赖描述和配置文件，类加载器直接读取模块包中嵌套的JAR包
+         */
+        NESTED,
+
+    }
+
+    public enum ClassWarmup {
+        /**
+         * 不预热
+         */
+        NONE,
+
+        /**
+         * 模块目录下没有类清单时记录模块定义的类，存在时按类清单并行预加载
+         */
+        AUTO,
+
+        /**
+         * 每次安装都重新记录类清单，已有的类清单仍会用于预加载
+         */
+        RECORD,
+
+    }
+
+    public enum ConditionCache {
+        /**
+         * 不缓存
+         */
+        NONE,
+
+        /**
+         * 在内存中缓存，应用重启后失效
+         */
+        MEMORY,
+
+        /**
+         * 同时写入模块目录下的条件缓存，应用重启后重新安装模块时仍然有效
+         */
+        PERSISTENT,
+
+    }
+
 }
@@ -51,7 +51,12 @@ public abstract class AbstractAnnotationApplicationModuleContext extends Annotat
 
     @Override
     public void refresh() throws BeansException, IllegalStateException {
-        super.refresh();
+        try {
+            super.refresh();
+        } catch (RuntimeException | Error e) {
+            this.invokeModuleFailurePostProcessors(e);
+            throw e;
+        }
         this.loadBeansIfNecessary();
         this.invokeModulePostProcessors(this);
     }
@@ -148,6 +153,22 @@ public abstract class AbstractAnnotationApplicationModuleContext extends Annotat
         }
     }
 
+    /**
+     * 执行模块刷新失败的后置操作
+     *
+     * @param ex 刷新失败的异常
+     */
+    protected void invokeModuleFailurePostProcessors(Throwable ex) {
+        ApplicationContext applicationContext = this.getRootApplicationContext();
+        for (ModulePostProcessor modulePostProcessor : this.collectModulePostProcessors(applicationContext)) {
+            try {
+                modulePostProcessor.postProcessModuleFailure(this, ex);
+            } catch (Exception e) {
+                LOG.error("模块[" + this + "]后置处理器[" + modulePostProcessor + "]执行失败操作异常", e);
+            }
+        }
+    }
+
     /**
      * 处理模块销毁
      */
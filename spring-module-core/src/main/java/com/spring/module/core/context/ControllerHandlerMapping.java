@@ -1,21 +1,52 @@
 package com.spring.module.core.context;
 
+import com.spring.module.core.module.ModuleCanary;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.http.server.PathContainer;
 import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.util.StringValueResolver;
+import org.springframework.web.cors.CorsConfiguration;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerExecutionChain;
+import org.springframework.web.servlet.HandlerInterceptor;
 import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
 import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+import org.springframework.web.util.ServletRequestPathUtils;
+import org.springframework.web.util.pattern.PathPatternParser;
 
 import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
 import java.util.function.Predicate;
 
 /**
  * 自定义手动注册controller路由
+ * <p>
+ * 模块升级时新版本的控制器先不注册，新版本刷新成功后在写锁内一次性注销旧版本的路由、注册新版本的路由。
+ * 查找路由时乐观读，没有切换发生时不加锁，与切换重叠的查找在读锁内重试，不会因为切换的中间状态返回404
+ * <p>
+ * 灰度发布时新版本与旧版本相同的路由不注册，记录在不可变的灰度路由表中，查找到旧版本的处理方法后按灰度权重替换为新版本的处理方法，
+ * 灰度路由表整体替换，查找时只读取一次volatile字段
+ * <p>
+ * 每个模块类加载器对应一个正在处理的请求计数，卸载模块时先注销路由并暂停，等待计数归零后再关闭模块
+ * <p>
+ * 模块的路由不注册到全局的路由表，每个模块类加载器有独立的路由表，由路由开头的静态路径段组成的字典树索引。
+ * 查找时先按请求路径找到可能命中的模块路由表，和应用自身的路由表一起查找，多个路由表都命中时按{@link RequestMappingInfo}的比较规则
+ * 选择最具体的路由，与全局路由表的结果一致，模块的{@code /{name}}、{@code /**}等路由不会遮挡应用更具体的路由。
+ * 模块越多时单次查找的路由数量不会增加，注册、注销一个模块的路由只锁住该模块的路由表，不阻塞其他模块的注册和查找。
+ * 同一个路由在所有路由表中仍然只能注册一次，注册时先在{@link #moduleMappings}中占用
  *
  * @author <a href="mailto:545896770@qq.com">DearYang</a>
  * @date 2024-01-03
@@ -25,7 +56,27 @@ import java.util.function.Predicate;
 public class ControllerHandlerMapping extends RequestMappingHandlerMapping {
 
     private static final Log LOG = LogFactory.getLog(ControllerHandlerMapping.class);
+    private static final String CANARY_STATS_ATTRIBUTE = ControllerHandlerMapping.class.getName() + ".canaryStats";
+    private static final String CANARY_START_ATTRIBUTE = ControllerHandlerMapping.class.getName() + ".canaryStart";
+    private static final String INFLIGHT_ATTRIBUTE = ControllerHandlerMapping.class.getName() + ".inflight";
+    private static final String MATCH_ATTRIBUTE = ControllerHandlerMapping.class.getName() + ".match";
+
     private final Map<Class<?>, List<RequestMappingInfo>> requestMappingInfos = new ConcurrentHashMap<>();
+    private final StampedLock switchLock = new StampedLock();
+    private final Set<ClassLoader> standbyClassLoaders = ConcurrentHashMap.newKeySet();
+    private final HandlerInterceptor canaryStatsInterceptor = new CanaryStatsInterceptor();
+    private final Map<ClassLoader, InflightRequests> inflightRequests = new ConcurrentHashMap<>();
+    private final Map<ClassLoader, ModuleMappingRegistry> moduleRegistries = new ConcurrentHashMap<>();
+    /**
+     * 模块路由属于哪个路由表，注册前占用，注销时在路由表的锁内最后移除
+     */
+    private final Map<RequestMappingInfo, ModuleMappingRegistry> moduleMappings = new ConcurrentHashMap<>();
+    private final ModuleRouteTrie<ModuleMappingRegistry> routeTrie = new ModuleRouteTrie<>();
+    private StringValueResolver embeddedValueResolver;
+    /**
+     * 灰度路由表，key为旧版本的处理方法，只在{@link #switchLock}的写锁内替换
+     */
+    private volatile Map<HandlerMethod, CanaryRoute> canaryRoutes = Map.of();
 
     /**
      * 注册controller路由
@@ -34,17 +85,615 @@ public class ControllerHandlerMapping extends RequestMappingHandlerMapping {
      */
     public void registerController(@NonNull Object controller, Predicate<Object> filter) {
         if (filter.test(controller)) {
+            this.trackModule(ClassUtils.getUserClass(controller).getClassLoader());
+            if (standbyClassLoaders.contains(controller.getClass().getClassLoader())) {
+                LOG.info("控制器等待切换：" + controller);
+                return;
+            }
             this.detectHandlerMethods(controller);
             LOG.info("控制器注册成功：" + controller);
         }
     }
 
+    /**
+     * 类加载器定义的控制器不注册路由，等待{@link #switchControllers(ClassLoader, Collection)}切换
+     *
+     * @param classLoader 新版本模块的类加载器
+     */
+    public void standby(ClassLoader classLoader) {
+        standbyClassLoaders.add(classLoader);
+    }
+
+    /**
+     * 取消等待切换，之后类加载器定义的控制器正常注册路由
+     *
+     * @param classLoader 新版本模块的类加载器
+     */
+    public void cancelStandby(ClassLoader classLoader) {
+        standbyClassLoaders.remove(classLoader);
+    }
+
+    /**
+     * 把路由从旧版本模块的控制器切换到新版本模块的控制器，同时移除旧版本的灰度路由，切换失败时恢复旧版本的路由
+     *
+     * @param oldClassLoader 旧版本模块的类加载器
+     * @param controllers    新版本模块的控制器
+     */
+    public void switchControllers(ClassLoader oldClassLoader, Collection<Object> controllers) {
+        // 灰度期间新版本已经注册了新增的路由，和旧版本的路由一起替换
+        Set<Class<?>> controllerClasses = new HashSet<>();
+        controllers.forEach(controller -> controllerClasses.add(ClassUtils.getUserClass(controller)));
+        Map<Class<?>, List<RequestMappingInfo>> oldMappingInfos = new HashMap<>();
+        for (Class<?> controllerClass : new ArrayList<>(requestMappingInfos.keySet())) {
+            if (controllerClass.getClassLoader() == oldClassLoader || controllerClasses.contains(controllerClass)) {
+                List<RequestMappingInfo> mappingInfos = requestMappingInfos.remove(controllerClass);
+                if (mappingInfos != null) {
+                    oldMappingInfos.put(controllerClass, mappingInfos);
+                }
+            }
+        }
+        // 在锁外解析新版本的路由，锁内只修改注册表
+        Map<Object, Map<Method, RequestMappingInfo>> newMappings = new LinkedHashMap<>();
+        controllers.forEach(controller -> {
+            this.trackModule(ClassUtils.getUserClass(controller).getClassLoader());
+            newMappings.put(controller, this.selectMappings(controller));
+        });
+        Map<RequestMappingInfo, HandlerMethod> handlerMethods = this.getHandlerMethods();
+
+        long stamp = switchLock.writeLock();
+        try {
+            oldMappingInfos.values().forEach(mappingInfos -> mappingInfos.forEach(this::unregisterMapping));
+            List<RequestMappingInfo> registered = new ArrayList<>();
+            try {
+                newMappings.forEach((controller, mappings) -> mappings.forEach((method, mapping) -> {
+                    this.registerHandlerMethod(controller, this.selectInvocableMethod(controller, method), mapping);
+                    registered.add(mapping);
+                }));
+            } catch (RuntimeException e) {
+                registered.forEach(this::unregisterMapping);
+                controllerClasses.forEach(requestMappingInfos::remove);
+                oldMappingInfos.forEach((controllerClass, mappingInfos) -> {
+                    mappingInfos.forEach(mapping -> {
+                        // 灰度中没有注册的路由不需要恢复
+                        HandlerMethod handlerMethod = handlerMethods.get(mapping);
+                        if (handlerMethod == null) {
+                            return;
+                        }
+                        try {
+                            this.registerHandlerMethod(handlerMethod.getBean(), handlerMethod.getMethod(), mapping);
+                        } catch (RuntimeException ex) {
+                            e.addSuppressed(ex);
+                        }
+                    });
+                    requestMappingInfos.put(controllerClass, mappingInfos);
+                });
+                throw e;
+            }
+            this.removeCanaryRoutes(route -> route.baseClassLoader() == oldClassLoader);
+        } finally {
+            switchLock.unlockWrite(stamp);
+        }
+        LOG.info("控制器切换成功：" + oldMappingInfos.keySet() + " -> " + newMappings.keySet());
+    }
+
+    /**
+     * 开始灰度：新版本中与旧版本相同的路由加入灰度路由表，新增的路由直接注册
+     *
+     * @param canary          灰度发布
+     * @param baseClassLoader 旧版本模块的类加载器
+     * @param controllers     新版本模块的控制器
+     */
+    public void startCanary(ModuleCanary canary, ClassLoader baseClassLoader, Collection<Object> controllers) {
+        Map<Object, Map<Method, RequestMappingInfo>> newMappings = new LinkedHashMap<>();
+        controllers.forEach(controller -> {
+            this.trackModule(ClassUtils.getUserClass(controller).getClassLoader());
+            newMappings.put(controller, this.selectMappings(controller));
+        });
+        Map<RequestMappingInfo, HandlerMethod> handlerMethods = this.getHandlerMethods();
+
+        long stamp = switchLock.writeLock();
+        try {
+            Map<HandlerMethod, CanaryRoute> routes = new HashMap<>(this.canaryRoutes);
+            List<RequestMappingInfo> added = new ArrayList<>();
+            try {
+                newMappings.forEach((controller, mappings) -> {
+                    // 替换为副本后再修改，不影响其他线程正在遍历的列表；控制器的路由可能已经被并发注销
+                    List<RequestMappingInfo> registered = requestMappingInfos.computeIfPresent(
+                            ClassUtils.getUserClass(controller), (key, mappingInfos) -> new ArrayList<>(mappingInfos));
+                    mappings.forEach((method, mapping) -> {
+                        Method invocableMethod = this.selectInvocableMethod(controller, method);
+                        HandlerMethod baseHandlerMethod = handlerMethods.get(mapping);
+                        if (baseHandlerMethod != null && baseHandlerMethod.getBeanType().getClassLoader() == baseClassLoader) {
+                            routes.put(baseHandlerMethod, new CanaryRoute(this.createHandlerMethod(controller, invocableMethod),
+                                    canary, baseClassLoader));
+                            // 灰度的路由没有注册，注销新版本的控制器时不能注销旧版本的路由
+                            if (registered != null) {
+                                registered.remove(mapping);
+                            }
+                        } else {
+                            this.registerHandlerMethod(controller, invocableMethod, mapping);
+                            added.add(mapping);
+                        }
+                    });
+                });
+            } catch (RuntimeException e) {
+                // 新增的路由冲突时撤销已经注册的部分，灰度路由表还没有发布
+                added.forEach(this::unregisterMapping);
+                newMappings.keySet().forEach(controller -> requestMappingInfos.remove(ClassUtils.getUserClass(controller)));
+                throw e;
+            }
+            this.canaryRoutes = Map.copyOf(routes);
+        } finally {
+            switchLock.unlockWrite(stamp);
+        }
+        LOG.info("灰度路由注册成功：" + canary);
+    }
+
+    /**
+     * 结束灰度，移除灰度路由表中的路由，新版本新增的路由在注销新版本的控制器时注销
+     *
+     * @param canary 灰度发布
+     */
+    public void stopCanary(ModuleCanary canary) {
+        long stamp = switchLock.writeLock();
+        try {
+            this.removeCanaryRoutes(route -> route.canary() == canary);
+        } finally {
+            switchLock.unlockWrite(stamp);
+        }
+        LOG.info("灰度路由注销成功：" + canary);
+    }
+
+    /**
+     * 停止把请求路由到类加载器定义的控制器：注销路由和相关的灰度路由，已经查找到处理方法但还没开始处理的请求返回503
+     *
+     * @param classLoader 模块类加载器
+     */
+    public void suspendControllers(ClassLoader classLoader) {
+        long stamp = switchLock.writeLock();
+        try {
+            this.doUnregisterControllers(classLoader);
+            this.removeCanaryRoutes(route -> route.baseClassLoader() == classLoader
+                    || route.handlerMethod().getBeanType().getClassLoader() == classLoader);
+        } finally {
+            switchLock.unlockWrite(stamp);
+        }
+        InflightRequests requests = inflightRequests.get(classLoader);
+        if (requests != null) {
+            requests.suspend();
+        }
+    }
+
+    /**
+     * 等待类加载器定义的控制器正在处理的请求结束，必须先调用{@link #suspendControllers(ClassLoader)}
+     *
+     * @param classLoader 模块类加载器
+     * @param timeout     最长等待时间
+     * @param unit        时间单位
+     * @return 请求在等待时间内全部结束时返回true
+     * @throws InterruptedException 等待被中断
+     */
+    public boolean awaitControllers(ClassLoader classLoader, long timeout, TimeUnit unit) throws InterruptedException {
+        InflightRequests requests = inflightRequests.get(classLoader);
+        if (requests == null || requests.await(timeout, unit)) {
+            return true;
+        }
+        LOG.warn("模块控制器还有" + requests.count() + "个请求没有处理完成：" + classLoader);
+        return false;
+    }
+
+    /**
+     * 注销类加载器定义的所有控制器路由，移除模块的路由表，不再统计正在处理的请求
+     *
+     * @param classLoader 模块类加载器
+     */
+    public void unregisterControllers(ClassLoader classLoader) {
+        long stamp = switchLock.writeLock();
+        try {
+            this.doUnregisterControllers(classLoader);
+        } finally {
+            switchLock.unlockWrite(stamp);
+        }
+        moduleRegistries.remove(classLoader);
+        inflightRequests.remove(classLoader);
+    }
+
+    private void doUnregisterControllers(ClassLoader classLoader) {
+        for (Class<?> controllerClass : new ArrayList<>(requestMappingInfos.keySet())) {
+            if (controllerClass.getClassLoader() == classLoader) {
+                this.doUnregisterController(controllerClass);
+            }
+        }
+    }
+
+    /**
+     * 创建模块的路由表和请求计数，之后类加载器定义的控制器注册到模块的路由表
+     */
+    private void trackModule(ClassLoader classLoader) {
+        moduleRegistries.computeIfAbsent(classLoader, key -> this.createModuleRegistry());
+        inflightRequests.computeIfAbsent(classLoader, key -> new InflightRequests());
+    }
+
+    private ModuleMappingRegistry createModuleRegistry() {
+        ModuleMappingRegistry registry = new ModuleMappingRegistry();
+        registry.setUrlPathHelper(this.getUrlPathHelper());
+        registry.setPathMatcher(this.getPathMatcher());
+        registry.setPatternParser(this.getPatternParser());
+        registry.setContentNegotiationManager(this.getContentNegotiationManager());
+        if (this.embeddedValueResolver != null) {
+            registry.setEmbeddedValueResolver(this.embeddedValueResolver);
+        }
+        return registry;
+    }
+
+    /**
+     * 模块的控制器注册到模块的路由表，并按路由前缀加入字典树。
+     * 先在{@link #moduleMappings}中占用路由，保证同一个路由在所有模块的路由表中只注册一次，之后只锁住当前模块的路由表
+     */
+    @Override
+    protected void registerHandlerMethod(@NonNull Object handler, @NonNull Method method,
+            @NonNull RequestMappingInfo mapping) {
+        ModuleMappingRegistry registry = handler instanceof String ? null
+                : moduleRegistries.get(ClassUtils.getUserClass(handler).getClassLoader());
+        if (registry == null) {
+            HandlerMethod existing = this.findModuleHandlerMethod(mapping);
+            if (existing != null) {
+                throw this.ambiguousMapping(handler, method, mapping, existing);
+            }
+            super.registerHandlerMethod(handler, method, mapping);
+            return;
+        }
+
+        ModuleMappingRegistry owner = moduleMappings.putIfAbsent(mapping, registry);
+        if (owner != null) {
+            throw this.ambiguousMapping(handler, method, mapping, owner.getHandlerMethods().get(mapping));
+        }
+        try {
+            HandlerMethod existing = super.getHandlerMethods().get(mapping);
+            if (existing != null) {
+                throw this.ambiguousMapping(handler, method, mapping, existing);
+            }
+            synchronized (registry) {
+                registry.register(handler, method, mapping);
+                routeTrie.add(this.routePrefixes(mapping), registry);
+            }
+        } catch (RuntimeException e) {
+            moduleMappings.remove(mapping, registry);
+            throw e;
+        }
+    }
+
+    private IllegalStateException ambiguousMapping(Object handler, Method method, RequestMappingInfo mapping,
+            @Nullable HandlerMethod existing) {
+        return new IllegalStateException("Ambiguous mapping. Cannot map '" + handler + "' method \n"
+                + method + "\nto " + mapping + ": There is already '"
+                + (existing != null ? existing.getBean() + "' bean method\n" + existing : "another module' method")
+                + " mapped.");
+    }
+
+    @Override
+    public void unregisterMapping(@NonNull RequestMappingInfo mapping) {
+        ModuleMappingRegistry registry = moduleMappings.get(mapping);
+        if (registry == null) {
+            super.unregisterMapping(mapping);
+            return;
+        }
+        synchronized (registry) {
+            // 路由表注销完成后才释放占用，其他模块不会在注销期间注册同一个路由
+            if (moduleMappings.get(mapping) == registry) {
+                registry.unregisterMapping(mapping);
+                routeTrie.remove(this.routePrefixes(mapping), registry);
+                moduleMappings.remove(mapping, registry);
+            }
+        }
+    }
+
+    @Nullable
+    private HandlerMethod findModuleHandlerMethod(RequestMappingInfo mapping) {
+        ModuleMappingRegistry registry = moduleMappings.get(mapping);
+        return registry == null ? null : registry.getHandlerMethods().get(mapping);
+    }
+
+    /**
+     * 应用自身和所有模块的路由
+     */
+    @NonNull
+    @Override
+    public Map<RequestMappingInfo, HandlerMethod> getHandlerMethods() {
+        Map<RequestMappingInfo, HandlerMethod> handlerMethods = new LinkedHashMap<>(super.getHandlerMethods());
+        moduleRegistries.values().forEach(registry -> handlerMethods.putAll(registry.getHandlerMethods()));
+        return Collections.unmodifiableMap(handlerMethods);
+    }
+
+    private List<List<String>> routePrefixes(RequestMappingInfo mapping) {
+        Set<String> patterns = mapping.getPatternValues();
+        if (patterns.isEmpty()) {
+            return List.of(List.of());
+        }
+        boolean caseSensitive = this.isCaseSensitive();
+        List<List<String>> prefixes = new ArrayList<>(patterns.size());
+        for (String pattern : patterns) {
+            List<String> prefix = ModuleRouteTrie.staticPrefix(pattern, caseSensitive);
+            if (!prefixes.contains(prefix)) {
+                prefixes.add(prefix);
+            }
+        }
+        return prefixes;
+    }
+
+    /**
+     * 请求路径的路径段，与路由匹配时使用的路径一致
+     */
+    private List<String> lookupSegments(HttpServletRequest request) {
+        boolean caseSensitive = this.isCaseSensitive();
+        List<String> segments = new ArrayList<>();
+        if (this.usesPathPatterns()) {
+            PathContainer path = ServletRequestPathUtils.getParsedRequestPath(request).pathWithinApplication();
+            for (PathContainer.Element element : path.elements()) {
+                if (element instanceof PathContainer.PathSegment segment && !segment.valueToMatch().isEmpty()) {
+                    String value = segment.valueToMatch();
+                    segments.add(caseSensitive ? value : value.toLowerCase(Locale.ROOT));
+                }
+            }
+        } else {
+            for (String segment : StringUtils.tokenizeToStringArray(this.initLookupPath(request), "/")) {
+                segments.add(caseSensitive ? segment : segment.toLowerCase(Locale.ROOT));
+            }
+        }
+        return segments;
+    }
+
+    private boolean isCaseSensitive() {
+        PathPatternParser patternParser = this.getPatternParser();
+        return patternParser == null || patternParser.isCaseSensitive();
+    }
+
+    @Nullable
+    private ModuleMappingRegistry findModuleRegistry(Object handler) {
+        if (moduleRegistries.isEmpty() || !(handler instanceof HandlerMethod handlerMethod)) {
+            return null;
+        }
+        return moduleRegistries.get(handlerMethod.getBeanType().getClassLoader());
+    }
+
+    @Override
+    protected boolean hasCorsConfigurationSource(@NonNull Object handler) {
+        if (super.hasCorsConfigurationSource(handler)) {
+            return true;
+        }
+        ModuleMappingRegistry registry = this.findModuleRegistry(handler);
+        return registry != null && registry.hasCorsConfiguration((HandlerMethod) handler);
+    }
+
+    @Override
+    protected CorsConfiguration getCorsConfiguration(@NonNull Object handler, @NonNull HttpServletRequest request) {
+        CorsConfiguration corsConfig = super.getCorsConfiguration(handler, request);
+        ModuleMappingRegistry registry = this.findModuleRegistry(handler);
+        if (registry == null) {
+            return corsConfig;
+        }
+        CorsConfiguration moduleCorsConfig = registry.moduleCorsConfiguration((HandlerMethod) handler, request);
+        return corsConfig != null ? corsConfig.combine(moduleCorsConfig) : moduleCorsConfig;
+    }
+
+    @Override
+    public void setEmbeddedValueResolver(@NonNull StringValueResolver resolver) {
+        super.setEmbeddedValueResolver(resolver);
+        this.embeddedValueResolver = resolver;
+    }
+
+    private void removeCanaryRoutes(Predicate<CanaryRoute> filter) {
+        Map<HandlerMethod, CanaryRoute> routes = new HashMap<>(this.canaryRoutes);
+        if (routes.values().removeIf(filter)) {
+            this.canaryRoutes = Map.copyOf(routes);
+        }
+    }
+
+    private Map<Method, RequestMappingInfo> selectMappings(Object controller) {
+        Class<?> userType = ClassUtils.getUserClass(controller);
+        return MethodIntrospector.selectMethods(userType,
+                (MethodIntrospector.MetadataLookup<RequestMappingInfo>) method -> this.getMappingForMethod(method, userType));
+    }
+
+    private Method selectInvocableMethod(Object controller, Method method) {
+        return AopUtils.selectInvocableMethod(method, ClassUtils.getUserClass(controller));
+    }
+
+    @Override
+    protected HandlerMethod getHandlerInternal(@NonNull HttpServletRequest request) throws Exception {
+        long stamp = switchLock.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                HandlerMethod handlerMethod = this.lookupHandler(request);
+                if (switchLock.validate(stamp)) {
+                    return handlerMethod;
+                }
+            } catch (Exception e) {
+                if (switchLock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        request.removeAttribute(CANARY_STATS_ATTRIBUTE);
+        request.removeAttribute(INFLIGHT_ATTRIBUTE);
+        stamp = switchLock.readLock();
+        try {
+            return this.lookupHandler(request);
+        } finally {
+            switchLock.unlockRead(stamp);
+        }
+    }
+
+    private HandlerMethod lookupHandler(HttpServletRequest request) throws Exception {
+        HandlerMethod handlerMethod = this.lookupCanaryHandler(request, this.lookupMapping(request));
+        if (handlerMethod != null) {
+            // 在路由可见时取出计数，卸载时计数总是在路由注销之后移除
+            InflightRequests requests = inflightRequests.get(handlerMethod.getBeanType().getClassLoader());
+            if (requests != null) {
+                request.setAttribute(INFLIGHT_ATTRIBUTE, requests);
+            }
+        }
+        return handlerMethod;
+    }
+
+    /**
+     * 查找可能命中的模块路由表和应用自身的路由表，都命中时按{@link RequestMappingInfo#compareTo}选择最具体的路由，
+     * 同样具体时前缀越长的模块路由表越优先，应用自身的路由表最后。
+     * 各个路由表查找时只记录匹配结果，选出的路由最后才设置路径变量等请求属性。
+     * 路径匹配但请求方法等条件不匹配的异常在所有路由表都没有命中时才抛出
+     */
+    @Nullable
+    private HandlerMethod lookupMapping(HttpServletRequest request) throws Exception {
+        if (routeTrie.isEmpty()) {
+            return super.getHandlerInternal(request);
+        }
+        List<ModuleMappingRegistry> registries = routeTrie.match(this.lookupSegments(request));
+        if (registries.isEmpty()) {
+            return super.getHandlerInternal(request);
+        }
+
+        List<ModuleMappingRegistry> candidates = new ArrayList<>(registries.size() + 1);
+        candidates.addAll(registries);
+        // null表示应用自身的路由表
+        candidates.add(null);
+        Match best = null;
+        Match fallback = null;
+        Exception noMatch = null;
+        for (ModuleMappingRegistry registry : candidates) {
+            Match match;
+            try {
+                match = this.lookupMatch(request, registry);
+            } catch (Exception e) {
+                if (noMatch == null) {
+                    noMatch = e;
+                }
+                continue;
+            }
+            if (match == null) {
+                continue;
+            }
+            if (match.mapping() == null) {
+                // 预检请求和OPTIONS请求的默认处理方法没有匹配的路由，只在没有其他路由命中时使用
+                fallback = fallback != null ? fallback : match;
+            } else if (best == null || match.mapping().compareTo(best.mapping(), request) < 0) {
+                best = match;
+            }
+        }
+
+        if (best == null) {
+            if (fallback != null) {
+                return fallback.handlerMethod();
+            }
+            if (noMatch != null) {
+                throw noMatch;
+            }
+            return null;
+        }
+        request.setAttribute(BEST_MATCHING_HANDLER_ATTRIBUTE, best.handlerMethod());
+        if (best.registry() != null) {
+            best.registry().applyMatch(best.mapping(), best.lookupPath(), request);
+        } else {
+            super.handleMatch(best.mapping(), best.lookupPath(), request);
+        }
+        return best.handlerMethod();
+    }
+
+    /**
+     * 在一个路由表中查找，只记录命中的路由，不设置请求属性
+     *
+     * @param request  请求
+     * @param registry 模块的路由表，为null时查找应用自身的路由表
+     * @return 没有命中时返回null
+     */
+    @Nullable
+    private Match lookupMatch(HttpServletRequest request, @Nullable ModuleMappingRegistry registry) throws Exception {
+        MatchHolder holder = new MatchHolder();
+        request.setAttribute(MATCH_ATTRIBUTE, holder);
+        HandlerMethod handlerMethod;
+        try {
+            handlerMethod = registry != null ? registry.lookup(request) : super.getHandlerInternal(request);
+        } finally {
+            request.removeAttribute(MATCH_ATTRIBUTE);
+        }
+        return handlerMethod == null ? null : new Match(registry, handlerMethod, holder.mapping, holder.lookupPath);
+    }
+
+    @Override
+    protected void handleMatch(@NonNull RequestMappingInfo info, @NonNull String lookupPath,
+            @NonNull HttpServletRequest request) {
+        if (!MatchHolder.hold(info, lookupPath, request)) {
+            super.handleMatch(info, lookupPath, request);
+        }
+    }
+
+    @Nullable
+    private HandlerMethod lookupCanaryHandler(HttpServletRequest request, @Nullable HandlerMethod handlerMethod) {
+        Map<HandlerMethod, CanaryRoute> routes = this.canaryRoutes;
+        if (handlerMethod == null || routes.isEmpty()) {
+            return handlerMethod;
+        }
+        CanaryRoute route = routes.get(handlerMethod);
+        if (route == null) {
+            return handlerMethod;
+        }
+        ModuleCanary canary = route.canary();
+        if (canary.routeToCanary(this.resolveStickyKey(canary, request))) {
+            request.setAttribute(CANARY_STATS_ATTRIBUTE, canary.getCanaryStats());
+            return route.handlerMethod();
+        }
+        request.setAttribute(CANARY_STATS_ATTRIBUTE, canary.getBaseStats());
+        return handlerMethod;
+    }
+
+    @Nullable
+    private String resolveStickyKey(ModuleCanary canary, HttpServletRequest request) {
+        if (canary.getStickyHeader() != null) {
+            String stickyKey = request.getHeader(canary.getStickyHeader());
+            if (stickyKey != null) {
+                return stickyKey;
+            }
+        }
+        if (canary.getStickyCookie() != null && request.getCookies() != null) {
+            for (Cookie cookie : request.getCookies()) {
+                if (canary.getStickyCookie().equals(cookie.getName())) {
+                    return cookie.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 灰度的请求加入统计拦截器，放在最前面统计完整的耗时；模块的请求加入计数拦截器，放在最外层
+     */
+    @NonNull
+    @Override
+    protected HandlerExecutionChain getHandlerExecutionChain(@NonNull Object handler, @NonNull HttpServletRequest request) {
+        HandlerExecutionChain chain = super.getHandlerExecutionChain(handler, request);
+        if (request.getAttribute(CANARY_STATS_ATTRIBUTE) != null) {
+            chain.addInterceptor(0, canaryStatsInterceptor);
+        }
+        if (request.getAttribute(INFLIGHT_ATTRIBUTE) instanceof InflightRequests requests) {
+            chain.addInterceptor(0, requests);
+        }
+        return chain;
+    }
+
     /**
      * 注销controller路由
      *
      * @param controllerClass 请求控制器类型
      */
     public void unregisterController(Class<?> controllerClass) {
+        long stamp = switchLock.writeLock();
+        try {
+            this.doUnregisterController(controllerClass);
+        } finally {
+            switchLock.unlockWrite(stamp);
+        }
+    }
+
+    private void doUnregisterController(Class<?> controllerClass) {
         List<RequestMappingInfo> requestMappingInfos = this.requestMappingInfos.remove(controllerClass);
         if (!CollectionUtils.isEmpty(requestMappingInfos)) {
             requestMappingInfos.forEach(this::unregisterMapping);
@@ -68,4 +717,109 @@ public class ControllerHandlerMapping extends RequestMappingHandlerMapping {
         return requestMappingInfo;
     }
 
+    /**
+     * 单个模块的路由表，只用于注册和查找，路由信息由外层的路由映射解析
+     */
+    private static class ModuleMappingRegistry extends RequestMappingHandlerMapping {
+
+        void register(Object handler, Method method, RequestMappingInfo mapping) {
+            this.registerHandlerMethod(handler, method, mapping);
+        }
+
+        @Nullable
+        HandlerMethod lookup(HttpServletRequest request) throws Exception {
+            return this.getHandlerInternal(request);
+        }
+
+        void applyMatch(RequestMappingInfo info, String lookupPath, HttpServletRequest request) {
+            super.handleMatch(info, lookupPath, request);
+        }
+
+        @Override
+        protected void handleMatch(@NonNull RequestMappingInfo info, @NonNull String lookupPath,
+                @NonNull HttpServletRequest request) {
+            if (!MatchHolder.hold(info, lookupPath, request)) {
+                super.handleMatch(info, lookupPath, request);
+            }
+        }
+
+        boolean hasCorsConfiguration(HandlerMethod handlerMethod) {
+            return this.hasCorsConfigurationSource(handlerMethod);
+        }
+
+        @Nullable
+        CorsConfiguration moduleCorsConfiguration(HandlerMethod handlerMethod, HttpServletRequest request) {
+            return this.getCorsConfiguration(handlerMethod, request);
+        }
+
+        /**
+         * 不从应用上下文中检测控制器
+         */
+        @Override
+        protected void initHandlerMethods() {
+        }
+    }
+
+    /**
+     * 一个路由表的查找结果
+     *
+     * @param registry      模块的路由表，为null时是应用自身的路由表
+     * @param handlerMethod 处理方法
+     * @param mapping       与请求匹配的路由条件，没有匹配的路由时为null
+     * @param lookupPath    查找路径
+     */
+    private record Match(@Nullable ModuleMappingRegistry registry, HandlerMethod handlerMethod,
+                         @Nullable RequestMappingInfo mapping, @Nullable String lookupPath) {
+    }
+
+    /**
+     * 查找期间保存在请求属性中，记录命中的路由
+     */
+    private static class MatchHolder {
+
+        RequestMappingInfo mapping;
+        String lookupPath;
+
+        static boolean hold(RequestMappingInfo info, String lookupPath, HttpServletRequest request) {
+            if (request.getAttribute(MATCH_ATTRIBUTE) instanceof MatchHolder holder) {
+                holder.mapping = info;
+                holder.lookupPath = lookupPath;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 灰度路由
+     *
+     * @param handlerMethod   新版本的处理方法
+     * @param canary          灰度发布
+     * @param baseClassLoader 旧版本模块的类加载器
+     */
+    private record CanaryRoute(HandlerMethod handlerMethod, ModuleCanary canary, ClassLoader baseClassLoader) {
+    }
+
+    /**
+     * 统计灰度请求的耗时和错误，已经解析的异常按响应状态码判断
+     */
+    private static class CanaryStatsInterceptor implements HandlerInterceptor {
+
+        @Override
+        public boolean preHandle(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                @NonNull Object handler) {
+            request.setAttribute(CANARY_START_ATTRIBUTE, System.nanoTime());
+            return true;
+        }
+
+        @Override
+        public void afterCompletion(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                @NonNull Object handler, Exception ex) {
+            if (request.getAttribute(CANARY_STATS_ATTRIBUTE) instanceof ModuleCanary.Stats stats
+                    && request.getAttribute(CANARY_START_ATTRIBUTE) instanceof Long start) {
+                stats.record(System.nanoTime() - start, ex != null || response.getStatus() >= 500);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,100 @@
+package com.spring.module.core.context;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.lang.NonNull;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个模块正在处理的请求数
+ * <p>
+ * 开始和结束分别用{@link LongAdder}累加，请求线程之间没有竞争，两者之差就是正在处理的请求数。
+ * 暂停后新到达的请求直接返回503，排空时先暂停再等待计数归零：计数在检查暂停标记之前增加，
+ * 没有被拒绝的请求一定能被排空的等待看到。暂停之后结束的请求唤醒等待的线程，不需要轮询
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-16
+ * @since 1.0
+ */
+class InflightRequests implements AsyncHandlerInterceptor {
+
+    private static final String COUNTED_ATTRIBUTE = InflightRequests.class.getName() + ".counted";
+
+    private final LongAdder started = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final Object monitor = new Object();
+    private volatile boolean suspended;
+
+    @Override
+    public boolean preHandle(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+            @NonNull Object handler) throws Exception {
+        // 异步请求再次分派时已经计数
+        if (request.getAttribute(COUNTED_ATTRIBUTE) == this) {
+            return true;
+        }
+        started.increment();
+        if (suspended) {
+            this.complete();
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "模块正在卸载");
+            return false;
+        }
+        request.setAttribute(COUNTED_ATTRIBUTE, this);
+        return true;
+    }
+
+    /**
+     * 异步请求在再次分派结束时才计为完成
+     */
+    @Override
+    public void afterCompletion(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+            @NonNull Object handler, Exception ex) {
+        if (request.getAttribute(COUNTED_ATTRIBUTE) == this) {
+            request.removeAttribute(COUNTED_ATTRIBUTE);
+            this.complete();
+        }
+    }
+
+    private void complete() {
+        completed.increment();
+        if (suspended) {
+            synchronized (monitor) {
+                monitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 正在处理的请求数，先读结束数，统计期间结束的请求只会让结果偏大
+     */
+    long count() {
+        long completed = this.completed.sum();
+        return started.sum() - completed;
+    }
+
+    void suspend() {
+        this.suspended = true;
+    }
+
+    /**
+     * 等待正在处理的请求结束，必须先调用{@link #suspend()}
+     *
+     * @return 请求在等待时间内全部结束时返回true
+     */
+    boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (monitor) {
+            while (this.count() > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(monitor, remaining);
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.spring.module.core.context;
+
+import com.spring.module.core.loading.ZipClassLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.core.type.classreading.SimpleMetadataReaderFactory;
+import org.springframework.lang.NonNull;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ConcurrentReferenceHashMap;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * 模块上下文的类元数据读取工厂
+ * <p>
+ * 按类名读取时先找到定义类的类加载器，再从{@link SharedMetadataReaderCache}获取，主应用和父模块的类不随每个子模块重复解析。
+ * 扫描时按资源读取的类只在当前上下文中缓存
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-18
+ * @since 1.0
+ */
+public class ModuleMetadataReaderFactory extends SimpleMetadataReaderFactory {
+
+    private final SharedMetadataReaderCache sharedCache;
+    private final Map<Resource, MetadataReader> resourceCache = new ConcurrentReferenceHashMap<>();
+
+    public ModuleMetadataReaderFactory(ResourceLoader resourceLoader, SharedMetadataReaderCache sharedCache) {
+        super(resourceLoader);
+        this.sharedCache = sharedCache;
+    }
+
+    @Override
+    @NonNull
+    public MetadataReader getMetadataReader(@NonNull String className) throws IOException {
+        ClassLoader classLoader = this.getResourceLoader().getClassLoader();
+        if (!(classLoader instanceof ZipClassLoader moduleClassLoader)) {
+            return super.getMetadataReader(className);
+        }
+
+        // 主应用的类优先，和类加载的顺序一致
+        ClassLoader applicationClassLoader = moduleClassLoader.getParent();
+        MetadataReader metadataReader = applicationClassLoader != null ?
+                sharedCache.getIfPresent(applicationClassLoader, className) : null;
+        if (metadataReader == null) {
+            metadataReader = sharedCache.getIfPresent(moduleClassLoader, className);
+        }
+        if (metadataReader != null) {
+            return metadataReader;
+        }
+
+        String resourceName = ClassUtils.convertClassNameToResourcePath(className) + ClassUtils.CLASS_FILE_SUFFIX;
+        ClassLoader definingClassLoader = moduleClassLoader.findResourceLoader(resourceName);
+        if (definingClassLoader == null) {
+            // 内部类的名称等交给Spring处理
+            return super.getMetadataReader(className);
+        }
+        return sharedCache.getMetadataReader(definingClassLoader, className);
+    }
+
+    @Override
+    @NonNull
+    public MetadataReader getMetadataReader(@NonNull Resource resource) throws IOException {
+        MetadataReader metadataReader = resourceCache.get(resource);
+        if (metadataReader == null) {
+            metadataReader = super.getMetadataReader(resource);
+            resourceCache.put(resource, metadataReader);
+        }
+        return metadataReader;
+    }
+
+    public void clearCache() {
+        resourceCache.clear();
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.spring.module.core.context;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigUtils;
+import org.springframework.context.annotation.ConfigurationClassPostProcessor;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.Ordered;
+import org.springframework.core.PriorityOrdered;
+import org.springframework.lang.NonNull;
+
+import java.util.function.Supplier;
+
+/**
+ * 代替Spring Boot的SharedMetadataReaderFactoryContextInitializer，模块上下文解析配置类时使用{@link ModuleMetadataReaderFactory}
+ * <p>
+ * 工厂以Spring Boot相同的bean名称注册，自动配置的排除过滤器等组件也会使用它；上下文刷新完成后清空按资源读取的缓存
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-18
+ * @since 1.0
+ */
+public class ModuleMetadataReaderFactoryContextInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext>, Ordered {
+
+    public static final String BEAN_NAME = "org.springframework.boot.autoconfigure.internalCachingMetadataReaderFactory";
+
+    @Override
+    public void initialize(@NonNull ConfigurableApplicationContext applicationContext) {
+        ModuleMetadataReaderFactory metadataReaderFactory = new ModuleMetadataReaderFactory(applicationContext,
+                SharedMetadataReaderCache.getShared());
+        applicationContext.getBeanFactory().registerSingleton(BEAN_NAME, metadataReaderFactory);
+        applicationContext.addBeanFactoryPostProcessor(new MetadataReaderFactoryPostProcessor(metadataReaderFactory));
+        applicationContext.addApplicationListener(event -> {
+            if (event instanceof ContextRefreshedEvent refreshedEvent && refreshedEvent.getApplicationContext() == applicationContext) {
+                metadataReaderFactory.clearCache();
+            }
+        });
+    }
+
+    @Override
+    public int getOrder() {
+        return 0;
+    }
+
+    /**
+     * 把元数据读取工厂设置到配置类的注解处理器上
+     */
+    static class MetadataReaderFactoryPostProcessor implements BeanDefinitionRegistryPostProcessor, PriorityOrdered {
+
+        private final ModuleMetadataReaderFactory metadataReaderFactory;
+
+        MetadataReaderFactoryPostProcessor(ModuleMetadataReaderFactory metadataReaderFactory) {
+            this.metadataReaderFactory = metadataReaderFactory;
+        }
+
+        @Override
+        public void postProcessBeanDefinitionRegistry(@NonNull BeanDefinitionRegistry registry) throws BeansException {
+            if (!registry.containsBeanDefinition(AnnotationConfigUtils.CONFIGURATION_ANNOTATION_PROCESSOR_BEAN_NAME)) {
+                return;
+            }
+            BeanDefinition definition = registry.getBeanDefinition(AnnotationConfigUtils.CONFIGURATION_ANNOTATION_PROCESSOR_BEAN_NAME);
+            if (definition instanceof AbstractBeanDefinition beanDefinition && beanDefinition.getInstanceSupplier() != null) {
+                Supplier<?> instanceSupplier = beanDefinition.getInstanceSupplier();
+                beanDefinition.setInstanceSupplier(() -> {
+                    Object instance = instanceSupplier.get();
+                    if (instance instanceof ConfigurationClassPostProcessor postProcessor) {
+                        postProcessor.setMetadataReaderFactory(this.metadataReaderFactory);
+                    }
+                    return instance;
+                });
+                return;
+            }
+            definition.getPropertyValues().add("metadataReaderFactory", this.metadataReaderFactory);
+        }
+
+        @Override
+        public void postProcessBeanFactory(@NonNull ConfigurableListableBeanFactory beanFactory) throws BeansException {
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.HIGHEST_PRECEDENCE;
+        }
+    }
+
+}
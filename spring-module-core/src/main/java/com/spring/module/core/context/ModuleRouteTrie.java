@@ -0,0 +1,143 @@
+package com.spring.module.core.context;
+
+import java.util.*;
+
+/**
+ * 按路由前缀查找模块路由表的字典树
+ * <p>
+ * 路由模式开头的静态路径段作为前缀，每个节点记录前缀落在该节点的路由表。查找时沿请求路径逐段向下，
+ * 返回途经节点上的路由表，前缀越长越先返回，耗时只与请求路径的段数有关，与模块数量无关。
+ * 字典树发布后不再修改，前缀第一次出现或者最后一次移除时重建后整体替换，查找不加锁
+ *
+ * @param <T> 路由表类型
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-17
+ * @since 1.0
+ */
+class ModuleRouteTrie<T> {
+
+    private static final String WILDCARDS = "{}*?";
+
+    private final Map<List<String>, Map<T, Integer>> prefixes = new LinkedHashMap<>();
+    private volatile Node<T> root = new Node<>();
+
+    /**
+     * 添加路由表的前缀，同一个前缀按次数计数
+     *
+     * @param prefixes 路由的静态前缀
+     * @param target   路由表
+     */
+    synchronized void add(Collection<List<String>> prefixes, T target) {
+        boolean changed = false;
+        for (List<String> prefix : prefixes) {
+            Map<T, Integer> targets = this.prefixes.computeIfAbsent(prefix, key -> new LinkedHashMap<>());
+            changed |= targets.merge(target, 1, Integer::sum) == 1;
+        }
+        if (changed) {
+            this.rebuild();
+        }
+    }
+
+    /**
+     * 移除路由表的前缀
+     *
+     * @param prefixes 路由的静态前缀
+     * @param target   路由表
+     */
+    synchronized void remove(Collection<List<String>> prefixes, T target) {
+        boolean changed = false;
+        for (List<String> prefix : prefixes) {
+            Map<T, Integer> targets = this.prefixes.get(prefix);
+            if (targets == null || targets.computeIfPresent(target, (key, count) -> count > 1 ? count - 1 : null) != null) {
+                continue;
+            }
+            changed = true;
+            if (targets.isEmpty()) {
+                this.prefixes.remove(prefix);
+            }
+        }
+        if (changed) {
+            this.rebuild();
+        }
+    }
+
+    boolean isEmpty() {
+        Node<T> root = this.root;
+        return root.children.isEmpty() && root.targets.isEmpty();
+    }
+
+    /**
+     * 查找请求路径可能命中的路由表
+     *
+     * @param segments 请求路径的路径段
+     * @return 前缀越长的路由表越靠前，不重复
+     */
+    List<T> match(List<String> segments) {
+        Node<T> node = this.root;
+        List<Node<T>> path = new ArrayList<>(segments.size() + 1);
+        path.add(node);
+        for (String segment : segments) {
+            node = node.children.get(segment);
+            if (node == null) {
+                break;
+            }
+            path.add(node);
+        }
+
+        List<T> matched = new ArrayList<>();
+        for (int i = path.size() - 1; i >= 0; i--) {
+            for (T target : path.get(i).targets) {
+                if (!matched.contains(target)) {
+                    matched.add(target);
+                }
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * 路由模式开头的静态路径段，遇到变量或者通配符时停止
+     *
+     * @param pattern       路由模式
+     * @param caseSensitive 是否区分大小写，不区分时转为小写
+     * @return 静态前缀
+     */
+    static List<String> staticPrefix(String pattern, boolean caseSensitive) {
+        List<String> prefix = new ArrayList<>();
+        for (String segment : pattern.split("/")) {
+            if (segment.isEmpty()) {
+                if (prefix.isEmpty()) {
+                    continue;
+                }
+                break;
+            }
+            if (segment.chars().anyMatch(c -> WILDCARDS.indexOf(c) >= 0)) {
+                break;
+            }
+            prefix.add(caseSensitive ? segment : segment.toLowerCase(Locale.ROOT));
+        }
+        return prefix;
+    }
+
+    private void rebuild() {
+        Node<T> root = new Node<>();
+        prefixes.forEach((prefix, targets) -> {
+            Node<T> node = root;
+            for (String segment : prefix) {
+                node = node.children.computeIfAbsent(segment, key -> new Node<>());
+            }
+            node.targets.addAll(targets.keySet());
+        });
+        this.root = root;
+    }
+
+    /**
+     * 字典树节点，只在重建时修改，通过volatile字段发布
+     */
+    private static class Node<T> {
+
+        final Map<String, Node<T>> children = new HashMap<>();
+        final List<T> targets = new ArrayList<>();
+    }
+
+}
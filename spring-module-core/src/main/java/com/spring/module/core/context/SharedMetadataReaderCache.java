@@ -0,0 +1,97 @@
+package com.spring.module.core.context;
+
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.core.type.classreading.SimpleMetadataReaderFactory;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 进程内共享的类元数据缓存
+ * <p>
+ * 按定义类的类加载器和类名缓存{@link MetadataReader}，主应用和父模块中的类只解析一次，所有子模块上下文共用。
+ * 缓存数量有上限，超过后淘汰最久未使用的类；模块卸载时由{@link com.spring.module.core.process.DestructionModulePostProcessor}
+ * 移除模块类加载器的缓存，避免缓存的资源引用模块类加载器
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-18
+ * @since 1.0
+ */
+public class SharedMetadataReaderCache {
+
+    public static final int DEFAULT_MAX_SIZE = 8192;
+
+    private static final SharedMetadataReaderCache SHARED = new SharedMetadataReaderCache(DEFAULT_MAX_SIZE);
+
+    private final Map<Key, MetadataReader> cache;
+    private volatile int maxSize;
+
+    public SharedMetadataReaderCache(int maxSize) {
+        this.setMaxSize(maxSize);
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, MetadataReader> eldest) {
+                return size() > SharedMetadataReaderCache.this.maxSize;
+            }
+        });
+    }
+
+    public static SharedMetadataReaderCache getShared() {
+        return SHARED;
+    }
+
+    @Nullable
+    public MetadataReader getIfPresent(ClassLoader classLoader, String className) {
+        return cache.get(new Key(classLoader, className));
+    }
+
+    /**
+     * 获取类的元数据，没有缓存时通过定义类的类加载器解析，解析不加锁，同一个类并发解析时保留后放入的结果
+     *
+     * @param classLoader 定义类的类加载器
+     * @param className   类名
+     * @return 类的元数据
+     */
+    public MetadataReader getMetadataReader(ClassLoader classLoader, String className) throws IOException {
+        Key key = new Key(classLoader, className);
+        MetadataReader metadataReader = cache.get(key);
+        if (metadataReader == null) {
+            metadataReader = new SimpleMetadataReaderFactory(classLoader).getMetadataReader(className);
+            cache.put(key, metadataReader);
+        }
+        return metadataReader;
+    }
+
+    /**
+     * 移除类加载器定义的类的缓存
+     *
+     * @param classLoader 卸载的类加载器
+     */
+    public void evict(ClassLoader classLoader) {
+        synchronized (cache) {
+            cache.keySet().removeIf(key -> key.classLoader() == classLoader);
+        }
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("类元数据缓存数量必须大于0：" + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    private record Key(ClassLoader classLoader, String className) {
+    }
+
+}
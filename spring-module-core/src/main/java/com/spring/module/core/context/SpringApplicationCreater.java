@@ -6,8 +6,11 @@ import net.bytebuddy.description.annotation.AnnotationDescription;
 import net.bytebuddy.dynamic.DynamicType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.FullyQualifiedAnnotationBeanNameGenerator;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ClassUtils;
 
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
@@ -20,27 +23,61 @@ import java.util.Set;
 @SuppressWarnings("SpellCheckingInspection")
 public class SpringApplicationCreater {
 
+    /**
+     * Spring AOT为应用类生成的初始化器的类名后缀
+     */
+    public static final String AOT_INITIALIZER_SUFFIX = "__ApplicationContextInitializer";
+
     public Class<?> createVirtualApplication(TriadMetadata projectMetadata, ClassLoader classLoader) {
+        return this.createVirtualApplication(projectMetadata, classLoader, Set.of());
+    }
+
+    /**
+     * 生成模块的虚拟应用类
+     *
+     * @param projectMetadata 模块的项目信息
+     * @param classLoader     模块类加载器
+     * @param excludeNames    排除的自动配置类，必须是模块可见的自动配置候选类
+     * @return 虚拟应用类
+     */
+    public Class<?> createVirtualApplication(TriadMetadata projectMetadata, ClassLoader classLoader,
+            Collection<String> excludeNames) {
         DynamicType.Unloaded<?> unloaded = new ByteBuddy()
                 .subclass(Object.class)
                 .name(this.generateClassName(projectMetadata))
-                .annotateType(this.createAnnotation(classLoader))
+                .annotateType(this.createAnnotation(classLoader, excludeNames))
                 .make();
         try (unloaded) {
             return unloaded.load(classLoader).getLoaded();
         }
     }
 
+    /**
+     * 查找构建时AOT处理生成的模块应用类，类名与{@link #createVirtualApplication(TriadMetadata, ClassLoader)}生成的类相同
+     *
+     * @param projectMetadata 模块的项目信息
+     * @param classLoader     模块类加载器
+     * @return 模块包中没有AOT生成的初始化器时返回null
+     */
+    @Nullable
+    public Class<?> findAotApplication(TriadMetadata projectMetadata, ClassLoader classLoader) {
+        String className = this.generateClassName(projectMetadata);
+        if (!ClassUtils.isPresent(className + AOT_INITIALIZER_SUFFIX, classLoader)) {
+            return null;
+        }
+        return ClassUtils.resolveClassName(className, classLoader);
+    }
+
     protected String generateClassName(TriadMetadata projectMetadata) {
         return  projectMetadata.groupId() + "."
                 + projectMetadata.artifactId().replace("-", "")
                 + ".SpringModuleApplication";
     }
 
-    protected AnnotationDescription createAnnotation(ClassLoader classLoader) {
+    protected AnnotationDescription createAnnotation(ClassLoader classLoader, Collection<String> excludeNames) {
         //SpringModuleLoader loader = new SpringModuleLoader(classLoader);
         //Map<String, List<String>> factories = loader.getFactories();
-        Set<String> excludeClasses = new HashSet<>();
+        Set<String> excludeClasses = new LinkedHashSet<>(excludeNames);
         //if (!CollectionUtils.isEmpty(factories)) {
         //    excludeClasses = Set.copyOf(factories.get(getClass().getName()));
         //}
@@ -7,11 +7,16 @@ import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.boot.context.ContextIdApplicationContextInitializer;
 import org.springframework.boot.env.EnvironmentPostProcessorApplicationListener;
 import org.springframework.boot.env.EnvironmentPostProcessorsFactory;
+import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextInitializer;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.aot.AotApplicationContextInitializer;
 import org.springframework.context.support.AbstractApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.Ordered;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.lang.NonNull;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
@@ -55,6 +60,16 @@ public class SpringModuleApplicationBuilder extends SpringApplicationBuilder {
         return this;
     }
 
+    /**
+     * 使用构建时AOT生成的初始化器注册bean定义，不再加载应用类和解析配置类
+     *
+     * @param initializerClassName AOT生成的初始化器类名
+     */
+    public SpringModuleApplicationBuilder aotInitializer(String initializerClassName) {
+        this.springApplication.setAotInitializerClassName(initializerClassName);
+        return this;
+    }
+
     @Override
     protected SpringApplication createSpringApplication(ResourceLoader resourceLoader, Class<?>... sources) {
         return this.springApplication = new SpringModuleApplication(resourceLoader, sources);
@@ -64,6 +79,7 @@ public class SpringModuleApplicationBuilder extends SpringApplicationBuilder {
 
         private SpringModule springModule;
         private List<AnnotationApplicationModuleContext> parents;
+        private String aotInitializerClassName;
 
         public SpringModuleApplication(ResourceLoader resourceLoader, Class<?>... primarySources) {
             super(resourceLoader, primarySources);
@@ -91,9 +107,22 @@ public class SpringModuleApplicationBuilder extends SpringApplicationBuilder {
         @Override
         public ConfigurableApplicationContext run(String... args) {
             this.processEnvironmentListener();
+            if (this.aotInitializerClassName != null) {
+                this.addInitializers(new AotModuleContextInitializer(this.aotInitializerClassName));
+            }
             return super.run(args);
         }
 
+        /**
+         * AOT生成的初始化器已经注册了应用类的bean定义
+         */
+        @Override
+        protected void load(ApplicationContext context, Object[] sources) {
+            if (this.aotInitializerClassName == null) {
+                super.load(context, sources);
+            }
+        }
+
         protected void processEnvironmentListener() {
             Set<ApplicationListener<?>> listeners = this.getListeners();
             if (!CollectionUtils.isEmpty(listeners)) {
@@ -140,6 +169,45 @@ public class SpringModuleApplicationBuilder extends SpringApplicationBuilder {
         public SpringModule getSpringModule() {
             return springModule;
         }
+
+        public String getAotInitializerClassName() {
+            return aotInitializerClassName;
+        }
+
+        public void setAotInitializerClassName(String aotInitializerClassName) {
+            this.aotInitializerClassName = aotInitializerClassName;
+        }
+    }
+
+    /**
+     * 在其他初始化器之前执行AOT生成的初始化器
+     * <p>
+     * 模块上下文创建时注册的注解处理器会重新解析配置类，先全部移除，bean定义只来自构建时生成的代码
+     */
+    static class AotModuleContextInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext>, Ordered {
+
+        private final String initializerClassName;
+
+        AotModuleContextInitializer(String initializerClassName) {
+            this.initializerClassName = initializerClassName;
+        }
+
+        @Override
+        public void initialize(@NonNull ConfigurableApplicationContext applicationContext) {
+            if (!(applicationContext instanceof GenericApplicationContext genericApplicationContext)) {
+                throw new IllegalStateException("AOT初始化器不支持的模块上下文类型：" + applicationContext);
+            }
+            for (String beanName : genericApplicationContext.getBeanDefinitionNames()) {
+                genericApplicationContext.removeBeanDefinition(beanName);
+            }
+            AotApplicationContextInitializer.forInitializerClasses(this.initializerClassName)
+                    .initialize(genericApplicationContext);
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.HIGHEST_PRECEDENCE;
+        }
     }
 
     static class ContextIdApplicationModuleContextInitializer extends ContextIdApplicationContextInitializer {
@@ -31,4 +31,14 @@ public interface ModuleErrorCode {
      */
     String MODULE_EXIST_PARENTS = "MR1003";
 
+    /**
+     * 模块包的摘要与预期的不一致
+     */
+    String MODULE_DIGEST_MISMATCH = "ML1001";
+
+    /**
+     * 要求校验摘要，但是没有提供预期的摘要，模块包中也没有摘要清单
+     */
+    String MODULE_DIGEST_REQUIRED = "ML1002";
+
 }
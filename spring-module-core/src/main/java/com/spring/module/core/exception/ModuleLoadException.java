@@ -1,5 +1,8 @@
 package com.spring.module.core.exception;
 
+import static com.spring.module.core.exception.ModuleErrorCode.MODULE_DIGEST_MISMATCH;
+import static com.spring.module.core.exception.ModuleErrorCode.MODULE_DIGEST_REQUIRED;
+
 /**
  * 概要描述
  * <p>
@@ -23,4 +26,12 @@ public class ModuleLoadException extends ModuleException {
         throw new ModuleLoadException("", message);
     }
 
+    public static void digestMismatch(String message) throws ModuleLoadException {
+        throw new ModuleLoadException(MODULE_DIGEST_MISMATCH, message);
+    }
+
+    public static void digestRequired(String message) throws ModuleLoadException {
+        throw new ModuleLoadException(MODULE_DIGEST_REQUIRED, message);
+    }
+
 }
@@ -0,0 +1,122 @@
+package com.spring.module.core.loading;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 类加载器的JAR包索引
+ * <p>
+ * 添加JAR包时读取一次中央目录，类文件按包名索引，其他资源按完整的资源名索引。
+ * 查找类和资源时直接定位到所属的JAR包，不存在的类和资源不需要逐个打开JAR包探测
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-05
+ * @since 1.0
+ */
+public class ClassPathIndex implements Closeable {
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    private final List<IndexedJar> jars = new ArrayList<>();
+    private final Map<String, List<IndexedJar>> packages = new ConcurrentHashMap<>();
+    private final Map<String, List<IndexedJar>> resources = new ConcurrentHashMap<>();
+
+    /**
+     * 类路径中存在未建立索引的URL时，查找不到的类和资源仍需要交给{@link java.net.URLClassLoader}
+     */
+    private volatile boolean complete = true;
+
+    /**
+     * 添加JAR包并建立索引，先添加的JAR包优先
+     *
+     * @param jar 已打开的JAR包
+     */
+    public synchronized void add(IndexedJar jar) throws IOException {
+        Set<String> jarPackages = new HashSet<>();
+        Set<String> jarResources = new HashSet<>();
+        // 多版本JAR包按运行时版本返回基础名称
+        jar.forEachEntry(entry -> {
+            String name = entry.getName();
+            if (name.endsWith(CLASS_SUFFIX)) {
+                jarPackages.add(getPackagePath(name));
+            } else {
+                jarResources.add(name);
+                // ZipFile#getEntry查找目录时可以省略结尾的'/'
+                if (entry.isDirectory()) {
+                    jarResources.add(name.substring(0, name.length() - 1));
+                }
+            }
+        });
+
+        jars.add(jar);
+        jarPackages.forEach(name -> packages.merge(name, List.of(jar), ClassPathIndex::concat));
+        jarResources.forEach(name -> resources.merge(name, List.of(jar), ClassPathIndex::concat));
+    }
+
+    public void addUnindexed() {
+        this.complete = false;
+    }
+
+    /**
+     * 查找资源所在的JAR包
+     *
+     * @param name 资源名称，类文件的格式为{@code com/example/Foo.class}
+     * @return 可能包含该资源的JAR包，按添加顺序排列，类文件只按包名匹配，调用方需要确认条目存在
+     */
+    public List<IndexedJar> findJars(String name) {
+        if (!name.endsWith(CLASS_SUFFIX)) {
+            return resources.getOrDefault(name, List.of());
+        }
+
+        return packages.getOrDefault(getPackagePath(name), List.of());
+    }
+
+    public boolean containsPackage(String packagePath) {
+        return packages.containsKey(packagePath);
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public synchronized List<IndexedJar> getJars() {
+        return List.copyOf(jars);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        IOException exception = null;
+        for (IndexedJar jar : jars) {
+            try {
+                jar.close();
+            } catch (IOException e) {
+                if (exception == null) {
+                    exception = e;
+                } else {
+                    exception.addSuppressed(e);
+                }
+            }
+        }
+        jars.clear();
+        packages.clear();
+        resources.clear();
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private static String getPackagePath(String name) {
+        int index = name.lastIndexOf('/');
+        return index == -1 ? "" : name.substring(0, index);
+    }
+
+    private static List<IndexedJar> concat(List<IndexedJar> first, List<IndexedJar> second) {
+        List<IndexedJar> result = new ArrayList<>(first.size() + second.size());
+        result.addAll(first);
+        result.addAll(second);
+        return Collections.unmodifiableList(result);
+    }
+
+}
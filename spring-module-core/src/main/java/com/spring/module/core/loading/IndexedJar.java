@@ -0,0 +1,220 @@
+package com.spring.module.core.loading;
+
+import org.springframework.web.util.UriUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.CodeSigner;
+import java.util.function.Consumer;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipFile;
+
+/**
+ * 已建立索引的JAR包，类加载器通过它直接读取所属JAR包中的类和资源
+ * <p>
+ * JAR包句柄由{@link JarFilePool}统一管理，长时间未使用时会被关闭，再次访问时重新打开
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-05
+ * @since 1.0
+ */
+public class IndexedJar implements Closeable {
+
+    private static final Manifest NO_MANIFEST = new Manifest();
+
+    /**
+     * 代码来源的URL，与{@link java.net.URLClassLoader#getURLs()}中的一致
+     */
+    private final URL url;
+    /**
+     * 资源URL的前缀，格式为{@code jar:...!/}
+     */
+    private final URL baseUrl;
+    private final JarFileOpener opener;
+    private final JarFilePool pool;
+    private final boolean multiRelease;
+    private volatile Manifest manifest;
+
+    // 以下字段由JarFilePool在当前对象的锁内维护
+    JarFile jarFile;
+    int pins;
+    boolean closed;
+    /**
+     * 最近一次访问的时间，由JarFilePool在锁外更新，只用于近似的最近最少使用淘汰
+     */
+    volatile long lastAccess;
+
+    protected IndexedJar(URL url, URL baseUrl, JarFileOpener opener, JarFilePool pool) throws IOException {
+        this.url = url;
+        this.baseUrl = baseUrl;
+        this.opener = opener;
+        this.pool = pool;
+        this.jarFile = opener.open();
+        this.multiRelease = jarFile.isMultiRelease();
+        pool.register(this);
+    }
+
+    /**
+     * 打开本地JAR包
+     *
+     * @param file JAR包文件
+     * @return 已打开的JAR包
+     * @throws IOException IO异常
+     */
+    public static IndexedJar open(File file) throws IOException {
+        URL url = file.toURI().toURL();
+        return new IndexedJar(url, toBaseUrl(url), fileOpener(file), JarFilePool.getShared());
+    }
+
+    protected static URL toBaseUrl(URL fileUrl) throws MalformedURLException {
+        return URI.create("jar:" + fileUrl + "!/").toURL();
+    }
+
+    protected static JarFileOpener fileOpener(File file) {
+        return () -> new JarFile(file, true, ZipFile.OPEN_READ, JarFile.runtimeVersion());
+    }
+
+    /**
+     * 打开嵌套JAR包，URL格式为{@code jar:nested:...!/}
+     *
+     * @param url 嵌套JAR包的URL
+     * @return 已打开的JAR包
+     * @throws IOException IO异常
+     */
+    public static IndexedJar open(URL url) throws IOException {
+        return new IndexedJar(url, url, () -> {
+            URLConnection connection = url.openConnection();
+            if (!(connection instanceof JarURLConnection jarConnection)) {
+                throw new IOException("不是JAR包的URL：" + url);
+            }
+            return jarConnection.getJarFile();
+        }, JarFilePool.getShared());
+    }
+
+    JarFile openJarFile() throws IOException {
+        return opener.open();
+    }
+
+    /**
+     * 在JAR包句柄上执行操作，执行期间句柄不会被{@link JarFilePool}关闭
+     */
+    protected <T> T withJarFile(JarFileFunction<T> function) throws IOException {
+        JarFile jarFile = pool.acquire(this);
+        try {
+            return function.apply(jarFile);
+        } finally {
+            pool.release(this);
+        }
+    }
+
+    public boolean hasEntry(String name) {
+        try {
+            return this.withJarFile(jarFile -> jarFile.getJarEntry(name) != null);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 读取条目内容，缓冲区只在回调期间有效
+     *
+     * @param name   条目名称
+     * @param reader 读取条目内容的回调
+     * @return 回调的返回值，条目不存在时返回null
+     * @throws IOException IO异常
+     */
+    public <T> T readEntry(String name, EntryReader<T> reader) throws IOException {
+        return this.withJarFile(jarFile -> {
+            JarEntry entry = jarFile.getJarEntry(name);
+            if (entry == null) {
+                return null;
+            }
+            byte[] bytes;
+            try (InputStream is = jarFile.getInputStream(entry)) {
+                bytes = is.readAllBytes();
+            }
+            // 签名信息在读取完条目之后才能获取
+            return reader.read(ByteBuffer.wrap(bytes), entry.getCodeSigners());
+        });
+    }
+
+    /**
+     * 遍历条目，多版本JAR包按运行时版本返回基础名称
+     */
+    public void forEachEntry(Consumer<JarEntry> action) throws IOException {
+        this.withJarFile(jarFile -> {
+            jarFile.versionedStream().forEach(action);
+            return null;
+        });
+    }
+
+    public URL getResourceUrl(String name) {
+        try {
+            // 资源名中URI不允许的字符需要编码，JAR包的URL连接读取条目时会解码
+            return URI.create(baseUrl + UriUtils.encodePath(name, StandardCharsets.UTF_8)).toURL();
+        } catch (MalformedURLException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public Manifest getManifest() throws IOException {
+        Manifest manifest = this.manifest;
+        if (manifest == null) {
+            manifest = this.withJarFile(JarFile::getManifest);
+            this.manifest = manifest = manifest != null ? manifest : NO_MANIFEST;
+        }
+        return manifest == NO_MANIFEST ? null : manifest;
+    }
+
+    public boolean isMultiRelease() {
+        return multiRelease;
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    public URL getBaseUrl() {
+        return baseUrl;
+    }
+
+    @Override
+    public void close() throws IOException {
+        pool.remove(this);
+    }
+
+    @Override
+    public String toString() {
+        return url.toString();
+    }
+
+    @FunctionalInterface
+    public interface EntryReader<T> {
+
+        T read(ByteBuffer buffer, CodeSigner[] codeSigners) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface JarFileOpener {
+
+        JarFile open() throws IOException;
+    }
+
+    @FunctionalInterface
+    protected interface JarFileFunction<T> {
+
+        T apply(JarFile jarFile) throws IOException;
+    }
+
+}
@@ -1,17 +1,20 @@
 package com.spring.module.core.loading;
 
+import org.springframework.boot.loader.net.protocol.Handlers;
+import org.springframework.boot.loader.net.protocol.jar.JarUrl;
 import org.springframework.util.ObjectUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.net.MalformedURLException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.security.CodeSource;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Manifest;
 
 /**
  * 基于JAR包的类加载器
@@ -23,6 +26,17 @@ import java.util.Set;
 public class JarClassLoader extends URLClassLoader {
 
     private final Set<File> loadJarFiles = new HashSet<>();
+    private final ClassPathIndex classPathIndex = new ClassPathIndex();
+
+    /**
+     * 是否使用内存映射读取本地JAR包的类文件，需要在添加JAR包之前设置
+     */
+    private boolean memoryMapped;
+
+    /**
+     * 记录当前类加载器自身定义的类，用于模块预热，未开启时为null
+     */
+    private volatile Set<String> definedClassNames;
 
     // 开启并行加载
     static {
@@ -40,20 +54,204 @@ public class JarClassLoader extends URLClassLoader {
 
     @Override
     protected Class<?> findClass(String name) throws ClassNotFoundException {
-        return super.findClass(name);
+        Class<?> clazz = this.findClassOrNull(name);
+        if (clazz == null) {
+            throw new ClassNotFoundException(name);
+        }
+        return clazz;
+    }
+
+    /**
+     * 查找类，找不到时返回null而不是抛出异常，模块之间委派查找时避免创建异常堆栈
+     *
+     * @param name 类的全限定名
+     * @return 类，找不到时返回null
+     * @throws ClassNotFoundException 找到了类文件但是读取失败
+     */
+    protected Class<?> findClassOrNull(String name) throws ClassNotFoundException {
+        String path = name.replace('.', '/').concat(".class");
+        Class<?> clazz = null;
+        for (IndexedJar jar : classPathIndex.findJars(path)) {
+            clazz = this.defineClass(name, jar, path);
+            if (clazz != null) {
+                break;
+            }
+        }
+        if (clazz == null && !classPathIndex.isComplete()) {
+            try {
+                clazz = super.findClass(name);
+            } catch (ClassNotFoundException ignored) {
+            }
+        }
+
+        Set<String> definedClassNames = this.definedClassNames;
+        if (clazz != null && definedClassNames != null) {
+            definedClassNames.add(name);
+        }
+        return clazz;
+    }
+
+    /**
+     * 只在当前类加载器中加载类，不委派给父类加载器，找不到时返回null
+     *
+     * @param name 类的全限定名
+     * @return 类，找不到时返回null
+     * @throws ClassNotFoundException 找到了类文件但是读取失败
+     */
+    protected Class<?> loadClassOrNull(String name) throws ClassNotFoundException {
+        synchronized (this.getClassLoadingLock(name)) {
+            Class<?> clazz = this.findLoadedClass(name);
+            return clazz != null ? clazz : this.findClassOrNull(name);
+        }
+    }
+
+    /**
+     * 判断当前类加载器是否可能包含指定包的类
+     *
+     * @param packagePath 包路径，格式为{@code com/example}
+     * @return 存在未建立索引的类路径时总是返回true
+     */
+    protected boolean mayContainPackage(String packagePath) {
+        return !classPathIndex.isComplete() || classPathIndex.containsPackage(packagePath);
+    }
+
+    /**
+     * 从所属的JAR包读取字节码并定义类
+     *
+     * @return JAR包中不存在该类时返回null
+     */
+    private Class<?> defineClass(String name, IndexedJar jar, String path) throws ClassNotFoundException {
+        try {
+            return jar.readEntry(path, (buffer, codeSigners) -> {
+                this.definePackageIfNecessary(name, jar);
+                return this.defineClass(name, buffer, new CodeSource(jar.getUrl(), codeSigners));
+            });
+        } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+    }
+
+    private void definePackageIfNecessary(String className, IndexedJar jar) throws IOException {
+        int index = className.lastIndexOf('.');
+        if (index == -1) {
+            return;
+        }
+        String packageName = className.substring(0, index);
+        if (this.getDefinedPackage(packageName) != null) {
+            return;
+        }
+
+        Manifest manifest = jar.getManifest();
+        try {
+            if (manifest != null) {
+                this.definePackage(packageName, manifest, jar.getUrl());
+            } else {
+                this.definePackage(packageName, null, null, null, null, null, null, null);
+            }
+        } catch (IllegalArgumentException e) {
+            // 并行加载时已经被其他线程定义
+            if (this.getDefinedPackage(packageName) == null) {
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public URL findResource(String name) {
+        for (IndexedJar jar : classPathIndex.findJars(name)) {
+            if (jar.hasEntry(name)) {
+                return jar.getResourceUrl(name);
+            }
+        }
+        return classPathIndex.isComplete() ? null : super.findResource(name);
+    }
+
+    @Override
+    public Enumeration<URL> findResources(String name) throws IOException {
+        if (!classPathIndex.isComplete()) {
+            return super.findResources(name);
+        }
+        List<URL> resources = new ArrayList<>();
+        for (IndexedJar jar : classPathIndex.findJars(name)) {
+            if (jar.hasEntry(name)) {
+                resources.add(jar.getResourceUrl(name));
+            }
+        }
+        return Collections.enumeration(resources);
+    }
+
+    /**
+     * 当前类加载器自身JAR包中的资源通过{@link JarFilePool}读取，避免{@link java.net.JarURLConnection}缓存额外的JAR包句柄
+     */
+    @Override
+    public InputStream getResourceAsStream(String name) {
+        URL url = this.getResource(name);
+        if (url == null) {
+            return null;
+        }
+        String location = url.toString();
+        for (IndexedJar jar : classPathIndex.findJars(name)) {
+            URL resourceUrl = jar.getResourceUrl(name);
+            if (resourceUrl == null || !location.equals(resourceUrl.toString())) {
+                continue;
+            }
+            try {
+                byte[] bytes = jar.readEntry(name, (buffer, codeSigners) -> {
+                    if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.remaining() == buffer.array().length) {
+                        return buffer.array();
+                    }
+                    byte[] array = new byte[buffer.remaining()];
+                    buffer.get(array);
+                    return array;
+                });
+                return bytes != null ? new ByteArrayInputStream(bytes) : null;
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return super.getResourceAsStream(name);
     }
 
     @Override
     public void close() {
         try {
             super.close();
+            classPathIndex.close();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public void addURL(File file) throws MalformedURLException {
-        this.addURL(file.toURI().toURL());
+    /**
+     * 添加未建立索引的URL，查找不到的类和资源会回退到逐个探测类路径
+     *
+     * @param url 类路径
+     */
+    @Override
+    protected void addURL(URL url) {
+        super.addURL(url);
+        classPathIndex.addUnindexed();
+        this.classPathChanged();
+    }
+
+    /**
+     * 类路径发生变化时回调，子类可以在这里清理查找缓存
+     */
+    protected void classPathChanged() {
+    }
+
+    public void addURL(File file) throws IOException {
+        if (loadJarFiles.contains(file)) {
+            return;
+        }
+        if (isJarFile(file)) {
+            IndexedJar jar = memoryMapped ? MappedJar.open(file) : IndexedJar.open(file);
+            classPathIndex.add(jar);
+            super.addURL(jar.getUrl());
+            this.classPathChanged();
+        } else {
+            this.addURL(file.toURI().toURL());
+        }
         loadJarFiles.add(file);
     }
 
@@ -77,6 +275,52 @@ public class JarClassLoader extends URLClassLoader {
         }
     }
 
+    /**
+     * 添加嵌套在压缩包中的JAR包，不需要解压就可以直接加载，压缩包中的JAR包必须是未压缩存储的
+     *
+     * @param archiveFile 压缩包文件
+     * @param entryName   JAR包在压缩包中的路径
+     * @throws IOException IO异常
+     */
+    public void addNestedJar(File archiveFile, String entryName) throws IOException {
+        NestedJarHandlers.register();
+        IndexedJar jar = IndexedJar.open(JarUrl.create(archiveFile, entryName));
+        classPathIndex.add(jar);
+        super.addURL(jar.getUrl());
+        this.classPathChanged();
+    }
+
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    /**
+     * 开启或关闭记录当前类加载器定义的类
+     */
+    public void setRecordDefinedClasses(boolean record) {
+        if (!record) {
+            this.definedClassNames = null;
+        } else if (this.definedClassNames == null) {
+            this.definedClassNames = ConcurrentHashMap.newKeySet();
+        }
+    }
+
+    public boolean isRecordDefinedClasses() {
+        return definedClassNames != null;
+    }
+
+    /**
+     * 获取记录的类名，不保证顺序，未开启记录时返回空集合
+     */
+    public Set<String> getDefinedClassNames() {
+        Set<String> definedClassNames = this.definedClassNames;
+        return definedClassNames == null ? Set.of() : Set.copyOf(definedClassNames);
+    }
+
     public Set<File> getLoadJarFiles() {
         return Set.copyOf(loadJarFiles);
     }
@@ -120,4 +364,24 @@ public class JarClassLoader extends URLClassLoader {
         return loader;
     }
 
+    /**
+     * 注册spring-boot-loader的nested、jar协议处理器，只需要注册一次
+     */
+    static class NestedJarHandlers {
+
+        private static volatile boolean registered;
+
+        static void register() {
+            if (registered) {
+                return;
+            }
+            synchronized (NestedJarHandlers.class) {
+                if (!registered) {
+                    Handlers.register();
+                    registered = true;
+                }
+            }
+        }
+    }
+
 }
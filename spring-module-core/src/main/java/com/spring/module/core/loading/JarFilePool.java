@@ -0,0 +1,215 @@
+package com.spring.module.core.loading;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.jar.JarFile;
+import java.util.zip.ZipException;
+
+/**
+ * 所有模块类加载器共享的JAR包句柄池
+ * <p>
+ * 打开的JAR包数量超过上限时，按最近最少使用的顺序关闭未在使用的JAR包，再次访问时重新打开。
+ * 正在读取的JAR包不会被关闭，全部在使用时允许暂时超过上限。
+ * <p>
+ * 读取JAR包时只更新JAR包自身的访问时间，不持有池的全局锁；只有打开JAR包后超过上限时才扫描所有JAR包，
+ * 按访问时间淘汰，淘汰顺序是近似的最近最少使用
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-07
+ * @since 1.0
+ */
+public class JarFilePool {
+
+    private static final Log LOG = LogFactory.getLog(JarFilePool.class);
+
+    public static final int DEFAULT_MAX_OPEN_FILES = 1024;
+
+    private static final JarFilePool SHARED = new JarFilePool(DEFAULT_MAX_OPEN_FILES);
+
+    /**
+     * 已打开的JAR包，在JAR包自身的锁内增删
+     */
+    private final Set<IndexedJar> openJars = ConcurrentHashMap.newKeySet();
+    /**
+     * 同一时间只有一个线程淘汰，其他线程打开JAR包时不等待
+     */
+    private final ReentrantLock evictLock = new ReentrantLock();
+    private volatile int maxOpenFiles;
+
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder reopenCount = new LongAdder();
+    private final LongAdder reopenTimeNanos = new LongAdder();
+
+    public JarFilePool(int maxOpenFiles) {
+        this.setMaxOpenFiles(maxOpenFiles);
+    }
+
+    public static JarFilePool getShared() {
+        return SHARED;
+    }
+
+    /**
+     * 获取JAR包句柄，使用完后必须调用{@link #release(IndexedJar)}
+     *
+     * @param jar JAR包
+     * @return 已打开的JAR包句柄
+     * @throws IOException IO异常
+     */
+    JarFile acquire(IndexedJar jar) throws IOException {
+        JarFile jarFile;
+        boolean reopened = false;
+        synchronized (jar) {
+            if (jar.closed) {
+                throw new ZipException("JAR包已经关闭：" + jar);
+            }
+            if (jar.jarFile == null) {
+                long start = System.nanoTime();
+                jar.jarFile = jar.openJarFile();
+                reopenTimeNanos.add(System.nanoTime() - start);
+                reopenCount.increment();
+                openJars.add(jar);
+                reopened = true;
+            }
+            jar.pins++;
+            jarFile = jar.jarFile;
+        }
+        jar.lastAccess = System.nanoTime();
+        if (reopened) {
+            this.evictIfNecessary();
+        }
+        return jarFile;
+    }
+
+    void release(IndexedJar jar) {
+        synchronized (jar) {
+            jar.pins--;
+        }
+    }
+
+    /**
+     * 登记首次打开的JAR包
+     */
+    void register(IndexedJar jar) {
+        synchronized (jar) {
+            openJars.add(jar);
+        }
+        jar.lastAccess = System.nanoTime();
+        this.evictIfNecessary();
+    }
+
+    /**
+     * 关闭并移除JAR包
+     */
+    void remove(IndexedJar jar) throws IOException {
+        synchronized (jar) {
+            openJars.remove(jar);
+            jar.closed = true;
+            JarFile jarFile = jar.jarFile;
+            jar.jarFile = null;
+            if (jarFile != null) {
+                jarFile.close();
+            }
+        }
+    }
+
+    /**
+     * 超过上限时扫描一遍已打开的JAR包，按访问时间从早到晚关闭未在使用的JAR包
+     */
+    private void evictIfNecessary() {
+        if (openJars.size() <= maxOpenFiles || !evictLock.tryLock()) {
+            return;
+        }
+        try {
+            List<Candidate> candidates = new ArrayList<>(openJars.size());
+            for (IndexedJar jar : openJars) {
+                candidates.add(new Candidate(jar, jar.lastAccess));
+            }
+            candidates.sort(Comparator.comparingLong(Candidate::lastAccess));
+            for (Candidate candidate : candidates) {
+                if (openJars.size() <= maxOpenFiles) {
+                    break;
+                }
+                this.evict(candidate);
+            }
+        } finally {
+            evictLock.unlock();
+        }
+    }
+
+    private void evict(Candidate candidate) {
+        IndexedJar jar = candidate.jar();
+        synchronized (jar) {
+            // 扫描之后又被访问过的JAR包留到下次淘汰
+            if (jar.pins > 0 || jar.lastAccess != candidate.lastAccess()) {
+                return;
+            }
+            openJars.remove(jar);
+            JarFile jarFile = jar.jarFile;
+            jar.jarFile = null;
+            if (jarFile == null) {
+                return;
+            }
+            try {
+                jarFile.close();
+            } catch (IOException e) {
+                LOG.warn("关闭JAR包失败：" + jar, e);
+            }
+            evictionCount.increment();
+        }
+    }
+
+    /**
+     * 当前打开的JAR包数量
+     */
+    public int getOpenCount() {
+        return openJars.size();
+    }
+
+    /**
+     * 因超过上限被关闭的次数
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * 被关闭后重新打开的次数
+     */
+    public long getReopenCount() {
+        return reopenCount.sum();
+    }
+
+    /**
+     * 重新打开JAR包的累计耗时，单位纳秒
+     */
+    public long getReopenTimeNanos() {
+        return reopenTimeNanos.sum();
+    }
+
+    public int getMaxOpenFiles() {
+        return maxOpenFiles;
+    }
+
+    public void setMaxOpenFiles(int maxOpenFiles) {
+        if (maxOpenFiles <= 0) {
+            throw new IllegalArgumentException("maxOpenFiles必须大于0");
+        }
+        this.maxOpenFiles = maxOpenFiles;
+    }
+
+    /**
+     * 淘汰扫描时JAR包的访问时间
+     */
+    private record Candidate(IndexedJar jar, long lastAccess) {
+    }
+
+}
@@ -0,0 +1,318 @@
+package com.spring.module.core.loading;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * 内存映射的JAR包，类文件直接从映射区域定义，不经过{@link JarFile}的输入流和临时字节数组
+ * <p>
+ * 未压缩存储的类文件直接使用映射区域的切片，压缩的类文件解压到池化的直接缓冲区。
+ * 签名的JAR包、ZIP64格式和超过2GB的JAR包不做映射。映射区域不占用文件句柄，读取类文件时不需要{@link JarFilePool}重新打开JAR包
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-06
+ * @since 1.0
+ */
+public class MappedJar extends IndexedJar {
+
+    private static final int END_HEADER_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    private static final int POOL_SIZE = 16;
+    private static final int MIN_BUFFER_SIZE = 64 * 1024;
+    private static final Queue<ByteBuffer> BUFFER_POOL = new ConcurrentLinkedQueue<>();
+    private static final Queue<Inflater> INFLATER_POOL = new ConcurrentLinkedQueue<>();
+
+    private final MappedByteBuffer mapping;
+    private final Map<String, ClassEntry> classEntries;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean unmapped;
+
+    protected MappedJar(URL url, URL baseUrl, JarFileOpener opener, JarFilePool pool, MappedByteBuffer mapping,
+                        Map<String, ClassEntry> classEntries) throws IOException {
+        super(url, baseUrl, opener, pool);
+        this.mapping = mapping;
+        this.classEntries = classEntries;
+    }
+
+    /**
+     * 打开并映射本地JAR包，不能映射时返回普通的{@link IndexedJar}
+     *
+     * @param file JAR包文件
+     * @return 已打开的JAR包
+     * @throws IOException IO异常
+     */
+    public static IndexedJar open(File file) throws IOException {
+        MappedByteBuffer mapping;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return IndexedJar.open(file);
+            }
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        mapping.order(ByteOrder.LITTLE_ENDIAN);
+
+        Map<String, ClassEntry> classEntries;
+        try {
+            classEntries = readCentralDirectory(mapping);
+        } catch (IndexOutOfBoundsException e) {
+            // 中央目录损坏时交给JarFile处理
+            classEntries = null;
+        }
+        if (classEntries == null) {
+            unmap(mapping);
+            return IndexedJar.open(file);
+        }
+
+        URL url = file.toURI().toURL();
+        try {
+            return new MappedJar(url, toBaseUrl(url), fileOpener(file), JarFilePool.getShared(),
+                    mapping, classEntries);
+        } catch (IOException | RuntimeException e) {
+            unmap(mapping);
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean hasEntry(String name) {
+        if (!this.isMultiRelease() && classEntries.containsKey(name)) {
+            return true;
+        }
+        return super.hasEntry(name);
+    }
+
+    @Override
+    public <T> T readEntry(String name, EntryReader<T> reader) throws IOException {
+        String realName = name;
+        if (this.isMultiRelease()) {
+            // 多版本JAR包中实际读取的是版本目录下的条目
+            realName = this.withJarFile(jarFile -> {
+                JarEntry entry = jarFile.getJarEntry(name);
+                return entry != null ? entry.getRealName() : name;
+            });
+        }
+        ClassEntry classEntry = classEntries.get(realName);
+        if (classEntry == null) {
+            return super.readEntry(name, reader);
+        }
+
+        // 未签名的JAR包，不需要打开JAR包句柄
+        lock.readLock().lock();
+        try {
+            if (unmapped) {
+                throw new ZipException("JAR包已经关闭：" + this.getUrl());
+            }
+            int dataOffset = this.getDataOffset(classEntry);
+            ByteBuffer data = mapping.slice(dataOffset, classEntry.compressedSize());
+            if (classEntry.method() == ZipEntry.STORED) {
+                return reader.read(data, null);
+            }
+            return inflate(data, classEntry.size(), reader);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int getDataOffset(ClassEntry classEntry) throws ZipException {
+        int offset = classEntry.localHeaderOffset();
+        if (mapping.getInt(offset) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("无效的本地文件头：" + this.getUrl());
+        }
+        int nameLength = Short.toUnsignedInt(mapping.getShort(offset + 26));
+        int extraLength = Short.toUnsignedInt(mapping.getShort(offset + 28));
+        long dataOffset = (long) offset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+        if (dataOffset + classEntry.compressedSize() > mapping.limit()) {
+            throw new ZipException("无效的条目长度：" + this.getUrl());
+        }
+        return (int) dataOffset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (!unmapped) {
+                unmapped = true;
+                unmap(mapping);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        super.close();
+    }
+
+    private static <T> T inflate(ByteBuffer data, int size, EntryReader<T> reader) throws IOException {
+        Inflater inflater = INFLATER_POOL.poll();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        ByteBuffer buffer = BUFFER_POOL.poll();
+        if (buffer == null || buffer.capacity() < size) {
+            buffer = ByteBuffer.allocateDirect(Math.max(size, MIN_BUFFER_SIZE));
+        }
+
+        try {
+            inflater.setInput(data);
+            buffer.clear().limit(size);
+            while (buffer.hasRemaining()) {
+                if (inflater.inflate(buffer) == 0 && (inflater.finished() || inflater.needsInput()
+                        || inflater.needsDictionary())) {
+                    throw new ZipException("压缩数据不完整");
+                }
+            }
+            buffer.flip();
+            return reader.read(buffer, null);
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        } finally {
+            inflater.reset();
+            release(INFLATER_POOL, inflater);
+            release(BUFFER_POOL, buffer);
+        }
+    }
+
+    private static <T> void release(Queue<T> pool, T item) {
+        if (pool.size() < POOL_SIZE) {
+            pool.offer(item);
+        } else if (item instanceof Inflater inflater) {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 读取中央目录中的类文件条目
+     *
+     * @return 不支持映射时返回null
+     */
+    private static Map<String, ClassEntry> readCentralDirectory(ByteBuffer mapping) {
+        int endOffset = findEndHeader(mapping);
+        if (endOffset == -1) {
+            return null;
+        }
+        int totalEntries = Short.toUnsignedInt(mapping.getShort(endOffset + 10));
+        long centralSize = Integer.toUnsignedLong(mapping.getInt(endOffset + 12));
+        long centralOffset = Integer.toUnsignedLong(mapping.getInt(endOffset + 16));
+        if (totalEntries == 0xFFFF || centralSize == 0xFFFFFFFFL || centralOffset == 0xFFFFFFFFL
+                || centralOffset + centralSize > endOffset) {
+            return null;
+        }
+
+        Map<String, ClassEntry> classEntries = new HashMap<>();
+        int offset = (int) centralOffset;
+        for (int i = 0; i < totalEntries; i++) {
+            if (offset + CENTRAL_HEADER_SIZE > endOffset || mapping.getInt(offset) != CENTRAL_HEADER_SIGNATURE) {
+                return null;
+            }
+            int flag = Short.toUnsignedInt(mapping.getShort(offset + 8));
+            int method = Short.toUnsignedInt(mapping.getShort(offset + 10));
+            long compressedSize = Integer.toUnsignedLong(mapping.getInt(offset + 20));
+            long size = Integer.toUnsignedLong(mapping.getInt(offset + 24));
+            int nameLength = Short.toUnsignedInt(mapping.getShort(offset + 28));
+            int extraLength = Short.toUnsignedInt(mapping.getShort(offset + 30));
+            int commentLength = Short.toUnsignedInt(mapping.getShort(offset + 32));
+            long localHeaderOffset = Integer.toUnsignedLong(mapping.getInt(offset + 42));
+
+            byte[] nameBytes = new byte[nameLength];
+            mapping.get(offset + CENTRAL_HEADER_SIZE, nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+            if (isSignatureFile(name) || (flag & 1) != 0) {
+                // 签名校验和加密条目交给JarFile处理
+                return null;
+            }
+            if (name.endsWith(".class") && (method == ZipEntry.STORED || method == ZipEntry.DEFLATED)
+                    && compressedSize < centralOffset && size < Integer.MAX_VALUE
+                    && localHeaderOffset < centralOffset) {
+                classEntries.put(name, new ClassEntry(method, (int) localHeaderOffset,
+                        (int) compressedSize, (int) size));
+            }
+            offset += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return classEntries;
+    }
+
+    private static int findEndHeader(ByteBuffer mapping) {
+        int limit = Math.max(0, mapping.limit() - END_HEADER_SIZE - MAX_COMMENT_SIZE);
+        for (int offset = mapping.limit() - END_HEADER_SIZE; offset >= limit; offset--) {
+            if (mapping.getInt(offset) == END_HEADER_SIGNATURE) {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isSignatureFile(String name) {
+        if (!name.startsWith("META-INF/")) {
+            return false;
+        }
+        return name.endsWith(".SF") || name.endsWith(".RSA") || name.endsWith(".DSA") || name.endsWith(".EC");
+    }
+
+    /**
+     * 立即释放映射区域，不支持时等待GC回收
+     */
+    private static void unmap(MappedByteBuffer mapping) {
+        Method invokeCleaner = Unmapper.INVOKE_CLEANER;
+        if (invokeCleaner == null) {
+            return;
+        }
+        try {
+            invokeCleaner.invoke(Unmapper.UNSAFE, mapping);
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+        }
+    }
+
+    /**
+     * 中央目录中类文件条目的位置
+     */
+    record ClassEntry(int method, int localHeaderOffset, int compressedSize, int size) {
+    }
+
+    private static class Unmapper {
+
+        private static final Object UNSAFE;
+        private static final Method INVOKE_CLEANER;
+
+        static {
+            Object unsafe = null;
+            Method invokeCleaner = null;
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                unsafe = field.get(null);
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (ReflectiveOperationException | RuntimeException ignored) {
+            }
+            UNSAFE = unsafe;
+            INVOKE_CLEANER = invokeCleaner;
+        }
+    }
+
+}
@@ -0,0 +1,169 @@
+package com.spring.module.core.loading;
+
+import com.spring.module.core.utils.ZipUtil;
+import org.springframework.lang.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static com.spring.module.core.exception.ModuleLoadException.digestMismatch;
+import static com.spring.module.core.exception.ModuleLoadException.invalidModuleFile;
+import static com.spring.module.core.utils.PathUtils.DIGEST_MANIFEST_NAME;
+
+/**
+ * 模块包的摘要校验
+ * <p>
+ * 模块包根目录下的摘要清单{@value com.spring.module.core.utils.PathUtils#DIGEST_MANIFEST_NAME}与sha256sum的输出格式一致，
+ * 每行是SHA-256摘要和相对模块根目录的文件路径，模块包中的所有文件都必须出现在清单中。
+ * 条目的摘要在解压写入磁盘的同时计算，校验不需要再读取一遍解压后的文件
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-09
+ * @since 1.0
+ */
+public class ModuleDigestVerifier implements ZipUtil.EntryVerifier {
+
+    private static final int DIGEST_HEX_LENGTH = 64;
+
+    private final String manifestEntryName;
+    private final Map<String, byte[]> entryDigests;
+
+    protected ModuleDigestVerifier(String manifestEntryName, Map<String, byte[]> entryDigests) {
+        this.manifestEntryName = manifestEntryName;
+        this.entryDigests = entryDigests;
+    }
+
+    /**
+     * 读取模块包中的摘要清单，只读取中央目录和清单条目
+     *
+     * @param archivePath 模块包文件
+     * @return 模块包中没有摘要清单时返回null
+     * @throws IOException IO异常
+     */
+    @Nullable
+    public static ModuleDigestVerifier load(Path archivePath) throws IOException {
+        try (ZipFile zip = new ZipFile(archivePath.toFile())) {
+            ZipEntry manifestEntry = findManifestEntry(zip);
+            if (manifestEntry == null) {
+                return null;
+            }
+
+            String manifestName = manifestEntry.getName();
+            String rootName = manifestName.substring(0, manifestName.indexOf('/') + 1);
+            Map<String, byte[]> entryDigests = new HashMap<>();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(zip.getInputStream(manifestEntry), StandardCharsets.UTF_8))) {
+                String line;
+                int lineNumber = 0;
+                while ((line = reader.readLine()) != null) {
+                    lineNumber++;
+                    line = line.strip();
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+                    String entryName = rootName + parseFileName(line, lineNumber);
+                    if (zip.getEntry(entryName) == null) {
+                        digestMismatch("摘要清单中的条目[" + entryName + "]不存在");
+                    }
+                    entryDigests.put(entryName, parseDigest(line, lineNumber));
+                }
+            }
+            return new ModuleDigestVerifier(manifestName, entryDigests);
+        }
+    }
+
+    /**
+     * 摘要清单只能在模块根目录下
+     */
+    private static ZipEntry findManifestEntry(ZipFile zip) {
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            String name = entry.getName();
+            int index = name.indexOf('/');
+            if (index > 0 && name.indexOf('/', index + 1) == -1
+                    && name.substring(index + 1).equals(DIGEST_MANIFEST_NAME)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private static byte[] parseDigest(String line, int lineNumber) {
+        try {
+            return HexFormat.of().parseHex(line, 0, DIGEST_HEX_LENGTH);
+        } catch (IllegalArgumentException e) {
+            invalidModuleFile("摘要清单第" + lineNumber + "行的摘要格式错误");
+            return null;
+        }
+    }
+
+    /**
+     * 摘要和文件名之间用空格分隔，二进制模式的文件名以*开头
+     */
+    private static String parseFileName(String line, int lineNumber) {
+        if (line.length() <= DIGEST_HEX_LENGTH + 1 || line.charAt(DIGEST_HEX_LENGTH) != ' ') {
+            invalidModuleFile("摘要清单第" + lineNumber + "行格式错误");
+        }
+        String fileName = line.substring(DIGEST_HEX_LENGTH + 1).stripLeading();
+        return fileName.startsWith("*") ? fileName.substring(1) : fileName;
+    }
+
+    @Override
+    public void verify(ZipEntry entry, byte[] digest) {
+        String name = entry.getName();
+        if (name.equals(manifestEntryName)) {
+            return;
+        }
+        byte[] expected = entryDigests.get(name);
+        if (expected == null) {
+            digestMismatch("条目[" + name + "]不在摘要清单中");
+        }
+        if (!MessageDigest.isEqual(expected, digest)) {
+            digestMismatch("条目[" + name + "]的摘要与摘要清单不一致");
+        }
+    }
+
+    /**
+     * 校验不解压的条目，嵌套加载时JAR包不写入磁盘，只能单独读取一遍计算摘要
+     *
+     * @param archivePath 模块包文件
+     * @param filter      需要校验的条目过滤器
+     * @throws IOException IO异常
+     */
+    public void verifyEntries(Path archivePath, Predicate<ZipEntry> filter) throws IOException {
+        try (ZipFile zip = new ZipFile(archivePath.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory() && filter.test(entry)) {
+                    this.verify(entry, ZipUtil.digest(zip, entry));
+                }
+            }
+        }
+    }
+
+    /**
+     * 校验整个模块包的摘要
+     *
+     * @param expectedDigest 预期的SHA-256摘要，十六进制格式
+     * @param actualDigest   实际的SHA-256摘要，十六进制格式
+     */
+    public static void verifyArchiveDigest(String expectedDigest, String actualDigest) {
+        if (!expectedDigest.strip().equalsIgnoreCase(actualDigest)) {
+            digestMismatch("模块包的摘要[" + actualDigest + "]与预期的摘要[" + expectedDigest + "]不一致");
+        }
+    }
+
+}
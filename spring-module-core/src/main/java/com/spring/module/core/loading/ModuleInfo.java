@@ -1,10 +1,15 @@
 package com.spring.module.core.loading;
 
+import com.abm.module.api.TriadMetadata;
 import com.spring.module.core.parse.ModuleDependency;
+import com.spring.module.core.utils.PathUtils;
 
 import java.io.File;
 import java.nio.file.Path;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * 加载的模块信息
@@ -29,6 +34,16 @@ public class ModuleInfo {
      */
     private List<Path> excludeLibs = List.of();
 
+    /**
+     * lib依赖在共享存储中的路径，key为依赖的文件名
+     */
+    private Map<Path, Path> sharedLibs = Map.of();
+
+    /**
+     * 由父模块提供的依赖，不包含主应用已经存在的依赖
+     */
+    private Set<TriadMetadata> providedDependencies = new HashSet<>();
+
     /**
      * 依赖项dependencies.dot文件路径
      */
@@ -39,6 +54,11 @@ public class ModuleInfo {
      */
     private ModuleDependency moduleDependency;
 
+    /**
+     * 模块包文件，不为空时JAR包和依赖直接从该文件中嵌套读取，不会解压到磁盘
+     */
+    private File archiveFile;
+
     public File getJarFile() {
         return jarFile;
     }
@@ -63,6 +83,36 @@ public class ModuleInfo {
         this.excludeLibs = excludeLibs;
     }
 
+    public Map<Path, Path> getSharedLibs() {
+        return sharedLibs;
+    }
+
+    public void setSharedLibs(Map<Path, Path> sharedLibs) {
+        this.sharedLibs = sharedLibs;
+    }
+
+    /**
+     * 获取lib依赖实际加载的文件，优先使用共享存储中的路径
+     *
+     * @param lib 依赖的文件名
+     * @return 依赖文件
+     */
+    public File getLibFile(Path lib) {
+        Path sharedLib = sharedLibs.get(lib);
+        if (sharedLib != null) {
+            return sharedLib.toFile();
+        }
+        return new File(PathUtils.getLibFile(jarFile), lib.toString());
+    }
+
+    public Set<TriadMetadata> getProvidedDependencies() {
+        return providedDependencies;
+    }
+
+    public void setProvidedDependencies(Set<TriadMetadata> providedDependencies) {
+        this.providedDependencies = providedDependencies;
+    }
+
     public File getDependencyFile() {
         return dependencyFile;
     }
@@ -79,4 +129,16 @@ public class ModuleInfo {
         return moduleDependency;
     }
 
+    public File getArchiveFile() {
+        return archiveFile;
+    }
+
+    public void setArchiveFile(File archiveFile) {
+        this.archiveFile = archiveFile;
+    }
+
+    public boolean isNested() {
+        return archiveFile != null;
+    }
+
 }
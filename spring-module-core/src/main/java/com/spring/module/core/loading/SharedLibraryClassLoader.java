@@ -0,0 +1,52 @@
+package com.spring.module.core.loading;
+
+import com.abm.module.api.TriadMetadata;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 共享依赖的类加载器
+ * <p>
+ * 每个依赖坐标只有一个实例，位于应用类加载器和模块类加载器之间，由{@link SharedLibraryRegistry}维护引用计数，
+ * 依赖的其他共享依赖通过{@link #addSharedLibrary(SharedLibraryClassLoader)}关联
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-04
+ * @since 1.0
+ */
+public class SharedLibraryClassLoader extends ZipClassLoader {
+
+    private final TriadMetadata metadata;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    public SharedLibraryClassLoader(TriadMetadata metadata, ClassLoader parent) {
+        super(parent);
+        this.metadata = metadata;
+    }
+
+    int retain() {
+        return references.incrementAndGet();
+    }
+
+    int release() {
+        return references.decrementAndGet();
+    }
+
+    public int getReferences() {
+        return references.get();
+    }
+
+    public TriadMetadata getMetadata() {
+        return metadata;
+    }
+
+    @Override
+    public String toString() {
+        return "SharedLibraryClassLoader[" + metadata + "]";
+    }
+
+}
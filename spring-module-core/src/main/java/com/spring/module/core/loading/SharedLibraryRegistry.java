@@ -0,0 +1,175 @@
+package com.spring.module.core.loading;
+
+import com.abm.module.api.TriadMetadata;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jgrapht.Graph;
+import org.jgrapht.Graphs;
+import org.jgrapht.graph.DefaultEdge;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 共享依赖类加载器的注册表
+ * <p>
+ * 没有父子关系的模块依赖相同坐标的JAR包时，只会定义一次类，避免元空间随模块数量线性增长。
+ * 依赖只有在其所有传递依赖也能共享，或者由应用类加载器提供时才会被共享
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-04
+ * @since 1.0
+ */
+public class SharedLibraryRegistry {
+
+    private static final Log LOG = LogFactory.getLog(SharedLibraryRegistry.class);
+
+    private final ClassLoader parent;
+    private final Map<TriadMetadata, SharedLibraryClassLoader> classLoaders = new HashMap<>();
+    private final List<Consumer<SharedLibraryClassLoader>> closeListeners = new CopyOnWriteArrayList<>();
+
+    public SharedLibraryRegistry(ClassLoader parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * 获取模块依赖对应的共享类加载器，每个返回的类加载器引用计数加一
+     *
+     * @param candidates     模块私有的依赖
+     * @param graph          模块的依赖关系图，边的方向：被依赖的JAR包 -> 依赖它的JAR包
+     * @param moduleProvided 由模块自身或者父模块提供的依赖，依赖了它们的JAR包不能共享
+     * @param libraryLoader  向类加载器添加依赖JAR包
+     * @return 可以共享的依赖及其类加载器，不在结果中的依赖仍由模块类加载器加载
+     * @throws IOException IO异常
+     */
+    public synchronized Map<TriadMetadata, SharedLibraryClassLoader> acquire(Set<TriadMetadata> candidates,
+            Graph<TriadMetadata, DefaultEdge> graph, Set<TriadMetadata> moduleProvided,
+            LibraryLoader libraryLoader) throws IOException {
+        Map<TriadMetadata, Boolean> shareable = new HashMap<>();
+        Map<TriadMetadata, SharedLibraryClassLoader> acquired = new LinkedHashMap<>();
+        try {
+            for (TriadMetadata candidate : candidates) {
+                if (this.isShareable(candidate, candidates, graph, moduleProvided, shareable)) {
+                    acquired.put(candidate, this.obtain(candidate, candidates, graph, libraryLoader));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            acquired.values().forEach(this::release);
+            throw e;
+        }
+        return acquired;
+    }
+
+    /**
+     * 释放共享类加载器，引用计数为零时关闭并释放其依赖的共享类加载器
+     *
+     * @param classLoader 共享类加载器
+     */
+    public synchronized void release(SharedLibraryClassLoader classLoader) {
+        if (classLoader.release() > 0) {
+            return;
+        }
+
+        classLoaders.remove(classLoader.getMetadata(), classLoader);
+        classLoader.close();
+        LOG.info("关闭共享依赖类加载器：" + classLoader.getMetadata());
+        for (Consumer<SharedLibraryClassLoader> closeListener : closeListeners) {
+            try {
+                closeListener.accept(classLoader);
+            } catch (RuntimeException e) {
+                LOG.warn("共享依赖类加载器关闭后的清理失败：" + classLoader.getMetadata(), e);
+            }
+        }
+        for (SharedLibraryClassLoader sharedLibrary : classLoader.getSharedLibraries()) {
+            this.release(sharedLibrary);
+        }
+    }
+
+    /**
+     * 添加共享类加载器关闭后的回调，用于清理按类加载器缓存的数据
+     *
+     * @param closeListener 引用计数为零、类加载器关闭后调用
+     */
+    public void addCloseListener(Consumer<SharedLibraryClassLoader> closeListener) {
+        closeListeners.add(closeListener);
+    }
+
+    public synchronized Set<TriadMetadata> getSharedLibraries() {
+        return Set.copyOf(classLoaders.keySet());
+    }
+
+    private boolean isShareable(TriadMetadata metadata, Set<TriadMetadata> candidates,
+            Graph<TriadMetadata, DefaultEdge> graph, Set<TriadMetadata> moduleProvided,
+            Map<TriadMetadata, Boolean> shareable) {
+        Boolean result = shareable.get(metadata);
+        if (result != null) {
+            return result;
+        }
+        if (classLoaders.containsKey(metadata)) {
+            shareable.put(metadata, true);
+            return true;
+        }
+        if (!candidates.contains(metadata)) {
+            // 不由模块提供的依赖来自应用类加载器，对共享类加载器可见
+            result = !moduleProvided.contains(metadata);
+            shareable.put(metadata, result);
+            return result;
+        }
+
+        // 先标记为不可共享，防止依赖环
+        shareable.put(metadata, false);
+        for (TriadMetadata dependency : Graphs.predecessorListOf(graph, metadata)) {
+            if (!this.isShareable(dependency, candidates, graph, moduleProvided, shareable)) {
+                return false;
+            }
+        }
+        shareable.put(metadata, true);
+        return true;
+    }
+
+    private SharedLibraryClassLoader obtain(TriadMetadata metadata, Set<TriadMetadata> candidates,
+            Graph<TriadMetadata, DefaultEdge> graph, LibraryLoader libraryLoader) throws IOException {
+        SharedLibraryClassLoader classLoader = classLoaders.get(metadata);
+        if (classLoader != null) {
+            classLoader.retain();
+            return classLoader;
+        }
+
+        classLoader = new SharedLibraryClassLoader(metadata, parent);
+        try {
+            libraryLoader.load(classLoader, metadata);
+            for (TriadMetadata dependency : Graphs.predecessorListOf(graph, metadata)) {
+                if (classLoaders.containsKey(dependency) || candidates.contains(dependency)) {
+                    classLoader.addSharedLibrary(this.obtain(dependency, candidates, graph, libraryLoader));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            classLoader.getSharedLibraries().forEach(this::release);
+            classLoader.close();
+            throw e;
+        }
+        classLoaders.put(metadata, classLoader);
+        LOG.info("创建共享依赖类加载器：" + metadata);
+        return classLoader;
+    }
+
+    /**
+     * 向共享类加载器添加依赖JAR包
+     */
+    @FunctionalInterface
+    public interface LibraryLoader {
+
+        /**
+         * 添加依赖的JAR包
+         *
+         * @param classLoader 共享类加载器
+         * @param metadata    依赖坐标
+         * @throws IOException IO异常
+         */
+        void load(JarClassLoader classLoader, TriadMetadata metadata) throws IOException;
+
+    }
+
+}
@@ -0,0 +1,148 @@
+package com.spring.module.core.loading;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import static com.spring.module.core.utils.PathUtils.JAR_NAME;
+
+/**
+ * 基于内容寻址的共享依赖存储
+ * <p>
+ * 模块lib目录的JAR包按SHA-256摘要存放到{@code packagesPath/.libs}目录，内容相同的JAR包在磁盘上只存一份，
+ * 模块目录中保留指向共享文件的硬链接，文件系统不支持硬链接时直接使用共享路径。
+ * 硬链接数就是引用计数，删除模块文件和应用启动时通过{@link #sweep()}清理只剩存储自身一个链接的文件
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-02
+ * @since 1.0
+ */
+public class SharedLibraryStore {
+
+    private static final Log LOG = LogFactory.getLog(SharedLibraryStore.class);
+
+    public static final String STORE_NAME = ".libs";
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final String LINK_COUNT_ATTRIBUTE = "unix:nlink";
+
+    private final Path storePath;
+
+    public SharedLibraryStore(Path packagesPath) {
+        this.storePath = packagesPath.resolve(STORE_NAME);
+    }
+
+    /**
+     * 将JAR包存入共享存储，原文件替换为指向共享文件的硬链接
+     * <p>
+     * 文件系统支持硬链接但创建失败时，原文件恢复为共享文件的副本，避免{@link #sweep()}删除模块正在使用的共享文件
+     *
+     * @param libFile 模块lib目录中的JAR包
+     * @return 模块类加载器使用的文件路径，通常是共享存储中的文件，创建硬链接失败时是模块自己的副本
+     * @throws IOException IO异常
+     */
+    public synchronized Path store(Path libFile) throws IOException {
+        Path sharedFile = this.resolve(digest(libFile));
+        Files.createDirectories(storePath);
+        if (Files.notExists(sharedFile)) {
+            // 摘要相同则内容相同，并发写入时覆盖不影响结果
+            Files.move(libFile, sharedFile, StandardCopyOption.ATOMIC_MOVE);
+        } else {
+            Files.delete(libFile);
+        }
+
+        try {
+            Files.createLink(libFile, sharedFile);
+        } catch (UnsupportedOperationException ignored) {
+            // 不支持硬链接时，类加载器直接使用共享路径，这类文件系统也不支持硬链接计数，不会被清理
+        } catch (IOException e) {
+            // 链接失败时共享文件的链接数不包含这个模块，会被清理掉，模块改用自己的副本
+            LOG.warn("创建共享依赖的硬链接失败，模块使用独立的副本：" + libFile, e);
+            Files.copy(sharedFile, libFile, StandardCopyOption.REPLACE_EXISTING);
+            return libFile;
+        }
+        return sharedFile;
+    }
+
+    /**
+     * 删除没有被任何模块目录链接的共享文件，和{@link #store(Path)}互斥，不会删除刚存入还没有建立链接的文件
+     * <p>
+     * 文件系统不支持硬链接计数时无法判断共享文件是否还在使用，不做清理
+     *
+     * @return 删除的文件数量
+     */
+    public synchronized int sweep() {
+        if (Files.notExists(storePath)) {
+            return 0;
+        }
+        int deleted = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(storePath, "*" + JAR_NAME)) {
+            if (!Files.getFileStore(storePath).supportsFileAttributeView("unix")) {
+                return 0;
+            }
+            for (Path file : files) {
+                try {
+                    if (((Number) Files.getAttribute(file, LINK_COUNT_ATTRIBUTE)).intValue() <= 1) {
+                        Files.deleteIfExists(file);
+                        deleted++;
+                    }
+                } catch (IOException e) {
+                    LOG.warn("清理共享依赖失败：" + file, e);
+                }
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            LOG.warn("清理共享依赖存储失败：" + storePath, e);
+        }
+        if (deleted > 0) {
+            LOG.info("清理共享依赖存储中不再使用的文件：" + deleted);
+        }
+        return deleted;
+    }
+
+    /**
+     * 通过摘要获取共享存储中的文件路径
+     *
+     * @param digest SHA-256摘要
+     * @return 共享文件路径
+     */
+    public Path resolve(String digest) {
+        return storePath.resolve(digest + JAR_NAME);
+    }
+
+    public Path getStorePath() {
+        return storePath;
+    }
+
+    /**
+     * 计算文件的SHA-256摘要
+     *
+     * @param file 文件
+     * @return 十六进制摘要
+     * @throws IOException IO异常
+     */
+    public static String digest(Path file) throws IOException {
+        MessageDigest messageDigest = createMessageDigest();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream is = Files.newInputStream(file)) {
+            int len;
+            while ((len = is.read(buffer)) != -1) {
+                messageDigest.update(buffer, 0, len);
+            }
+        }
+        return HexFormat.of().formatHex(messageDigest.digest());
+    }
+
+    public static MessageDigest createMessageDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -1,9 +1,14 @@
 package com.spring.module.core.loading;
 
+import org.springframework.lang.Nullable;
+
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * 模块加载器
@@ -21,7 +26,19 @@ public interface SpecModuleLoader {
      * @return 加载的模块信息
      * @throws IOException 加载IO异常
      */
-    ModuleInfo loadingSpecModule(InputStream is) throws IOException;
+    default ModuleInfo loadingSpecModule(InputStream is) throws IOException {
+        return loadingSpecModule(is, null);
+    }
+
+    /**
+     * 加载并校验模块包的基础信息和完整性，摘要在读取模块包的同时计算，不需要额外读取一遍模块包
+     *
+     * @param is             模块包的输入流
+     * @param expectedDigest 模块包预期的SHA-256摘要，十六进制格式，为null时只按模块包中的摘要清单校验
+     * @return 加载的模块信息
+     * @throws IOException 加载IO异常
+     */
+    ModuleInfo loadingSpecModule(InputStream is, @Nullable String expectedDigest) throws IOException;
 
     /**
      * 加载并校验模块包的基础信息
@@ -31,9 +48,56 @@ public interface SpecModuleLoader {
      * @throws IOException 加载IO异常
      */
     default ModuleInfo loadingSpecModule(File srcFile) throws IOException {
+        return loadingSpecModule(srcFile, null);
+    }
+
+    /**
+     * @see #loadingSpecModule(InputStream, String)
+     */
+    default ModuleInfo loadingSpecModule(File srcFile, @Nullable String expectedDigest) throws IOException {
         try (FileInputStream fis = new FileInputStream(srcFile)) {
-            return loadingSpecModule(fis);
+            return loadingSpecModule(fis, expectedDigest);
+        }
+    }
+
+    /**
+     * 加载已经落盘的模块包临时文件，临时文件交给加载器，加载结束后由加载器移动或者删除，调用方不再读取
+     *
+     * @param spoolFile      模块包的临时文件
+     * @param expectedDigest 模块包预期的SHA-256摘要，可以为null
+     * @return 加载的模块信息
+     * @throws IOException 加载IO异常
+     * @see #loadingSpecModule(File, String)
+     */
+    default ModuleInfo loadingSpooledModule(File spoolFile, @Nullable String expectedDigest) throws IOException {
+        try {
+            return loadingSpecModule(spoolFile, expectedDigest);
+        } finally {
+            Files.deleteIfExists(spoolFile.toPath());
+        }
+    }
+
+    /**
+     * 批量加载模块包，默认逐个加载，同一批次中的模块不能互相依赖
+     *
+     * @param inputs 模块包的输入流
+     * @return 按依赖的拓扑顺序排列的模块信息，父模块在前
+     * @throws IOException 加载IO异常
+     */
+    default List<ModuleInfo> loadingSpecModules(List<InputStream> inputs) throws IOException {
+        List<ModuleInfo> moduleInfos = new ArrayList<>(inputs.size());
+        for (InputStream is : inputs) {
+            moduleInfos.add(loadingSpecModule(is));
         }
+        return moduleInfos;
+    }
+
+    /**
+     * 删除加载模块包时写入的文件，用于安装失败后的回滚
+     *
+     * @param moduleInfo 模块信息
+     */
+    default void unloadingSpecModule(ModuleInfo moduleInfo) {
     }
 
 }
@@ -19,9 +19,10 @@ public class SpringClassLoader extends ZipClassLoader {
 
     public static final ArrayEnumeration<URL> AUTO_CONFIGURATION_RESOURCES;
     public static final String AUTO_CONFIGURATION_FILE = "META-INF/spring.factories";
+    public static final String COMPONENTS_INDEX_FILE = "META-INF/spring.components";
     public static final Set<String> SPRING_SPI_RESOURCES = Set.of(
             AUTO_CONFIGURATION_FILE,
-            "META-INF/spring.components",
+            COMPONENTS_INDEX_FILE,
             "META-INF/spring-autoconfigure-metadata.properties",
             "META-INF/spring/org.springframework.boot.autoconfigure.AutoConfiguration.imports"
     );
@@ -37,6 +38,11 @@ public class SpringClassLoader extends ZipClassLoader {
 
     private Map<String, ArrayEnumeration<URL>> locationResources;
 
+    // 开启并行加载，模块预热时多个线程同时加载类
+    static {
+        registerAsParallelCapable();
+    }
+
     public SpringClassLoader(ClassLoader parent) {
         super(parent);
     }
@@ -6,8 +6,15 @@ import com.spring.module.core.context.AnnotationApplicationModuleContext;
 import com.spring.module.core.module.ModulesRegistrar;
 import com.spring.module.core.parse.DependencyAnalyzer;
 import com.spring.module.core.parse.ModuleDependency;
+import com.spring.module.core.parse.ModuleNameResolver;
 import com.spring.module.core.utils.ZipUtil;
 import com.spring.module.tools.utils.JarFilePaths;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jgrapht.Graph;
+import org.jgrapht.graph.DefaultEdge;
+import org.jgrapht.graph.DirectedAcyclicGraph;
+import org.jgrapht.traverse.TopologicalOrderIterator;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.boot.ApplicationArguments;
@@ -16,6 +23,7 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.lang.NonNull;
 import org.springframework.util.CollectionUtils;
+import org.springframework.util.FileSystemUtils;
 
 import java.io.File;
 import java.io.IOException;
@@ -24,13 +32,18 @@ import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
-import java.util.Set;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
 
+import static com.spring.module.core.autoconfigure.ModuleProperties.LoadingMode.NESTED;
+import static com.spring.module.core.exception.ModuleLoadException.digestRequired;
 import static com.spring.module.core.exception.ModuleLoadException.invalidModuleFile;
+import static com.spring.module.core.loading.JarClassLoader.isJarPath;
 import static com.spring.module.core.parse.DependencyAnalyzer.LOCATION_RESOURCE;
 import static com.spring.module.core.utils.PathUtils.*;
 
@@ -44,29 +57,387 @@ import static com.spring.module.core.utils.PathUtils.*;
 public class SpringModuleLoader implements SpecModuleLoader, ApplicationContextAware,
         SmartInitializingSingleton, ApplicationRunner {
 
+    private static final Log LOG = LogFactory.getLog(SpringModuleLoader.class);
+
     private ModulesRegistrar modulesRegistrar;
     private DependencyAnalyzer dependencyAnalyzer;
+    private ModuleNameResolver moduleNameResolver;
     private ApplicationContext applicationContext;
 
     private ModuleDependency moduleDependency;
+    private SharedLibraryStore libraryStore;
     private final ModuleProperties moduleProperties;
 
     public SpringModuleLoader(ModuleProperties moduleProperties) {
         this.moduleProperties = moduleProperties;
+        this.libraryStore = new SharedLibraryStore(Paths.get(moduleProperties.getPackagesPath()));
+    }
+
+    @Override
+    public ModuleInfo loadingSpecModule(InputStream is, String expectedDigest) throws IOException {
+        ModuleInfo moduleInfo = this.extractSpecModule(is, expectedDigest);
+        this.resolveDependencies(moduleInfo, Map.of());
+        return moduleInfo;
+    }
+
+    /**
+     * 批量加载模块包：先解压全部模块包并分析依赖，同一批次中的模块互相作为父模块，再按依赖的拓扑顺序计算各模块的私有依赖。
+     * 任一模块包加载失败时删除本批次所有已经解压的模块文件
+     *
+     * @param inputs 模块包的输入流
+     * @return 按依赖的拓扑顺序排列的模块信息，父模块在前
+     * @throws IOException 加载IO异常
+     */
+    @Override
+    public List<ModuleInfo> loadingSpecModules(List<InputStream> inputs) throws IOException {
+        List<ModuleInfo> moduleInfos = new ArrayList<>(inputs.size());
+        try {
+            for (InputStream is : inputs) {
+                moduleInfos.add(this.extractSpecModule(is, null));
+            }
+            Map<String, ModuleInfo> batchModules = this.linkBatchModules(moduleInfos);
+            List<ModuleInfo> sortedModules = new ArrayList<>(moduleInfos.size());
+            TopologicalOrderIterator<String, DefaultEdge> iterator =
+                    new TopologicalOrderIterator<>(this.createBatchGraph(batchModules));
+            while (iterator.hasNext()) {
+                ModuleInfo moduleInfo = batchModules.get(iterator.next());
+                this.resolveDependencies(moduleInfo, batchModules);
+                sortedModules.add(moduleInfo);
+            }
+            return sortedModules;
+        } catch (IOException | RuntimeException e) {
+            moduleInfos.forEach(this::unloadingSpecModule);
+            throw e;
+        }
+    }
+
+    /**
+     * 同一批次中的模块还没有注册，依赖分析时不会被识别为父模块，这里按依赖关系补充
+     *
+     * @param moduleInfos 同一批次的模块信息
+     * @return key为模块名
+     */
+    protected Map<String, ModuleInfo> linkBatchModules(List<ModuleInfo> moduleInfos) {
+        Map<String, ModuleInfo> batchModules = new LinkedHashMap<>();
+        Map<TriadMetadata, String> moduleNames = new HashMap<>();
+        for (ModuleInfo moduleInfo : moduleInfos) {
+            TriadMetadata metadata = moduleInfo.getModuleDependency().getProjectMetadata();
+            String moduleName = moduleNameResolver.obtainModuleName(metadata);
+            if (batchModules.putIfAbsent(moduleName, moduleInfo) != null) {
+                invalidModuleFile("批量加载的模块重复：" + moduleName);
+            }
+            moduleNames.put(metadata, moduleName);
+        }
+
+        for (ModuleInfo moduleInfo : moduleInfos) {
+            ModuleDependency dependency = moduleInfo.getModuleDependency();
+            List<String> parentModules = dependency.getParentModules() == null ? new ArrayList<>()
+                    : new ArrayList<>(dependency.getParentModules());
+            for (TriadMetadata metadata : dependency.getDependencies()) {
+                String parentModule = moduleNames.get(metadata);
+                if (parentModule != null && !metadata.equals(dependency.getProjectMetadata())
+                        && !parentModules.contains(parentModule)) {
+                    parentModules.add(parentModule);
+                }
+            }
+            dependency.setParentModules(parentModules.isEmpty() ? null : parentModules);
+        }
+        return batchModules;
+    }
+
+    /**
+     * 同一批次模块的依赖图，边的方向为父模块指向子模块
+     */
+    protected Graph<String, DefaultEdge> createBatchGraph(Map<String, ModuleInfo> batchModules) {
+        Graph<String, DefaultEdge> graph = new DirectedAcyclicGraph<>(DefaultEdge.class);
+        batchModules.keySet().forEach(graph::addVertex);
+        batchModules.forEach((moduleName, moduleInfo) -> {
+            List<String> parentModules = moduleInfo.getModuleDependency().getParentModules();
+            if (CollectionUtils.isEmpty(parentModules)) {
+                return;
+            }
+            for (String parentModule : parentModules) {
+                if (!batchModules.containsKey(parentModule)) {
+                    continue;
+                }
+                try {
+                    graph.addEdge(parentModule, moduleName);
+                } catch (IllegalArgumentException e) {
+                    invalidModuleFile("批量加载的模块存在循环依赖：" + parentModule + " -> " + moduleName);
+                }
+            }
+        });
+        return graph;
+    }
+
+    /**
+     * 解压模块包并分析依赖，不计算模块的私有依赖
+     *
+     * @param is             模块包的输入流
+     * @param expectedDigest 模块包预期的摘要，可以为null
+     * @return 加载的模块信息
+     * @throws IOException 加载IO异常
+     */
+    protected ModuleInfo extractSpecModule(InputStream is, String expectedDigest) throws IOException {
+        Path destPath = Paths.get(moduleProperties.getPackagesPath());
+        Files.createDirectories(destPath);
+        Path tempPath = Files.createTempFile(destPath, "module", ZIP_NAME);
+        try {
+            // 输入流顺序落盘的同时计算整个模块包的摘要
+            MessageDigest messageDigest = SharedLibraryStore.createMessageDigest();
+            Files.copy(new DigestInputStream(is, messageDigest), tempPath, StandardCopyOption.REPLACE_EXISTING);
+            String actualDigest = HexFormat.of().formatHex(messageDigest.digest());
+            ModuleDigestVerifier verifier = this.createDigestVerifier(tempPath, expectedDigest, actualDigest);
+            return this.loadingTempModule(destPath, tempPath, verifier, null);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
     }
 
+    /**
+     * 临时文件已经在模块目录中，嵌套加载时直接移动为模块包，不再复制
+     */
     @Override
-    public ModuleInfo loadingSpecModule(InputStream is) throws IOException {
+    public ModuleInfo loadingSpooledModule(File spoolFile, String expectedDigest) throws IOException {
         Path destPath = Paths.get(moduleProperties.getPackagesPath());
+        Files.createDirectories(destPath);
+        Path tempPath = spoolFile.toPath();
+        try {
+            ModuleDigestVerifier verifier = this.createDigestVerifier(tempPath, expectedDigest, null);
+            ModuleInfo moduleInfo = this.loadingTempModule(destPath, tempPath, verifier,
+                    this.createArchiveVerifier(expectedDigest));
+            this.resolveDependencies(moduleInfo, Map.of());
+            return moduleInfo;
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * 加载模块包的临时文件，嵌套加载时临时文件移动为模块目录下的模块包，调用方负责删除没有被移动的临时文件
+     *
+     * @param destPath        模块包存放的路径
+     * @param tempPath        模块包的临时文件
+     * @param verifier        摘要清单的校验器，可以为null
+     * @param archiveVerifier 整个模块包摘要的校验器，为null时不在解压时计算整个模块包的摘要
+     * @return 加载的模块信息
+     * @throws IOException 加载IO异常
+     */
+    protected ModuleInfo loadingTempModule(Path destPath, Path tempPath, ModuleDigestVerifier verifier,
+                                           ZipUtil.ArchiveVerifier archiveVerifier) throws IOException {
+        if (NESTED.equals(moduleProperties.getLoadingMode())) {
+            ModuleInfo moduleInfo = this.loadingNestedModule(destPath, tempPath, verifier, archiveVerifier);
+            Path archivePath = destPath.resolve(moduleInfo.getJarFile().getParentFile().getName() + ZIP_NAME);
+            try {
+                // 同名模块包重新上传时覆盖，模块目录已经在解压前覆盖
+                Files.move(tempPath, archivePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException | RuntimeException e) {
+                this.unloadingSpecModule(moduleInfo);
+                throw e;
+            }
+            moduleInfo.setArchiveFile(archivePath.toFile());
+            return moduleInfo;
+        }
+        return this.loadingExtractedModule(destPath, tempPath, verifier, archiveVerifier);
+    }
+
+    /**
+     * 模块包是本地文件时直接从文件的中央目录读取，不再复制为临时文件
+     */
+    @Override
+    public ModuleInfo loadingSpecModule(File srcFile, String expectedDigest) throws IOException {
+        Path destPath = Paths.get(moduleProperties.getPackagesPath());
+        Files.createDirectories(destPath);
+        Path archivePath = srcFile.toPath();
+        ModuleDigestVerifier verifier = this.createDigestVerifier(archivePath, expectedDigest, null);
+        ZipUtil.ArchiveVerifier archiveVerifier = this.createArchiveVerifier(expectedDigest);
+        ModuleInfo moduleInfo = NESTED.equals(moduleProperties.getLoadingMode())
+                ? this.loadingNestedModule(destPath, archivePath, verifier, archiveVerifier)
+                : this.loadingExtractedModule(destPath, archivePath, verifier, archiveVerifier);
+        this.resolveDependencies(moduleInfo, Map.of());
+        return moduleInfo;
+    }
+
+    /**
+     * 删除加载模块包时写入的文件，嵌套加载时只删除落盘到模块目录的模块包，不删除直接加载的源文件。
+     * 模块使用了共享依赖时清理不再被任何模块链接的共享文件
+     *
+     * @param moduleInfo 模块信息
+     */
+    @Override
+    public void unloadingSpecModule(ModuleInfo moduleInfo) {
+        File rootFile = moduleInfo.getJarFile() != null ? moduleInfo.getJarFile().getParentFile() : null;
+        if (rootFile == null) {
+            return;
+        }
+        try {
+            FileSystemUtils.deleteRecursively(rootFile.toPath());
+            File archiveFile = moduleInfo.getArchiveFile();
+            if (moduleInfo.isNested() && archiveFile.getParentFile().equals(rootFile.getParentFile())) {
+                Files.deleteIfExists(archiveFile.toPath());
+            }
+        } catch (IOException e) {
+            LOG.warn("删除模块文件失败：" + rootFile, e);
+        }
+        if (!CollectionUtils.isEmpty(moduleInfo.getSharedLibs())) {
+            libraryStore.sweep();
+        }
+    }
+
+    /**
+     * 校验整个模块包的摘要，并读取模块包中的摘要清单
+     *
+     * @param archivePath    模块包文件
+     * @param expectedDigest 预期的摘要，为null时不校验整个模块包
+     * @param actualDigest   实际的摘要，为null时由{@link #createArchiveVerifier(String)}在解压的同时校验
+     * @return 模块包中摘要清单的校验器，没有摘要清单时返回null
+     * @throws IOException IO异常
+     */
+    protected ModuleDigestVerifier createDigestVerifier(Path archivePath, String expectedDigest,
+                                                        String actualDigest) throws IOException {
+        if (expectedDigest != null && actualDigest != null) {
+            ModuleDigestVerifier.verifyArchiveDigest(expectedDigest, actualDigest);
+        }
+        ModuleDigestVerifier verifier = ModuleDigestVerifier.load(archivePath);
+        if (verifier == null && expectedDigest == null && moduleProperties.isRequireDigest()) {
+            digestRequired("模块包没有提供预期的摘要，也不存在摘要清单[" + DIGEST_MANIFEST_NAME + "]");
+        }
+        return verifier;
+    }
+
+    /**
+     * 模块包没有顺序落盘时，整个模块包的摘要在解压时顺序读取模块包计算，不再单独读取一遍
+     *
+     * @param expectedDigest 预期的摘要，可以为null
+     * @return 整个模块包摘要的校验器，没有预期的摘要时返回null
+     */
+    protected ZipUtil.ArchiveVerifier createArchiveVerifier(String expectedDigest) {
+        if (expectedDigest == null) {
+            return null;
+        }
+        return digest -> ModuleDigestVerifier.verifyArchiveDigest(expectedDigest, HexFormat.of().formatHex(digest));
+    }
+
+    /**
+     * @see #loadingExtractedModule(Path, Path, ModuleDigestVerifier, ZipUtil.ArchiveVerifier)
+     */
+    protected ModuleInfo loadingExtractedModule(Path destPath, Path archivePath,
+                                                ModuleDigestVerifier verifier) throws IOException {
+        return this.loadingExtractedModule(destPath, archivePath, verifier, null);
+    }
+
+    /**
+     * 解压加载模块包，解压的同时按摘要清单校验每个文件，校验失败时删除已经解压的文件，不计算模块的私有依赖
+     *
+     * @param destPath        模块包解压的路径
+     * @param archivePath     模块包文件
+     * @param verifier        摘要清单的校验器，可以为null
+     * @param archiveVerifier 整个模块包摘要的校验器，不为null时顺序解压并计算摘要
+     * @return 加载的模块信息
+     * @throws IOException 加载IO异常
+     */
+    protected ModuleInfo loadingExtractedModule(Path destPath, Path archivePath, ModuleDigestVerifier verifier,
+                                                ZipUtil.ArchiveVerifier archiveVerifier) throws IOException {
         //destPath = createRandomSubpath(destPath);
-        Set<Path> paths = ZipUtil.unzip(is, destPath);
+        this.replaceExistingModule(destPath, archivePath);
+        Set<Path> paths = ZipUtil.unzip(archivePath, destPath, entry -> true, verifier, archiveVerifier);
         ModuleInfo moduleInfo = new ModuleInfo();
         Set<Path> rootPaths = this.resolveModuleRootPaths(destPath, paths);
         this.validateModuleFile(rootPaths, paths, moduleInfo);
-        this.loadingDependencies(moduleInfo);
+        if (moduleProperties.isSharedLibraries()) {
+            this.storeSharedLibraries(moduleInfo);
+        }
+        this.analyzeDependencies(moduleInfo);
+        return moduleInfo;
+    }
+
+    /**
+     * 嵌套加载模块包：只解压依赖描述文件和配置文件，模块JAR包和lib目录的依赖直接从模块包中读取
+     *
+     * @param destPath    模块包存放的路径
+     * @param archivePath 模块包文件
+     * @return 加载的模块信息
+     * @throws IOException 加载IO异常
+     */
+    protected ModuleInfo loadingNestedModule(Path destPath, Path archivePath) throws IOException {
+        return this.loadingNestedModule(destPath, archivePath, null, null);
+    }
+
+    /**
+     * @see #loadingNestedModule(Path, Path, ModuleDigestVerifier, ZipUtil.ArchiveVerifier)
+     */
+    protected ModuleInfo loadingNestedModule(Path destPath, Path archivePath,
+                                             ModuleDigestVerifier verifier) throws IOException {
+        return this.loadingNestedModule(destPath, archivePath, verifier, null);
+    }
+
+    /**
+     * 嵌套加载模块包，不需要计算整个模块包的摘要时，不解压的JAR包在解压之前校验，校验失败时不写入任何文件，不计算模块的私有依赖
+     *
+     * @param destPath        模块包存放的路径
+     * @param archivePath     模块包文件
+     * @param verifier        摘要清单的校验器，可以为null
+     * @param archiveVerifier 整个模块包摘要的校验器，不为null时顺序读取模块包，不解压的JAR包在同一遍读取中校验
+     * @return 加载的模块信息
+     * @throws IOException 加载IO异常
+     */
+    protected ModuleInfo loadingNestedModule(Path destPath, Path archivePath, ModuleDigestVerifier verifier,
+                                             ZipUtil.ArchiveVerifier archiveVerifier) throws IOException {
+        Predicate<ZipEntry> filter = entry -> !isJarPath(entry.getName());
+        if (verifier != null && archiveVerifier == null) {
+            verifier.verifyEntries(archivePath, filter.negate());
+        }
+        this.replaceExistingModule(destPath, archivePath);
+        Set<Path> paths = ZipUtil.unzip(archivePath, destPath, filter, verifier, archiveVerifier);
+        ModuleInfo moduleInfo = new ModuleInfo();
+        moduleInfo.setArchiveFile(archivePath.toFile());
+        Set<Path> rootPaths = this.resolveModuleRootPaths(destPath, paths);
+        try {
+            this.validateModuleFile(rootPaths, paths, moduleInfo);
+            this.analyzeDependencies(moduleInfo);
+        } catch (IOException | RuntimeException e) {
+            // 模块包不符合规范时删除已经解压的依赖描述文件和配置文件
+            for (Path rootPath : rootPaths) {
+                FileSystemUtils.deleteRecursively(rootPath);
+            }
+            throw e;
+        }
         return moduleInfo;
     }
 
+    /**
+     * 同一个模块包重新上传时，删除上次上传留下的模块目录，解压和嵌套加载都覆盖同名的模块目录。
+     * 已经安装的模块正在使用的目录不能覆盖
+     *
+     * @param destPath    模块包解压的路径
+     * @param archivePath 模块包文件
+     * @throws IOException IO异常
+     */
+    protected void replaceExistingModule(Path destPath, Path archivePath) throws IOException {
+        Set<Path> installedRootPaths = new HashSet<>();
+        if (this.modulesRegistrar != null) {
+            for (String moduleName : this.modulesRegistrar.getAllModuleNames()) {
+                AnnotationApplicationModuleContext applicationContext = this.modulesRegistrar.applicationContext(moduleName);
+                File jarFile = applicationContext != null && applicationContext.getSpringModule() != null
+                        ? applicationContext.getSpringModule().getJarFile() : null;
+                if (jarFile != null) {
+                    installedRootPaths.add(jarFile.getParentFile().toPath().toAbsolutePath().normalize());
+                }
+            }
+        }
+
+        for (Path rootPath : ZipUtil.rootPaths(archivePath, destPath)) {
+            if (Files.notExists(rootPath)) {
+                continue;
+            }
+            if (installedRootPaths.contains(rootPath.toAbsolutePath().normalize())) {
+                invalidModuleFile("模块目录[" + rootPath + "]正在被已经安装的模块使用，不能覆盖");
+            }
+            LOG.info("覆盖重新上传的模块目录：" + rootPath);
+            FileSystemUtils.deleteRecursively(rootPath);
+        }
+    }
+
     //protected ModuleInfo loadingSpecModule(Path destPath, InputStream is) throws IOException {
     //    Set<Path> paths = ZipUtil.unzip(is, destPath);
     //    ModuleInfo moduleInfo = new ModuleInfo();
@@ -76,23 +447,56 @@ public class SpringModuleLoader implements SpecModuleLoader, ApplicationContextA
     //    return moduleInfo;
     //}
 
-    @SuppressWarnings("ConstantConditions")
+    /**
+     * 将模块lib目录的依赖存入共享存储，内容相同的依赖只存一份
+     *
+     * @param moduleInfo 模块信息
+     * @throws IOException IO异常
+     */
+    protected void storeSharedLibraries(ModuleInfo moduleInfo) throws IOException {
+        File libFile = getLibFile(moduleInfo.getJarFile());
+        Map<Path, Path> sharedLibs = new HashMap<>();
+        for (Path lib : moduleInfo.getIncludeLibs()) {
+            Path sharedLib = libraryStore.store(libFile.toPath().resolve(lib));
+            sharedLibs.put(lib, sharedLib);
+        }
+        moduleInfo.setSharedLibs(sharedLibs);
+    }
+
     protected void loadingDependencies(ModuleInfo moduleInfo) throws IOException {
+        this.analyzeDependencies(moduleInfo);
+        this.resolveDependencies(moduleInfo, Map.of());
+    }
+
+    protected void analyzeDependencies(ModuleInfo moduleInfo) throws IOException {
         URL resource = moduleInfo.getDependencyFile().toURI().toURL();
-        ModuleDependency moduleDependency = dependencyAnalyzer.analyzeDependencies(resource);
-        moduleInfo.setModuleDependency(moduleDependency);
+        moduleInfo.setModuleDependency(dependencyAnalyzer.analyzeDependencies(resource));
+    }
 
+    /**
+     * 排除父模块和主应用已经提供的依赖，计算模块的私有依赖
+     *
+     * @param moduleInfo   已经分析依赖的模块信息
+     * @param batchModules 同一批次中还没有注册的模块，父模块优先从这里查找
+     */
+    @SuppressWarnings("ConstantConditions")
+    protected void resolveDependencies(ModuleInfo moduleInfo, Map<String, ModuleInfo> batchModules) {
+        ModuleDependency moduleDependency = moduleInfo.getModuleDependency();
         Set<TriadMetadata> dependencies = moduleDependency.copyExcludeSelfDependencies();
+        Set<TriadMetadata> providedDependencies = new HashSet<>();
         List<String> parentModules = moduleDependency.getParentModules();
         if (!CollectionUtils.isEmpty(parentModules)) {
             for (String parentModule : parentModules) {
-                AnnotationApplicationModuleContext parentContext = modulesRegistrar.applicationContext(parentModule);
-                Set<TriadMetadata> exclude = parentContext.getSpringModule().getDependencies();
+                ModuleInfo batchModule = batchModules.get(parentModule);
+                Set<TriadMetadata> exclude = batchModule != null ? batchModule.getModuleDependency().getDependencies()
+                        : modulesRegistrar.applicationContext(parentModule).getSpringModule().getDependencies();
                 if (!CollectionUtils.isEmpty(dependencies) && !CollectionUtils.isEmpty(exclude)) {
+                    exclude.stream().filter(dependencies::contains).forEach(providedDependencies::add);
                     dependencies.removeAll(exclude);
                 }
             }
         }
+        moduleInfo.setProvidedDependencies(providedDependencies);
         this.loadingDependencies(dependencies, moduleInfo);
     }
 
@@ -101,6 +505,9 @@ public class SpringModuleLoader implements SpecModuleLoader, ApplicationContextA
         if (!CollectionUtils.isEmpty(parentDependencies) && !CollectionUtils.isEmpty(dependencies)) {
             dependencies.removeAll(parentDependencies);
         }
+        if (!CollectionUtils.isEmpty(parentDependencies)) {
+            moduleInfo.getProvidedDependencies().removeAll(parentDependencies);
+        }
 
         List<Path> libs = moduleInfo.getIncludeLibs();
         if (CollectionUtils.isEmpty(dependencies)) {
@@ -147,7 +554,7 @@ public class SpringModuleLoader implements SpecModuleLoader, ApplicationContextA
         }
 
         Path jarPath = rootPath.resolve(rootPath.getFileName() + JAR_NAME);
-        if (Files.notExists(jarPath)) {
+        if (!paths.contains(jarPath)) {
             invalidModuleFile("上传的模块文件根目录不存在模块JAR包[" + jarPath + "]");
         }
         moduleInfo.setJarFile(jarPath.toFile());
@@ -180,6 +587,9 @@ public class SpringModuleLoader implements SpecModuleLoader, ApplicationContextA
         if (this.dependencyAnalyzer == null) {
             this.dependencyAnalyzer = this.applicationContext.getBean(DependencyAnalyzer.class);
         }
+        if (this.moduleNameResolver == null) {
+            this.moduleNameResolver = this.applicationContext.getBean(ModuleNameResolver.class);
+        }
     }
 
     @Override
@@ -187,6 +597,8 @@ public class SpringModuleLoader implements SpecModuleLoader, ApplicationContextA
         File rootFile = JarFilePaths.resolveJarPath(getClass());
         URL resource = new File(rootFile, LOCATION_RESOURCE).toURI().toURL();
         this.moduleDependency = dependencyAnalyzer.analyzeDependencies(resource);
+        // 上次运行期间删除模块文件后没有清理的共享依赖
+        libraryStore.sweep();
     }
 
     public void setModulesRegistrar(ModulesRegistrar modulesRegistrar) {
@@ -197,4 +609,16 @@ public class SpringModuleLoader implements SpecModuleLoader, ApplicationContextA
         this.dependencyAnalyzer = dependencyAnalyzer;
     }
 
+    public void setModuleNameResolver(ModuleNameResolver moduleNameResolver) {
+        this.moduleNameResolver = moduleNameResolver;
+    }
+
+    public SharedLibraryStore getLibraryStore() {
+        return libraryStore;
+    }
+
+    public void setLibraryStore(SharedLibraryStore libraryStore) {
+        this.libraryStore = libraryStore;
+    }
+
 }
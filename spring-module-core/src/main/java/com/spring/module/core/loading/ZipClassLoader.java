@@ -1,9 +1,13 @@
 package com.spring.module.core.loading;
 
+import org.springframework.lang.Nullable;
 import org.springframework.util.CollectionUtils;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 支持多个父类类加器
@@ -14,38 +18,227 @@ import java.util.List;
  */
 public class ZipClassLoader extends JarClassLoader {
 
+    /**
+     * 未命中查找缓存的最大数量，超过后清空重新缓存
+     */
+    public static final int NEGATIVE_CACHE_SIZE = 4096;
+
     private final List<JarClassLoader> parent = new ArrayList<>();
 
+    /**
+     * 共享依赖的类加载器，优先于父模块的类加载器
+     */
+    private final List<SharedLibraryClassLoader> sharedLibraries = new ArrayList<>();
+
+    /**
+     * 包路径到可能提供该包的共享依赖、父模块类加载器的映射，由各类加载器的JAR包索引计算得到
+     */
+    private final Map<String, List<JarClassLoader>> packageOwners = new ConcurrentHashMap<>();
+    private final Set<String> negativeCache = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder delegationCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    static {
+        registerAsParallelCapable();
+    }
+
     public ZipClassLoader(ClassLoader parent) {
         super(parent);
     }
 
     @Override
-    protected Class<?> findClass(String name) throws ClassNotFoundException {
-        try {
-            return super.findClass(name);
-        } catch (ClassNotFoundException e) {
-            if (CollectionUtils.isEmpty(parent)) {
-                throw e;
+    protected Class<?> findClassOrNull(String name) throws ClassNotFoundException {
+        if (negativeCache.contains(name)) {
+            missCount.increment();
+            return null;
+        }
+
+        Class<?> clazz = super.findClassOrNull(name);
+        if (clazz != null) {
+            hitCount.increment();
+            return clazz;
+        }
+
+        for (JarClassLoader owner : this.getPackageOwners(name)) {
+            clazz = owner.loadClassOrNull(name);
+            if (clazz != null) {
+                delegationCount.increment();
+                return clazz;
             }
         }
 
+        missCount.increment();
+        if (negativeCache.size() >= NEGATIVE_CACHE_SIZE) {
+            negativeCache.clear();
+        }
+        negativeCache.add(name);
+        return null;
+    }
+
+    @Override
+    protected boolean mayContainPackage(String packagePath) {
+        if (super.mayContainPackage(packagePath)) {
+            return true;
+        }
+        for (SharedLibraryClassLoader sharedLibrary : sharedLibraries) {
+            if (sharedLibrary.mayContainPackage(packagePath)) {
+                return true;
+            }
+        }
         for (JarClassLoader classLoader : parent) {
-            try {
-                return classLoader.loadClass(name);
-            } catch (Throwable ex) {  // 说明已经被父类加载器加载过
-                return classLoader.findClass(name);
+            if (classLoader.mayContainPackage(packagePath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 获取可能包含该类的共享依赖、父模块类加载器，共享依赖优先
+     */
+    private List<JarClassLoader> getPackageOwners(String className) {
+        if (CollectionUtils.isEmpty(parent) && CollectionUtils.isEmpty(sharedLibraries)) {
+            return List.of();
+        }
+        int index = className.lastIndexOf('.');
+        String packagePath = index == -1 ? "" : className.substring(0, index).replace('.', '/');
+        return packageOwners.computeIfAbsent(packagePath, key -> {
+            List<JarClassLoader> owners = new ArrayList<>();
+            for (SharedLibraryClassLoader sharedLibrary : sharedLibraries) {
+                if (sharedLibrary.mayContainPackage(key)) {
+                    owners.add(sharedLibrary);
+                }
+            }
+            for (JarClassLoader classLoader : parent) {
+                if (classLoader.mayContainPackage(key)) {
+                    owners.add(classLoader);
+                }
+            }
+            return owners.isEmpty() ? List.of() : List.copyOf(owners);
+        });
+    }
+
+    @Override
+    protected void classPathChanged() {
+        packageOwners.clear();
+        negativeCache.clear();
+    }
+
+    @Override
+    public URL findResource(String name) {
+        URL resource = this.findLocalResource(name);
+        if (resource != null) {
+            return resource;
+        }
+        for (SharedLibraryClassLoader sharedLibrary : sharedLibraries) {
+            resource = sharedLibrary.findLocalResource(name);
+            if (resource != null) {
+                return resource;
             }
         }
-        throw new ClassNotFoundException(name);
+        return null;
+    }
+
+    @Override
+    public Enumeration<URL> findResources(String name) throws IOException {
+        if (CollectionUtils.isEmpty(sharedLibraries)) {
+            return this.findLocalResources(name);
+        }
+        List<URL> resources = new ArrayList<>(Collections.list(this.findLocalResources(name)));
+        for (SharedLibraryClassLoader sharedLibrary : sharedLibraries) {
+            resources.addAll(Collections.list(sharedLibrary.findLocalResources(name)));
+        }
+        return Collections.enumeration(resources);
+    }
+
+    /**
+     * 按类加载的顺序查找资源所在的类加载器：主应用、自身JAR包、共享依赖、父模块
+     *
+     * @param name 资源名称
+     * @return 资源所在的类加载器，找不到时返回null
+     */
+    @Nullable
+    public ClassLoader findResourceLoader(String name) {
+        ClassLoader applicationClassLoader = this.getParent();
+        if (applicationClassLoader != null && applicationClassLoader.getResource(name) != null) {
+            return applicationClassLoader;
+        }
+        return this.findModuleResourceLoader(name);
+    }
+
+    private ClassLoader findModuleResourceLoader(String name) {
+        if (this.findLocalResource(name) != null) {
+            return this;
+        }
+        for (ZipClassLoader sharedLibrary : sharedLibraries) {
+            ClassLoader owner = sharedLibrary.findModuleResourceLoader(name);
+            if (owner != null) {
+                return owner;
+            }
+        }
+        for (JarClassLoader classLoader : parent) {
+            ClassLoader owner = classLoader instanceof ZipClassLoader zipClassLoader ?
+                    zipClassLoader.findModuleResourceLoader(name) : classLoader.findResource(name) != null ? classLoader : null;
+            if (owner != null) {
+                return owner;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 只查找当前类加载器自身JAR包中的资源
+     */
+    protected URL findLocalResource(String name) {
+        return super.findResource(name);
+    }
+
+    /**
+     * 只查找当前类加载器自身JAR包中的资源
+     */
+    protected Enumeration<URL> findLocalResources(String name) throws IOException {
+        return super.findResources(name);
     }
 
     public void addParent(JarClassLoader parent) {
         this.parent.add(parent);
+        this.classPathChanged();
     }
 
     public List<JarClassLoader> getParents() {
         return parent;
     }
 
+    public void addSharedLibrary(SharedLibraryClassLoader sharedLibrary) {
+        this.sharedLibraries.add(sharedLibrary);
+        this.classPathChanged();
+    }
+
+    /**
+     * 当前类加载器自身JAR包中找到的类数量
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * 委派给共享依赖、父模块类加载器找到的类数量
+     */
+    public long getDelegationCount() {
+        return delegationCount.sum();
+    }
+
+    /**
+     * 找不到的类数量，包含命中未命中缓存的查找
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public List<SharedLibraryClassLoader> getSharedLibraries() {
+        return sharedLibraries;
+    }
+
 }
@@ -1,26 +1,23 @@
 package com.spring.module.core.module;
 
 import com.spring.module.core.context.AnnotationApplicationModuleContext;
+import com.spring.module.core.utils.BeanUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.jgrapht.Graph;
 import org.jgrapht.Graphs;
-import org.jgrapht.graph.DefaultDirectedGraph;
 import org.jgrapht.graph.DefaultEdge;
-import org.jgrapht.graph.DirectedAcyclicGraph;
-import org.jgrapht.traverse.GraphIterator;
 import org.jgrapht.traverse.TopologicalOrderIterator;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.util.CollectionUtils;
 
 import java.io.IOException;
 import java.net.URLClassLoader;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
 
 import static com.spring.module.core.exception.ModuleRegistryException.*;
 import static com.spring.module.core.module.ModulesRegistrar.DependencyStrategy.DESC;
@@ -40,13 +37,31 @@ public abstract class AbstractGraphModulesRegistrar extends ModulesRegistrarSupp
     /**
      * 不涉及Root应用上下文
      */
-    protected volatile Graph<String, DefaultEdge> graph;
-    private final Map<String, Set<String>> parentModules = new ConcurrentHashMap<>();
+    protected final ModuleGraph moduleGraph = new ModuleGraph();
+    protected final ModuleClosureIndex closureIndex = new ModuleClosureIndex();
+    private final StripedModuleLock moduleLock = new StripedModuleLock();
     private final Map<String/*模块名*/, AnnotationApplicationModuleContext> applicationModuleContexts = new ConcurrentHashMap<>();
 
-    public AbstractGraphModulesRegistrar() {
-        this.graph = new DirectedAcyclicGraph<>(DefaultEdge.class);
-    }
+    /**
+     * 正在刷新上下文的模块，刷新期间不持有分段锁，由这个状态阻止同名模块并发安装
+     */
+    private final Set<String> installingModules = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 父模块被正在刷新上下文的子模块引用的次数，大于0时不能卸载
+     */
+    private final Map<String/*模块名*/, Integer> refreshingReferences = new ConcurrentHashMap<>();
+
+    /**
+     * 关闭时等待单个模块的最长时间
+     */
+    private Duration destroyTimeout = Duration.ofSeconds(30);
+    private int destroyParallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 卸载模块时等待正在处理的请求结束的最长时间
+     */
+    private Duration drainTimeout = Duration.ofSeconds(30);
 
     @Override
     public Set<String> getAllModuleNames() {
@@ -58,38 +73,117 @@ public abstract class AbstractGraphModulesRegistrar extends ModulesRegistrarSupp
         return applicationModuleContexts.get(moduleName);
     }
 
+    /**
+     * 持有当前模块的写锁和父模块的读锁，只在修改依赖图和注册表期间持有，没有关系的模块可以并发注册，注册期间父模块不能卸载
+     */
     @Override
     public AnnotationApplicationModuleContext installModuleApplication(AnnotationApplicationModuleContext applicationContext) {
         String moduleName = applicationContext.getId();
-        if (applicationModuleContexts.containsKey(moduleName)) {
-            alreadyExistModule("模块重复注册: " + moduleName);
+        List<AnnotationApplicationModuleContext> parentContexts = new ArrayList<>();
+        for (AnnotationConfigApplicationContext parent : applicationContext.getParents()) {
+            if (parent instanceof AnnotationApplicationModuleContext applicationModuleContext) {
+                parentContexts.add(applicationModuleContext);
+            }
         }
+        List<String> parentModules = parentContexts.stream().map(AnnotationApplicationModuleContext::getId).toList();
+
+        try (StripedModuleLock.ModuleLock ignored = this.moduleLock.lock(moduleName, parentModules)) {
+            if (applicationModuleContexts.containsKey(moduleName)) {
+                alreadyExistModule("模块重复注册: " + moduleName);
+            }
+            // 创建模块上下文之后父模块可能已经被卸载
+            for (AnnotationApplicationModuleContext parentContext : parentContexts) {
+                if (applicationModuleContexts.get(parentContext.getId()) != parentContext) {
+                    notExistModule("模块[" + moduleName + "]依赖的模块[" + parentContext.getId() + "]已经卸载");
+                }
+            }
 
-        this.graph = this.mergeModuleGraph(applicationContext);
-        this.applicationModuleContexts.put(moduleName, applicationContext);
+            this.moduleGraph.addModule(moduleName, parentModules);
+            try {
+                this.closureIndex.addModule(moduleName, parentModules);
+            } catch (RuntimeException e) {
+                this.moduleGraph.removeModule(moduleName);
+                throw e;
+            }
+            this.applicationModuleContexts.put(moduleName, applicationContext);
+        }
         return applicationContext;
     }
 
+    /**
+     * 在刷新模块上下文之前标记模块正在安装，并记录父模块被引用，持有到模块注册完成：刷新期间父模块不能卸载，同名的模块不能并发安装。
+     * 分段锁只在修改状态时短暂持有，刷新期间同一个分段上没有关系的模块仍然可以安装和卸载。
+     * 父模块可以是合并前的全部父模块，注册时只会使用其中的一部分
+     *
+     * @param moduleName    模块名
+     * @param parentModules 直接依赖的父模块
+     * @return 结束安装的句柄
+     */
+    protected ModuleReservation reserveModule(String moduleName, Collection<String> parentModules) {
+        List<String> parents = List.copyOf(new LinkedHashSet<>(parentModules));
+        try (StripedModuleLock.ModuleLock ignored = this.moduleLock.lock(moduleName, parents)) {
+            if (applicationModuleContexts.containsKey(moduleName) || !installingModules.add(moduleName)) {
+                alreadyExistModule("模块已经注册或者正在安装: " + moduleName);
+            }
+            // 持有父模块的读锁，父模块不会在检查和记录引用之间被卸载
+            parents.forEach(parent -> refreshingReferences.merge(parent, 1, Integer::sum));
+        }
+        return new ModuleReservation(moduleName, parents);
+    }
+
+    /**
+     * 持有当前模块的写锁注销模块，关闭模块上下文在锁外执行
+     */
     @Override
     public void uninstallModule(String moduleName) {
-        if (!applicationModuleContexts.containsKey(moduleName)) {
-            notExistModule("模块[" + moduleName + "]未注册不能卸载");
-        }
-        if (graph.outDegreeOf(moduleName) > 0) {
-            existParentsModule("模块[" + moduleName + "]被其他模块引用无法卸载");
-        }
+        AnnotationApplicationModuleContext applicationContext = this.unregisterModule(moduleName);
+        this.uninstallModule(moduleName, applicationContext);
+    }
+
+    /**
+     * 持有当前模块的写锁注销模块，不关闭模块上下文
+     *
+     * @param moduleName 模块名
+     * @return 注销的模块上下文
+     */
+    protected AnnotationApplicationModuleContext unregisterModule(String moduleName) {
+        try (StripedModuleLock.ModuleLock ignored = this.moduleLock.lock(moduleName)) {
+            if (!applicationModuleContexts.containsKey(moduleName)) {
+                notExistModule("模块[" + moduleName + "]未注册不能卸载");
+            }
+            if (moduleGraph.childCount(moduleName) > 0) {
+                existParentsModule("模块[" + moduleName + "]被其他模块引用无法卸载");
+            }
+            if (refreshingReferences.containsKey(moduleName)) {
+                existParentsModule("模块[" + moduleName + "]被正在安装的模块引用无法卸载");
+            }
 
-        AnnotationApplicationModuleContext applicationContext = applicationModuleContexts.remove(moduleName);
-        if (applicationContext != null) {
-            this.uninstallModule(moduleName, applicationContext);
+            AnnotationApplicationModuleContext applicationContext = applicationModuleContexts.remove(moduleName);
+            this.closureIndex.removeModule(moduleName);
+            this.moduleGraph.removeModule(moduleName);
+            return applicationContext;
         }
     }
 
+    /**
+     * 排空并关闭已经注销的模块
+     *
+     * @param moduleName         模块名
+     * @param applicationContext 模块上下文
+     */
     protected void uninstallModule(String moduleName, AnnotationApplicationModuleContext applicationContext) {
-        this.parentModules.remove(moduleName);
-        graph.removeVertex(moduleName);
+        this.drainModule(applicationContext);
         applicationContext.close();
+        this.closeModuleClassLoader(applicationContext);
+        LOG.info("卸载模块成功：" + applicationContext.getId());
+    }
 
+    /**
+     * 模块上下文关闭之后关闭它的类加载器，卸载和应用关闭时都会调用
+     *
+     * @param applicationContext 已经关闭的模块上下文
+     */
+    protected void closeModuleClassLoader(AnnotationApplicationModuleContext applicationContext) {
         if (applicationContext.getClassLoader() instanceof URLClassLoader classLoader) {
             try {
                 classLoader.close();
@@ -97,35 +191,14 @@ public abstract class AbstractGraphModulesRegistrar extends ModulesRegistrarSupp
                 throw new RuntimeException(e);
             }
         }
-        LOG.info("卸载模块成功：" + applicationContext.getId());
     }
 
     @Override
     public Graph<String, DefaultEdge> obtainModuleDependencies(DependencyStrategy strategy) {
         if (DESC.equals(strategy)) {
-            Graph<String, DefaultEdge> reversedGraph = new DefaultDirectedGraph<>(DefaultEdge.class);
-            Graphs.addGraphReversed(reversedGraph, this.graph);
-            return reversedGraph;
+            return this.moduleGraph.getReversedSnapshot();
         }
-        return this.graph;
-    }
-
-    private Graph<String, DefaultEdge> mergeModuleGraph(AnnotationApplicationModuleContext applicationContext) {
-        Graph<String, DefaultEdge> graph = new DirectedAcyclicGraph<>(DefaultEdge.class);
-        Graphs.addGraph(graph, this.graph);
-        String targetVertex = applicationContext.getId();
-        graph.addVertex(targetVertex);
-        Set<String> currentModuleDependencies = this.parentModules.computeIfAbsent(targetVertex, key -> new HashSet<>());
-
-        for (AnnotationConfigApplicationContext parent : applicationContext.getParents()) {
-            if (parent instanceof AnnotationApplicationModuleContext applicationModuleContext) {
-                String sourceVertex = applicationModuleContext.getId();
-                graph.addEdge(sourceVertex, targetVertex);
-                currentModuleDependencies.add(sourceVertex);
-                currentModuleDependencies.addAll(this.parentModules.get(sourceVertex));
-            }
-        }
-        return graph;
+        return this.moduleGraph.getSnapshot();
     }
 
     @Override
@@ -133,24 +206,280 @@ public abstract class AbstractGraphModulesRegistrar extends ModulesRegistrarSupp
         if (CollectionUtils.isEmpty(modules)) {
             return List.of();
         }
-        Set<String> deleteModules = new HashSet<>();
-        for (String module : modules) {
-            Set<String> dependencies = this.parentModules.get(module);
-            modules.stream().filter(dependencies::contains).forEach(deleteModules::add);
+        return this.closureIndex.mergeModules(modules);
+    }
+
+    /**
+     * 直接或者间接依赖当前模块的所有模块
+     *
+     * @param moduleName 模块名
+     * @return 未注册的模块返回空集合
+     */
+    public Set<String> getDependentModules(String moduleName) {
+        return this.closureIndex.getDescendants(moduleName);
+    }
+
+    /**
+     * 判断模块是否直接或者间接依赖另一个模块
+     *
+     * @param moduleName       模块名
+     * @param dependencyModule 被依赖的模块名
+     * @return 存在依赖关系时返回true
+     */
+    public boolean isDependentOn(String moduleName, String dependencyModule) {
+        return this.closureIndex.isAncestor(dependencyModule, moduleName);
+    }
+
+    /**
+     * 所有处理器先停止把新的请求交给模块，再在{@link #drainTimeout}内等待正在处理的请求结束，超时后记录日志继续关闭
+     *
+     * @param applicationContext 模块上下文
+     */
+    protected void drainModule(AnnotationApplicationModuleContext applicationContext) {
+        List<DrainableModule> drainableModules = BeanUtils.sort(this.applicationContext, DrainableModule.class);
+        if (drainableModules.isEmpty()) {
+            return;
+        }
+        for (DrainableModule drainableModule : drainableModules) {
+            try {
+                drainableModule.suspendModule(applicationContext);
+            } catch (RuntimeException e) {
+                LOG.error("模块[" + applicationContext.getId() + "]停止接收请求[" + drainableModule + "]异常", e);
+            }
+        }
+
+        long deadline = System.nanoTime() + this.drainTimeout.toNanos();
+        for (DrainableModule drainableModule : drainableModules) {
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                if (!drainableModule.awaitModule(applicationContext, remaining, TimeUnit.NANOSECONDS)) {
+                    LOG.warn("模块[" + applicationContext.getId() + "]在" + this.drainTimeout.toMillis()
+                            + "ms内没有处理完请求，继续卸载");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOG.warn("等待模块[" + applicationContext.getId() + "]处理请求被中断，继续卸载");
+                return;
+            } catch (RuntimeException e) {
+                LOG.error("模块[" + applicationContext.getId() + "]等待请求结束[" + drainableModule + "]异常", e);
+            }
         }
-        modules.removeAll(deleteModules);
-        return modules;
     }
 
+    /**
+     * 按层级并行关闭模块：没有子模块的模块在第一层，其余模块在所有子模块关闭之后的下一层。
+     * 同一层的模块之间没有依赖关系，并行关闭，每个模块上下文关闭后立即关闭它的类加载器；
+     * 开始关闭后超过{@link #destroyTimeout}仍未完成的模块只记录日志和线程堆栈，不阻塞后续层级。
+     * 仍在关闭的模块还在使用父模块的类和bean，它的所有祖先模块都不再关闭，只记录日志。
+     * 关闭线程是守护线程，卡住的模块不会阻止JVM退出
+     */
     @Override
     public void destroy() {
-        Graph<String, DefaultEdge> graph = this.obtainModuleDependencies(DESC);
-        GraphIterator<String, DefaultEdge> graphIterator = new TopologicalOrderIterator<>(graph);
-        graphIterator.forEachRemaining(id -> applicationModuleContexts.remove(id).close());
+        List<List<String>> levels = this.resolveDestroyLevels(this.moduleGraph.getSnapshot());
+        if (levels.isEmpty()) {
+            return;
+        }
+
+        int maxLevelSize = levels.stream().mapToInt(List::size).max().orElse(1);
+        int threads = Math.max(1, Math.min(this.destroyParallelism, maxLevelSize));
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("module-destroy-");
+        threadFactory.setDaemon(true);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, threadFactory);
+        // key为跳过关闭的祖先模块，value为仍在关闭的子模块
+        Map<String, String> skippedModules = new HashMap<>();
+        // 所有层级共用关闭线程，卡住的模块一直占用线程
+        Map<String, Thread> closingThreads = new ConcurrentHashMap<>();
+        Set<String> hungModules = new HashSet<>();
+        try {
+            for (List<String> level : levels) {
+                List<String> closingModules = new ArrayList<>(level.size());
+                for (String moduleName : level) {
+                    String hungModule = skippedModules.get(moduleName);
+                    if (hungModule == null) {
+                        closingModules.add(moduleName);
+                    } else {
+                        LOG.warn("模块[" + moduleName + "]的子模块[" + hungModule + "]仍在关闭，跳过关闭");
+                    }
+                }
+                for (String unclosedModule : this.destroyLevel(closingModules, executor, threads, closingThreads, hungModules)) {
+                    this.closureIndex.getAncestors(unclosedModule).forEach(ancestor -> skippedModules.putIfAbsent(ancestor, unclosedModule));
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 计算关闭的层级，层级越小越先关闭
+     *
+     * @param graph 模块依赖图，边的方向为父模块指向子模块
+     * @return 每一层的模块名
+     */
+    protected List<List<String>> resolveDestroyLevels(Graph<String, DefaultEdge> graph) {
+        List<String> sorted = new ArrayList<>();
+        new TopologicalOrderIterator<>(graph).forEachRemaining(sorted::add);
+        Collections.reverse(sorted);
+
+        // 子模块总是先于父模块计算
+        Map<String, Integer> moduleLevels = new HashMap<>();
+        List<List<String>> levels = new ArrayList<>();
+        for (String moduleName : sorted) {
+            int level = 0;
+            for (String child : Graphs.successorListOf(graph, moduleName)) {
+                level = Math.max(level, moduleLevels.get(child) + 1);
+            }
+            moduleLevels.put(moduleName, level);
+            while (levels.size() <= level) {
+                levels.add(new ArrayList<>());
+            }
+            levels.get(level).add(moduleName);
+        }
+        return levels;
+    }
+
+    /**
+     * 并行关闭同一层的模块，超时从模块开始关闭时计算，排队等待关闭线程的模块不算超时。
+     * 所有关闭线程都被卡住的模块占用时，仍在排队的模块不再关闭
+     *
+     * @param closingThreads 正在关闭的模块和执行关闭的线程
+     * @param hungModules    已经报告关闭超时的模块
+     * @return 没有关闭完成的模块，包含关闭超时的模块和没有开始关闭的模块
+     */
+    private List<String> destroyLevel(List<String> level, ExecutorService executor, int threads,
+                                      Map<String, Thread> closingThreads, Set<String> hungModules) {
+        Map<String, Future<?>> futures = new LinkedHashMap<>();
+        Map<String, Long> startTimes = new ConcurrentHashMap<>();
+        for (String moduleName : level) {
+            AnnotationApplicationModuleContext applicationContext = applicationModuleContexts.remove(moduleName);
+            if (applicationContext == null) {
+                continue;
+            }
+            futures.put(moduleName, executor.submit(() -> {
+                closingThreads.put(moduleName, Thread.currentThread());
+                startTimes.put(moduleName, System.nanoTime());
+                try {
+                    applicationContext.close();
+                } finally {
+                    try {
+                        this.closeModuleClassLoader(applicationContext);
+                    } finally {
+                        closingThreads.remove(moduleName);
+                    }
+                }
+            }));
+        }
+
+        long timeout = this.destroyTimeout.toNanos();
+        List<String> unclosedModules = new ArrayList<>();
+        for (Map.Entry<String, Future<?>> entry : futures.entrySet()) {
+            String moduleName = entry.getKey();
+            Future<?> future = entry.getValue();
+            try {
+                while (true) {
+                    Long startTime = startTimes.get(moduleName);
+                    long remaining = startTime == null ? timeout : startTime + timeout - System.nanoTime();
+                    try {
+                        future.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+                        break;
+                    } catch (TimeoutException e) {
+                        startTime = startTimes.get(moduleName);
+                        if (startTime != null && System.nanoTime() - startTime >= timeout) {
+                            hungModules.add(moduleName);
+                            unclosedModules.add(moduleName);
+                            this.reportHungModule(moduleName, closingThreads.get(moduleName));
+                            break;
+                        }
+                        if (startTime == null && this.countBusyHungModules(closingThreads, hungModules) >= threads
+                                && future.cancel(false)) {
+                            unclosedModules.add(moduleName);
+                            LOG.warn("关闭线程都被超时的模块占用，模块[" + moduleName + "]没有关闭");
+                            break;
+                        }
+                    }
+                }
+            } catch (ExecutionException e) {
+                LOG.error("关闭模块失败：" + moduleName, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOG.warn("关闭模块被中断：" + moduleName);
+                return unclosedModules;
+            }
+        }
+        return unclosedModules;
+    }
+
+    private long countBusyHungModules(Map<String, Thread> closingThreads, Set<String> hungModules) {
+        return hungModules.stream().filter(closingThreads::containsKey).count();
+    }
+
+    /**
+     * 报告关闭超时的模块，附带正在执行关闭的线程堆栈
+     */
+    protected void reportHungModule(String moduleName, Thread thread) {
+        IllegalStateException hung = new IllegalStateException("模块[" + moduleName + "]在"
+                + this.destroyTimeout.toMillis() + "ms内没有关闭完成，跳过等待");
+        if (thread != null) {
+            hung.setStackTrace(thread.getStackTrace());
+        }
+        LOG.warn(hung.getMessage(), hung);
+    }
+
+    public Duration getDestroyTimeout() {
+        return destroyTimeout;
+    }
+
+    public void setDestroyTimeout(Duration destroyTimeout) {
+        this.destroyTimeout = destroyTimeout;
+    }
+
+    public Duration getDrainTimeout() {
+        return drainTimeout;
+    }
+
+    public void setDrainTimeout(Duration drainTimeout) {
+        this.drainTimeout = drainTimeout;
+    }
+
+    public int getDestroyParallelism() {
+        return destroyParallelism;
+    }
+
+    public void setDestroyParallelism(int destroyParallelism) {
+        this.destroyParallelism = destroyParallelism;
     }
 
     protected Map<String, AnnotationApplicationModuleContext> getApplicationModuleContexts() {
         return applicationModuleContexts;
     }
 
+    /**
+     * 模块安装状态的句柄，关闭时清除正在安装的标记和父模块的引用，重复关闭没有影响
+     */
+    protected final class ModuleReservation implements AutoCloseable {
+
+        private final String moduleName;
+        private final List<String> parentModules;
+        private boolean closed;
+
+        private ModuleReservation(String moduleName, List<String> parentModules) {
+            this.moduleName = moduleName;
+            this.parentModules = parentModules;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            parentModules.forEach(parent -> refreshingReferences.computeIfPresent(parent,
+                    (key, count) -> count > 1 ? count - 1 : null));
+            installingModules.remove(moduleName);
+        }
+    }
+
 }
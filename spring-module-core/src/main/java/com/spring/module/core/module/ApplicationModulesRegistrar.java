@@ -2,28 +2,40 @@ package com.spring.module.core.module;
 
 import com.abm.module.api.SpringModule;
 import com.abm.module.api.TriadMetadata;
+import com.spring.module.core.autoconfigure.ModuleProperties;
+import com.spring.module.core.autoconfigure.ModuleProperties.ClassWarmup;
 import com.spring.module.core.context.AnnotationApplicationModuleContext;
+import com.spring.module.core.context.SharedMetadataReaderCache;
 import com.spring.module.core.loading.*;
 import com.spring.module.core.parse.ModuleDependency;
+import com.spring.module.core.process.ClassWarmupModulePostProcessor;
+import com.spring.module.core.utils.BeanUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.BeanClassLoaderAware;
 import org.springframework.core.io.DefaultResourceLoader;
 import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URL;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
 
-import static com.spring.module.core.exception.ModuleRegistryException.alreadyExistModule;
-import static com.spring.module.core.utils.PathUtils.getLibFile;
+import static com.spring.module.core.exception.ModuleRegistryException.*;
+import static com.spring.module.core.utils.PathUtils.ZIP_NAME;
+import static com.spring.module.core.utils.PathUtils.getArchiveEntryName;
 
 /**
  * 应用模块注册器
@@ -38,35 +50,648 @@ public class ApplicationModulesRegistrar extends AbstractGraphModulesRegistrar i
 
     private SpecModuleLoader moduleLoader;
     private ClassLoader applicationClassLoader;
+    private Path packagesPath;
+    private SharedLibraryRegistry sharedLibraryRegistry;
+    private boolean memoryMappedJars;
+    private ClassWarmup classWarmup = ClassWarmup.NONE;
+    private ThreadPoolExecutor installExecutor;
+    private int batchParallelism = Runtime.getRuntime().availableProcessors();
+    private final ExecutorService retireExecutor = createRetireExecutor();
+    private final ScheduledExecutorService canaryExecutor = createCanaryExecutor();
+    /**
+     * 已经安装的模块文件，升级、全量发布和回滚灰度时删除被替换版本的文件，普通卸载时保留
+     */
+    private final Map<String, ModuleInfo> moduleInfos = new ConcurrentHashMap<>();
+    private final Map<String, RetiringModule> retiringModules = new ConcurrentHashMap<>();
+    private final Map<String, CanaryDeployment> canaries = new ConcurrentHashMap<>();
+    private String canaryStickyHeader;
+    private String canaryStickyCookie;
+    private ModuleCanary.Policy canaryPolicy;
+    private Duration canaryEvaluationInterval = Duration.ofSeconds(10);
 
     @Override
-    public AnnotationApplicationModuleContext installModule(InputStream is) throws IOException {
-        ModuleInfo moduleInfo = moduleLoader.loadingSpecModule(is);
-        SpringModule springModule = this.loadingModule(moduleInfo);
+    public AnnotationApplicationModuleContext installModule(InputStream is, String expectedDigest) throws IOException {
+        return this.installModule(() -> moduleLoader.loadingSpecModule(is, expectedDigest), new ModuleTask<>());
+    }
+
+    @Override
+    public AnnotationApplicationModuleContext installModule(File jarFile, String expectedDigest) throws IOException {
+        Assert.isTrue(jarFile.exists(), () -> "不存在的JAR路径：" + jarFile);
+        return this.installModule(() -> moduleLoader.loadingSpecModule(jarFile, expectedDigest), new ModuleTask<>());
+    }
+
+    @Override
+    public List<AnnotationApplicationModuleContext> installModules(Collection<InputStream> inputs) throws IOException {
+        List<ModuleInfo> moduleInfos = moduleLoader.loadingSpecModules(new ArrayList<>(inputs));
+        Map<String, BatchModule> batchModules = new LinkedHashMap<>();
+        for (ModuleInfo moduleInfo : moduleInfos) {
+            TriadMetadata metadata = moduleInfo.getModuleDependency().getProjectMetadata();
+            batchModules.put(moduleNameResolver.obtainModuleName(metadata), new BatchModule(moduleInfo));
+        }
+
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        Map<String, CompletableFuture<?>> refreshFutures = new HashMap<>();
+        ExecutorService executor = this.createBatchExecutor(batchModules.size());
+        try {
+            // 模块信息按拓扑顺序排列，父模块的刷新任务总是先创建
+            batchModules.forEach((moduleName, batchModule) -> {
+                CompletableFuture<?> classLoading = CompletableFuture.runAsync(() -> {
+                    try {
+                        batchModule.springModule = this.loadingModule(batchModule.moduleInfo);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, executor);
+
+                List<CompletableFuture<?>> waitFor = new ArrayList<>();
+                waitFor.add(classLoading);
+                List<String> parentModules = batchModule.moduleInfo.getModuleDependency().getParentModules();
+                if (!CollectionUtils.isEmpty(parentModules)) {
+                    parentModules.stream().map(refreshFutures::get).filter(Objects::nonNull).forEach(waitFor::add);
+                }
+                CompletableFuture<?> refresh = CompletableFuture.allOf(waitFor.toArray(CompletableFuture[]::new))
+                        .thenRunAsync(() -> this.installBatchModule(batchModule), executor);
+                refreshFutures.put(moduleName, refresh);
+                futures.add(classLoading);
+                futures.add(refresh);
+            });
+            // 等待全部任务结束，父模块失败时子模块的类加载器可能仍在创建
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).exceptionally(e -> null).join();
+        } finally {
+            executor.shutdown();
+        }
+
+        Throwable failure = null;
+        for (CompletableFuture<?> future : futures) {
+            if (future.isCompletedExceptionally()) {
+                failure = this.unwrapBatchFailure(future);
+                break;
+            }
+        }
+        if (failure == null) {
+            List<AnnotationApplicationModuleContext> applicationContexts = new ArrayList<>();
+            batchModules.values().forEach(batchModule -> applicationContexts.add(batchModule.applicationContext));
+            return applicationContexts;
+        }
+
+        this.rollbackBatchModules(batchModules);
+        if (failure instanceof IOException e) {
+            throw e;
+        }
+        if (failure instanceof RuntimeException e) {
+            throw e;
+        }
+        if (failure instanceof Error e) {
+            throw e;
+        }
+        throw new IllegalStateException(failure);
+    }
+
+    private void installBatchModule(BatchModule batchModule) {
+        SpringModule springModule = batchModule.springModule;
         String moduleName = springModule.getModuleName();
         if (this.applicationContext(moduleName) != null) {
             alreadyExistModule("模块已经注册: " + moduleName);
         }
+        // 之后失败时由installSpringModule关闭类加载器
+        batchModule.refreshing = true;
+        batchModule.applicationContext = this.installSpringModule(springModule);
+        moduleInfos.put(moduleName, batchModule.moduleInfo);
+        LOG.info("模块注册成功: " + moduleName);
+    }
+
+    private Throwable unwrapBatchFailure(CompletableFuture<?> future) {
+        try {
+            future.join();
+            return null;
+        } catch (CompletionException | CancellationException e) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            return cause instanceof UncheckedIOException ex ? ex.getCause() : cause;
+        }
+    }
+
+    /**
+     * 按拓扑逆序卸载本批次已经安装的模块，关闭未安装模块的类加载器，并删除本批次解压的模块文件
+     */
+    protected void rollbackBatchModules(Map<String, BatchModule> batchModules) {
+        List<String> moduleNames = new ArrayList<>(batchModules.keySet());
+        Collections.reverse(moduleNames);
+        for (String moduleName : moduleNames) {
+            BatchModule batchModule = batchModules.get(moduleName);
+            try {
+                if (batchModule.applicationContext != null) {
+                    this.uninstallModule(moduleName);
+                } else if (batchModule.springModule != null && !batchModule.refreshing) {
+                    this.closeClassLoader(batchModule.springModule.getClassLoader());
+                }
+            } catch (RuntimeException e) {
+                LOG.warn("回滚批量安装的模块失败：" + moduleName, e);
+            }
+            moduleLoader.unloadingSpecModule(batchModule.moduleInfo);
+        }
+    }
+
+    protected ExecutorService createBatchExecutor(int moduleCount) {
+        int threads = Math.max(1, Math.min(this.batchParallelism, moduleCount));
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("module-batch-");
+        threadFactory.setDaemon(true);
+        return Executors.newFixedThreadPool(threads, threadFactory);
+    }
+
+    /**
+     * 输入流在调用线程中读取到临时文件后关闭，请求结束后上传的输入流不再可用，安装线程只读取临时文件
+     */
+    @Override
+    public ModuleTask<AnnotationApplicationModuleContext> installModuleAsync(InputStream is, String expectedDigest) {
+        Path spoolFile;
+        try {
+            spoolFile = this.spoolModule(is);
+        } catch (IOException | RuntimeException e) {
+            ModuleTask<AnnotationApplicationModuleContext> moduleTask = new ModuleTask<>();
+            moduleTask.fail(e);
+            return moduleTask;
+        }
+
+        ModuleTask<AnnotationApplicationModuleContext> moduleTask = this.submit(task -> {
+            try {
+                // 临时文件交给加载器，不再作为输入流重新落盘
+                return this.installModule(() -> moduleLoader.loadingSpooledModule(spoolFile.toFile(), expectedDigest), task);
+            } finally {
+                // 加载之前被取消时加载器不会处理临时文件
+                Files.deleteIfExists(spoolFile);
+            }
+        });
+        if (moduleTask.getPhase() == ModuleTask.Phase.FAILED) {
+            // 被线程池拒绝时临时文件不会被读取
+            try {
+                Files.deleteIfExists(spoolFile);
+            } catch (IOException e) {
+                LOG.warn("删除模块包临时文件失败：" + spoolFile, e);
+            }
+        }
+        return moduleTask;
+    }
+
+    /**
+     * 把模块包输入流写入模块目录下的临时文件，无论成功与否都关闭输入流
+     *
+     * @param is 模块包输入流
+     * @return 临时文件
+     * @throws IOException IO异常
+     */
+    protected Path spoolModule(InputStream is) throws IOException {
+        try (is) {
+            Path spoolFile = this.packagesPath != null
+                    ? Files.createTempFile(Files.createDirectories(this.packagesPath), "spool", ZIP_NAME)
+                    : Files.createTempFile("spool", ZIP_NAME);
+            try {
+                Files.copy(is, spoolFile, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(spoolFile);
+                throw e;
+            }
+            return spoolFile;
+        }
+    }
+
+    @Override
+    public ModuleTask<AnnotationApplicationModuleContext> installModuleAsync(File jarFile, String expectedDigest) {
+        Assert.isTrue(jarFile.exists(), () -> "不存在的JAR路径：" + jarFile);
+        return this.submit(task -> this.installModule(
+                () -> moduleLoader.loadingSpecModule(jarFile, expectedDigest), task));
+    }
+
+    @Override
+    public ModuleTask<Void> uninstallModuleAsync(String moduleName) {
+        return this.submit(task -> {
+            task.enterPhase(ModuleTask.Phase.UNINSTALLING);
+            this.uninstallModule(moduleName);
+            return null;
+        });
+    }
+
+    @Override
+    public AnnotationApplicationModuleContext upgradeModule(String moduleName, InputStream is) throws IOException {
+        AnnotationApplicationModuleContext oldContext = this.obtainUpgradableContext(moduleName);
+        ModuleInfo moduleInfo = moduleLoader.loadingSpecModule(is);
+        try {
+            return this.upgradeModule(oldContext, moduleInfo);
+        } catch (IOException | RuntimeException e) {
+            moduleLoader.unloadingSpecModule(moduleInfo);
+            throw e;
+        }
+    }
+
+    /**
+     * 安装新版本并切换接口，切换失败时恢复旧版本的接口并卸载新版本
+     *
+     * @param oldContext 旧版本的模块上下文
+     * @param moduleInfo 新版本的模块信息
+     * @return 新版本的模块上下文
+     * @throws IOException IO异常
+     */
+    protected AnnotationApplicationModuleContext upgradeModule(AnnotationApplicationModuleContext oldContext,
+            ModuleInfo moduleInfo) throws IOException {
+        SpringModule springModule = this.loadingUpgradeModule(oldContext, moduleInfo);
+        String moduleName = springModule.getModuleName();
+        List<ModuleUpgradeProcessor> upgradeProcessors = BeanUtils.sort(this.applicationContext, ModuleUpgradeProcessor.class);
+        upgradeProcessors.forEach(processor -> processor.prepareUpgrade(springModule));
+        AnnotationApplicationModuleContext newContext;
+        try {
+            newContext = this.installSpringModule(springModule);
+        } catch (RuntimeException e) {
+            upgradeProcessors.forEach(processor -> processor.abortUpgrade(springModule));
+            throw e;
+        }
+
+        List<ModuleUpgradeProcessor> switched = new ArrayList<>();
+        try {
+            for (ModuleUpgradeProcessor processor : upgradeProcessors) {
+                processor.switchModule(oldContext, newContext);
+                switched.add(processor);
+            }
+        } catch (RuntimeException e) {
+            Collections.reverse(switched);
+            switched.forEach(processor -> processor.switchModule(newContext, oldContext));
+            upgradeProcessors.forEach(processor -> processor.abortUpgrade(springModule));
+            this.uninstallModule(moduleName);
+            throw e;
+        }
+        moduleInfos.put(moduleName, moduleInfo);
+        LOG.info("模块升级成功: " + oldContext.getId() + " -> " + moduleName);
+
+        try {
+            this.retireModule(oldContext.getId());
+        } catch (RuntimeException e) {
+            // 切换期间有新的模块依赖了旧版本
+            LOG.warn("旧版本模块[" + oldContext.getId() + "]暂时不能卸载", e);
+        }
+        return newContext;
+    }
+
+    /**
+     * 查找可以升级或者灰度发布的模块，被其他模块依赖或者正在灰度发布的模块不能升级
+     *
+     * @param moduleName 模块名
+     * @return 模块上下文
+     */
+    protected AnnotationApplicationModuleContext obtainUpgradableContext(String moduleName) {
+        AnnotationApplicationModuleContext applicationContext = this.applicationContext(moduleName);
+        if (applicationContext == null) {
+            notExistModule("模块[" + moduleName + "]未注册不能升级");
+        }
+        if (this.closureIndex.hasDescendants(moduleName)) {
+            existParentsModule("模块[" + moduleName + "]被其他模块引用无法升级");
+        }
+        if (canaries.containsKey(moduleName)) {
+            alreadyExistModule("模块[" + moduleName + "]正在灰度发布");
+        }
+        return applicationContext;
+    }
+
+    /**
+     * 加载新版本的模块类，新版本必须和旧版本属于同一个项目且没有注册
+     *
+     * @param oldContext 旧版本的模块上下文
+     * @param moduleInfo 新版本的模块信息
+     * @return 新版本的模块信息
+     * @throws IOException IO异常
+     */
+    protected SpringModule loadingUpgradeModule(AnnotationApplicationModuleContext oldContext, ModuleInfo moduleInfo)
+            throws IOException {
+        SpringModule springModule = this.loadingModule(moduleInfo);
+        String moduleName = springModule.getModuleName();
+        try {
+            SpringModule oldModule = oldContext.getSpringModule();
+            TriadMetadata newMetadata = springModule.getProjectMetadata();
+            if (oldModule != null && (!oldModule.getProjectMetadata().groupId().equals(newMetadata.groupId())
+                    || !oldModule.getProjectMetadata().artifactId().equals(newMetadata.artifactId()))) {
+                throw new IllegalArgumentException("模块[" + moduleName + "]不是模块[" + oldContext.getId() + "]的其他版本");
+            }
+            if (this.applicationContext(moduleName) != null) {
+                alreadyExistModule("模块已经注册: " + moduleName);
+            }
+        } catch (RuntimeException e) {
+            this.closeClassLoader(springModule.getClassLoader());
+            throw e;
+        }
+        return springModule;
+    }
+
+    @Override
+    public AnnotationApplicationModuleContext canaryModule(String moduleName, InputStream is, int weight)
+            throws IOException {
+        Assert.isTrue(weight >= 0 && weight <= 100, () -> "灰度权重必须在0到100之间：" + weight);
+        AnnotationApplicationModuleContext baseContext = this.obtainUpgradableContext(moduleName);
+        ModuleInfo moduleInfo = moduleLoader.loadingSpecModule(is);
+        try {
+            return this.canaryModule(baseContext, moduleInfo, weight);
+        } catch (IOException | RuntimeException e) {
+            moduleLoader.unloadingSpecModule(moduleInfo);
+            throw e;
+        }
+    }
+
+    /**
+     * 安装新版本并开始灰度，失败时移除灰度路由并卸载新版本
+     *
+     * @param baseContext 旧版本的模块上下文
+     * @param moduleInfo  新版本的模块信息
+     * @param weight      分流到新版本的百分比
+     * @return 新版本的模块上下文
+     * @throws IOException IO异常
+     */
+    protected AnnotationApplicationModuleContext canaryModule(AnnotationApplicationModuleContext baseContext,
+            ModuleInfo moduleInfo, int weight) throws IOException {
+        SpringModule springModule = this.loadingUpgradeModule(baseContext, moduleInfo);
+        String moduleName = springModule.getModuleName();
+        List<ModuleUpgradeProcessor> upgradeProcessors = BeanUtils.sort(this.applicationContext, ModuleUpgradeProcessor.class);
+        upgradeProcessors.forEach(processor -> processor.prepareUpgrade(springModule));
+        AnnotationApplicationModuleContext canaryContext;
+        try {
+            canaryContext = this.installSpringModule(springModule);
+        } catch (RuntimeException e) {
+            upgradeProcessors.forEach(processor -> processor.abortUpgrade(springModule));
+            throw e;
+        }
+
+        ModuleCanary canary = new ModuleCanary(baseContext.getId(), moduleName, weight,
+                canaryStickyHeader, canaryStickyCookie);
+        CanaryDeployment deployment = new CanaryDeployment(baseContext, canaryContext, moduleInfo, canary);
+        List<ModuleUpgradeProcessor> started = new ArrayList<>();
+        try {
+            // 同一个模块并发灰度时只有一个能成功
+            if (canaries.putIfAbsent(baseContext.getId(), deployment) != null) {
+                alreadyExistModule("模块[" + baseContext.getId() + "]正在灰度发布");
+            }
+            for (ModuleUpgradeProcessor processor : upgradeProcessors) {
+                processor.startCanary(baseContext, canaryContext, canary);
+                started.add(processor);
+            }
+        } catch (RuntimeException e) {
+            canaries.remove(baseContext.getId(), deployment);
+            started.forEach(processor -> processor.stopCanary(canary));
+            upgradeProcessors.forEach(processor -> processor.abortUpgrade(springModule));
+            this.uninstallModule(moduleName);
+            throw e;
+        }
+        moduleInfos.put(moduleName, moduleInfo);
+        deployment.evaluation = this.scheduleEvaluation(deployment);
+        LOG.info("模块开始灰度发布: " + canary);
+        return canaryContext;
+    }
+
+    @Override
+    public void adjustCanary(String moduleName, int weight) {
+        this.obtainCanary(moduleName).canary.setWeight(weight);
+    }
+
+    @Override
+    public void promoteCanary(String moduleName) {
+        CanaryDeployment deployment = this.obtainCanary(moduleName);
+        if (!canaries.remove(moduleName, deployment)) {
+            notExistModule("模块[" + moduleName + "]没有正在进行的灰度发布");
+        }
+        List<ModuleUpgradeProcessor> upgradeProcessors = BeanUtils.sort(this.applicationContext, ModuleUpgradeProcessor.class);
+        List<ModuleUpgradeProcessor> switched = new ArrayList<>();
+        try {
+            for (ModuleUpgradeProcessor processor : upgradeProcessors) {
+                processor.switchModule(deployment.baseContext, deployment.canaryContext);
+                switched.add(processor);
+            }
+        } catch (RuntimeException e) {
+            // 切换失败时继续灰度，由下一次评估或者调用方决定
+            Collections.reverse(switched);
+            switched.forEach(processor -> processor.switchModule(deployment.canaryContext, deployment.baseContext));
+            canaries.put(moduleName, deployment);
+            throw e;
+        }
+        deployment.cancelEvaluation();
+        LOG.info("模块灰度发布完成: " + deployment.canary);
+
+        try {
+            this.retireModule(moduleName);
+        } catch (RuntimeException e) {
+            LOG.warn("旧版本模块[" + moduleName + "]暂时不能卸载", e);
+        }
+    }
+
+    @Override
+    public void rollbackCanary(String moduleName) {
+        CanaryDeployment deployment = this.obtainCanary(moduleName);
+        if (!canaries.remove(moduleName, deployment)) {
+            notExistModule("模块[" + moduleName + "]没有正在进行的灰度发布");
+        }
+        deployment.cancelEvaluation();
+        BeanUtils.sort(this.applicationContext, ModuleUpgradeProcessor.class)
+                .forEach(processor -> processor.stopCanary(deployment.canary));
+        LOG.info("模块灰度发布回滚: " + deployment.canary);
+        try {
+            this.uninstallModule(deployment.canary.getCanaryModule());
+        } finally {
+            this.unloadModuleFiles(deployment.moduleInfo);
+        }
+    }
+
+    @Override
+    @Nullable
+    public ModuleCanary getCanary(String moduleName) {
+        CanaryDeployment deployment = canaries.get(moduleName);
+        return deployment == null ? null : deployment.canary;
+    }
+
+    private CanaryDeployment obtainCanary(String moduleName) {
+        CanaryDeployment deployment = canaries.get(moduleName);
+        if (deployment == null) {
+            notExistModule("模块[" + moduleName + "]没有正在进行的灰度发布");
+        }
+        return deployment;
+    }
+
+    @Nullable
+    private ScheduledFuture<?> scheduleEvaluation(CanaryDeployment deployment) {
+        long interval = canaryEvaluationInterval.toMillis();
+        try {
+            return canaryExecutor.scheduleWithFixedDelay(() -> this.evaluateCanary(deployment),
+                    interval, interval, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOG.warn("灰度发布不会自动评估：" + deployment.canary, e);
+            return null;
+        }
+    }
+
+    /**
+     * 定时评估灰度指标，指标正常且请求数足够时全量发布，指标异常时回滚
+     *
+     * @param deployment 灰度发布
+     */
+    protected void evaluateCanary(CanaryDeployment deployment) {
+        ModuleCanary canary = deployment.canary;
+        String moduleName = canary.getBaseModule();
+        if (canaries.get(moduleName) != deployment) {
+            // 定时任务在灰度结束之后才保存到灰度发布中
+            deployment.cancelEvaluation();
+            return;
+        }
+        ModuleCanary.Decision decision = canary.evaluate(canaryPolicy);
+        try {
+            switch (decision) {
+                case PROMOTE -> {
+                    LOG.info("灰度指标正常，全量发布：" + canary + "，新版本：" + canary.getCanaryStats());
+                    this.promoteCanary(moduleName);
+                }
+                case ROLLBACK -> {
+                    LOG.warn("灰度指标异常，回滚：" + canary + "，旧版本：" + canary.getBaseStats()
+                            + "，新版本：" + canary.getCanaryStats());
+                    this.rollbackCanary(moduleName);
+                }
+                default -> {
+                }
+            }
+        } catch (RuntimeException e) {
+            // 异常会终止定时任务，只记录日志
+            LOG.warn("灰度发布自动处理失败：" + canary, e);
+        }
+    }
+
+    /**
+     * 注销旧版本模块，在后台排空正在处理的请求后关闭，关闭后和回滚灰度一样删除旧版本的模块文件
+     *
+     * @param moduleName 旧版本的模块名
+     */
+    protected void retireModule(String moduleName) {
+        AnnotationApplicationModuleContext applicationContext = this.unregisterModule(moduleName);
+        RetiringModule retiringModule = new RetiringModule(applicationContext, moduleInfos.remove(moduleName));
+        retiringModules.put(moduleName, retiringModule);
+        Runnable close = () -> {
+            if (retiringModules.remove(moduleName, retiringModule)) {
+                this.closeRetiringModule(moduleName, retiringModule);
+            }
+        };
+        try {
+            retireExecutor.execute(close);
+        } catch (RejectedExecutionException e) {
+            close.run();
+        }
+    }
+
+    private void closeRetiringModule(String moduleName, RetiringModule retiringModule) {
+        try {
+            this.uninstallModule(moduleName, retiringModule.applicationContext());
+        } finally {
+            this.unloadModuleFiles(retiringModule.moduleInfo());
+        }
+    }
+
+    /**
+     * 删除被替换版本的模块文件，必须在模块关闭之后调用
+     *
+     * @param moduleInfo 模块信息，为null时模块不是通过当前注册器的模块包安装的
+     */
+    protected void unloadModuleFiles(@Nullable ModuleInfo moduleInfo) {
+        if (moduleInfo != null) {
+            moduleLoader.unloadingSpecModule(moduleInfo);
+        }
+    }
+
+    /**
+     * 提交到模块安装线程池，线程池已满时任务直接失败，不占用调用方的线程
+     */
+    protected <T> ModuleTask<T> submit(ModuleTask.Action<T> action) {
+        ModuleTask<T> task = new ModuleTask<>();
+        try {
+            this.installExecutor.execute(() -> task.run(action));
+        } catch (RejectedExecutionException e) {
+            task.fail(e);
+        }
+        return task;
+    }
 
-        AnnotationApplicationModuleContext applicationContext = this.installSpringModule(springModule);
+    /**
+     * 加载模块包并安装模块，任一阶段失败或者被取消时，删除本次解压的模块文件
+     *
+     * @param loader 加载模块包的方式
+     * @param task   模块安装任务，用于报告阶段和检查取消
+     * @return 模块上下文
+     * @throws IOException 加载模块的IO异常
+     */
+    protected AnnotationApplicationModuleContext installModule(ModuleInfoLoader loader, ModuleTask<?> task)
+            throws IOException {
+        task.enterPhase(ModuleTask.Phase.LOADING);
+        ModuleInfo moduleInfo = loader.load();
+        try {
+            task.enterPhase(ModuleTask.Phase.CLASS_LOADING);
+            return this.installModule(moduleInfo, task);
+        } catch (IOException | RuntimeException e) {
+            moduleLoader.unloadingSpecModule(moduleInfo);
+            throw e;
+        }
+    }
+
+    protected AnnotationApplicationModuleContext installModule(ModuleInfo moduleInfo) throws IOException {
+        return this.installModule(moduleInfo, new ModuleTask<>());
+    }
+
+    protected AnnotationApplicationModuleContext installModule(ModuleInfo moduleInfo, ModuleTask<?> task) throws IOException {
+        SpringModule springModule = this.loadingModule(moduleInfo);
+        String moduleName = springModule.getModuleName();
+        try {
+            if (this.applicationContext(moduleName) != null) {
+                alreadyExistModule("模块已经注册: " + moduleName);
+            }
+            task.enterPhase(ModuleTask.Phase.REFRESHING);
+        } catch (RuntimeException e) {
+            this.closeClassLoader(springModule.getClassLoader());
+            throw e;
+        }
+
+        AnnotationApplicationModuleContext applicationContext = this.installSpringModule(springModule, task);
+        moduleInfos.put(moduleName, moduleInfo);
         LOG.info("模块注册成功: " + moduleName);
         return applicationContext;
     }
 
     protected AnnotationApplicationModuleContext installSpringModule(SpringModule springModule) {
+        return this.installSpringModule(springModule, new ModuleTask<>());
+    }
+
+    /**
+     * 刷新之前标记模块正在安装并引用父模块，持有到模块注册完成，刷新期间父模块不能卸载，刷新本身不持有分段锁
+     */
+    protected AnnotationApplicationModuleContext installSpringModule(SpringModule springModule, ModuleTask<?> task) {
         Set<TriadMetadata> dependencies = springModule.getDependencies();
-        AnnotationApplicationModuleContext applicationContext;
+        List<String> parentModules = CollectionUtils.isEmpty(dependencies) || springModule.getParentModules() == null ?
+                List.of() : springModule.getParentModules();
+        ModuleReservation reservation;
         try {
-            applicationContext = CollectionUtils.isEmpty(dependencies) ?
-                    this.createApplicationModuleContext(springModule,
-                            new DefaultResourceLoader(springModule.getClassLoader()), null) :
-                    this.createApplicationModuleContext(springModule);
-        } catch (Exception ex) {
-            ((JarClassLoader) springModule.getClassLoader()).close();
-            throw ex;
+            reservation = this.reserveModule(springModule.getModuleName(), parentModules);
+        } catch (RuntimeException e) {
+            this.closeClassLoader(springModule.getClassLoader());
+            throw e;
         }
 
-        return this.installModuleApplication(applicationContext);
+        try (ModuleReservation ignored = reservation) {
+            AnnotationApplicationModuleContext applicationContext;
+            try {
+                applicationContext = CollectionUtils.isEmpty(dependencies) ?
+                        this.createApplicationModuleContext(springModule,
+                                new DefaultResourceLoader(springModule.getClassLoader()), null) :
+                        this.createApplicationModuleContext(springModule);
+            } catch (Exception ex) {
+                this.closeClassLoader(springModule.getClassLoader());
+                throw ex;
+            }
+
+            try {
+                // 刷新期间请求的取消在刷新完成后生效
+                task.enterPhase(ModuleTask.Phase.REGISTERING);
+            } catch (RuntimeException e) {
+                applicationContext.close();
+                this.closeClassLoader(applicationContext.getClassLoader());
+                throw e;
+            }
+            return this.installModuleApplication(applicationContext);
+        }
     }
 
     @Override
@@ -75,6 +700,7 @@ public class ApplicationModulesRegistrar extends AbstractGraphModulesRegistrar i
             return super.installModuleApplication(applicationContext);
         } catch (Exception e) {
             applicationContext.close();
+            this.closeClassLoader(applicationContext.getClassLoader());
             throw e;
         }
     }
@@ -88,12 +714,18 @@ public class ApplicationModulesRegistrar extends AbstractGraphModulesRegistrar i
         File jarFile = moduleInfo.getJarFile();
         SpringModule springModule = new SpringModule(jarFile);
         this.loadingModuleInfo(moduleInfo, springModule);
-        this.loadingClassLoader(this.applicationClassLoader, moduleInfo, springModule);
-        this.loadingModuleName(springModule);
-        // 必须指定父类平台类加载器，防止双亲委派的影响
-        ClassLoader platformClassLoader = this.applicationClassLoader.getParent();
-        try (JarClassLoader tempClassLoader = JarClassLoader.load(jarFile, platformClassLoader)) {
-            this.loadingSpringFactories(tempClassLoader, (SpringClassLoader) springModule.getClassLoader());
+        try {
+            this.loadingClassLoader(this.applicationClassLoader, moduleInfo, springModule);
+            this.loadingModuleName(springModule);
+            // 必须指定父类平台类加载器，防止双亲委派的影响
+            ClassLoader platformClassLoader = this.applicationClassLoader.getParent();
+            try (JarClassLoader tempClassLoader = this.createTempClassLoader(platformClassLoader, moduleInfo)) {
+                this.loadingSpringFactories(tempClassLoader, (SpringClassLoader) springModule.getClassLoader());
+            }
+            this.checkComponentsIndex(moduleInfo, springModule);
+        } catch (IOException | RuntimeException e) {
+            this.closeClassLoader(springModule.getClassLoader());
+            throw e;
         }
         return springModule;
     }
@@ -109,14 +741,113 @@ public class ApplicationModulesRegistrar extends AbstractGraphModulesRegistrar i
         classLoader.setLocationResources(loadResources);
     }
 
+    /**
+     * 检查模块包的组件索引能否覆盖模块的全部组件
+     * <p>
+     * Spring的组件索引只能整体启用：类加载器能找到{@code META-INF/spring.components}时，{@code @ComponentScan}只读取索引中的候选组件，
+     * 不再扫描类文件。模块类加载器只暴露模块包自己的索引，私有依赖、共享依赖和父模块中的组件即使在扫描的包下也不会注册，
+     * 这类组件需要通过{@code @Import}或自动配置引入
+     *
+     * @param moduleInfo   模块信息
+     * @param springModule 已经加载资源的模块
+     */
+    protected void checkComponentsIndex(ModuleInfo moduleInfo, SpringModule springModule) {
+        SpringClassLoader classLoader = (SpringClassLoader) springModule.getClassLoader();
+        ArrayEnumeration<URL> componentsIndex = classLoader.getLocationResources().get(SpringClassLoader.COMPONENTS_INDEX_FILE);
+        if (componentsIndex == null || componentsIndex.getEnumerations().isEmpty()) {
+            return;
+        }
+        if (!CollectionUtils.isEmpty(moduleInfo.getIncludeLibs()) || !CollectionUtils.isEmpty(springModule.getParentModules())) {
+            LOG.info("模块[" + springModule.getModuleName() + "]按组件索引扫描候选组件，依赖包和父模块中没有写入索引的组件不会被注册");
+        }
+    }
+
+    protected JarClassLoader createTempClassLoader(ClassLoader parent, ModuleInfo moduleInfo) throws IOException {
+        if (!moduleInfo.isNested()) {
+            return JarClassLoader.load(moduleInfo.getJarFile(), parent);
+        }
+        JarClassLoader tempClassLoader = new JarClassLoader(parent);
+        tempClassLoader.addNestedJar(moduleInfo.getArchiveFile(), getArchiveEntryName(moduleInfo.getJarFile()));
+        return tempClassLoader;
+    }
+
     protected void loadingClassLoader(ClassLoader parent, ModuleInfo moduleInfo, SpringModule springModule) throws IOException {
-        JarClassLoader moduleClassLoader = new SpringClassLoader(parent);
-        moduleClassLoader.addJar(moduleInfo.getJarFile());
-        File libFile = getLibFile(moduleInfo.getJarFile());
+        SpringClassLoader moduleClassLoader = new SpringClassLoader(parent);
+        moduleClassLoader.setMemoryMapped(this.memoryMappedJars);
+        File jarFile = moduleInfo.getJarFile();
+        moduleClassLoader.setRecordDefinedClasses(ClassWarmupModulePostProcessor.isRecording(this.classWarmup, jarFile));
+        springModule.setClassLoader(moduleClassLoader);
+        if (moduleInfo.isNested()) {
+            moduleClassLoader.addNestedJar(moduleInfo.getArchiveFile(), getArchiveEntryName(jarFile));
+        } else {
+            moduleClassLoader.addJar(jarFile);
+        }
+
+        // 先登记全部共享类加载器，后续加载失败时关闭模块类加载器即可释放引用
+        Map<Path, SharedLibraryClassLoader> sharedLibraries = this.acquireSharedLibraries(moduleInfo);
+        sharedLibraries.values().forEach(moduleClassLoader::addSharedLibrary);
         for (Path lib : moduleInfo.getIncludeLibs()) {
-            moduleClassLoader.addJar(new File(libFile, lib.toString()));
+            if (!sharedLibraries.containsKey(lib)) {
+                this.loadingLibrary(moduleClassLoader, moduleInfo, lib);
+            }
+        }
+    }
+
+    protected void loadingLibrary(JarClassLoader classLoader, ModuleInfo moduleInfo, Path lib) throws IOException {
+        if (moduleInfo.isNested()) {
+            classLoader.addNestedJar(moduleInfo.getArchiveFile(), getArchiveEntryName(moduleInfo.getJarFile(), lib));
+        } else {
+            classLoader.addJar(moduleInfo.getLibFile(lib));
+        }
+    }
+
+    /**
+     * 获取模块私有依赖对应的共享类加载器
+     *
+     * @param moduleInfo 模块信息
+     * @return key为依赖的文件名，不在结果中的依赖由模块类加载器自己加载
+     * @throws IOException IO异常
+     */
+    protected Map<Path, SharedLibraryClassLoader> acquireSharedLibraries(ModuleInfo moduleInfo) throws IOException {
+        ModuleDependency moduleDependency = moduleInfo.getModuleDependency();
+        if (this.sharedLibraryRegistry == null || moduleDependency.getDependencyGraph() == null) {
+            return Map.of();
+        }
+
+        Map<TriadMetadata, Path> candidates = new HashMap<>();
+        for (TriadMetadata dependency : moduleDependency.getDependencies()) {
+            Path lib = Path.of(dependency.getJarFileName());
+            if (moduleInfo.getIncludeLibs().contains(lib)) {
+                candidates.put(dependency, lib);
+            }
+        }
+        Set<TriadMetadata> moduleProvided = new HashSet<>(moduleInfo.getProvidedDependencies());
+        moduleProvided.add(moduleDependency.getProjectMetadata());
+
+        Map<TriadMetadata, SharedLibraryClassLoader> acquired = this.sharedLibraryRegistry.acquire(candidates.keySet(),
+                moduleDependency.getDependencyGraph(), moduleProvided,
+                (classLoader, metadata) -> {
+                    classLoader.setMemoryMapped(this.memoryMappedJars);
+                    this.loadingLibrary(classLoader, moduleInfo, candidates.get(metadata));
+                });
+        Map<Path, SharedLibraryClassLoader> sharedLibraries = new HashMap<>();
+        acquired.forEach((metadata, classLoader) -> sharedLibraries.put(candidates.get(metadata), classLoader));
+        return sharedLibraries;
+    }
+
+    /**
+     * 关闭模块类加载器，同时释放其引用的共享类加载器
+     *
+     * @param classLoader 模块类加载器
+     */
+    protected void closeClassLoader(ClassLoader classLoader) {
+        if (!(classLoader instanceof JarClassLoader jarClassLoader)) {
+            return;
+        }
+        jarClassLoader.close();
+        if (this.sharedLibraryRegistry != null && classLoader instanceof ZipClassLoader zipClassLoader) {
+            zipClassLoader.getSharedLibraries().forEach(this.sharedLibraryRegistry::release);
         }
-        springModule.setClassLoader(moduleClassLoader);
     }
 
     protected void loadingModuleInfo(ModuleInfo moduleInfo, SpringModule springModule) {
@@ -132,10 +863,125 @@ public class ApplicationModulesRegistrar extends AbstractGraphModulesRegistrar i
         springModule.setModuleName(moduleName);
     }
 
+    @Override
+    public void uninstallModule(String moduleName) {
+        super.uninstallModule(moduleName);
+        moduleInfos.remove(moduleName);
+    }
+
+    /**
+     * 关闭模块类加载器并释放共享类加载器的引用，应用关闭时没有模块再引用的共享类加载器随之关闭
+     */
+    @Override
+    protected void closeModuleClassLoader(AnnotationApplicationModuleContext applicationContext) {
+        this.closeClassLoader(applicationContext.getClassLoader());
+    }
+
     @Override
     public void afterSingletonsInstantiated() {
         super.afterSingletonsInstantiated();
         this.moduleLoader = applicationContext.getBean(SpecModuleLoader.class);
+        ModuleProperties moduleProperties = applicationContext.getBean(ModuleProperties.class);
+        if (this.sharedLibraryRegistry == null && moduleProperties.isSharedClassLoaders()) {
+            this.sharedLibraryRegistry = new SharedLibraryRegistry(this.applicationClassLoader);
+            // 共享类加载器定义的类也会进入元数据缓存，最后一个模块释放后随类加载器一起清理
+            this.sharedLibraryRegistry.addCloseListener(SharedMetadataReaderCache.getShared()::evict);
+        }
+        this.packagesPath = Paths.get(moduleProperties.getPackagesPath());
+        this.memoryMappedJars = moduleProperties.isMemoryMappedJars();
+        this.classWarmup = moduleProperties.getClassWarmup();
+        JarFilePool.getShared().setMaxOpenFiles(moduleProperties.getMaxOpenJarFiles());
+        SharedMetadataReaderCache.getShared().setMaxSize(moduleProperties.getMetadataReaderCacheSize());
+        if (this.installExecutor == null) {
+            this.installExecutor = createInstallExecutor(moduleProperties);
+        }
+        this.batchParallelism = moduleProperties.getBatchParallelism();
+        this.setDestroyTimeout(moduleProperties.getDestroyTimeout());
+        this.setDrainTimeout(moduleProperties.getDrainTimeout());
+        this.setAotEnabled(moduleProperties.isAotEnabled());
+        this.setExcludeParentAutoConfigurations(moduleProperties.isExcludeParentAutoConfigurations());
+        this.canaryStickyHeader = moduleProperties.getCanaryStickyHeader();
+        this.canaryStickyCookie = moduleProperties.getCanaryStickyCookie();
+        this.canaryEvaluationInterval = moduleProperties.getCanaryEvaluationInterval();
+        long promoteRequests = moduleProperties.getCanaryPromoteRequests();
+        this.canaryPolicy = new ModuleCanary.Policy(moduleProperties.getCanaryMinRequests(),
+                promoteRequests > 0 ? promoteRequests : Long.MAX_VALUE,
+                moduleProperties.getCanaryMaxErrorRateIncrease(), moduleProperties.getCanaryMaxLatencyRatio());
+    }
+
+    /**
+     * 模块安装线程池，队列有界，批量部署时超出的任务直接拒绝，不会堆积占用请求线程
+     */
+    protected static ThreadPoolExecutor createInstallExecutor(ModuleProperties moduleProperties) {
+        int threads = moduleProperties.getInstallThreads();
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("module-install-");
+        threadFactory.setDaemon(true);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(moduleProperties.getInstallQueueCapacity()), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 排空并关闭升级后的旧版本模块，每个模块最长等待排空超时时间，多个模块同时退役时并行关闭
+     */
+    protected static ExecutorService createRetireExecutor() {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("module-retire-");
+        threadFactory.setDaemon(true);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 定时评估灰度指标的线程，和关闭旧版本模块分开，排空旧版本时不会推迟评估
+     */
+    protected static ScheduledExecutorService createCanaryExecutor() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("module-canary-");
+        threadFactory.setDaemon(true);
+        return Executors.newSingleThreadScheduledExecutor(threadFactory);
+    }
+
+    /**
+     * 应用关闭时不再等待，直接关闭升级后剩余的旧版本模块，灰度中的两个版本随其他模块一起关闭
+     */
+    @Override
+    public void destroy() {
+        if (this.installExecutor != null) {
+            this.installExecutor.shutdownNow();
+        }
+        this.canaryExecutor.shutdownNow();
+        this.retireExecutor.shutdownNow();
+        this.canaries.clear();
+        for (String moduleName : new ArrayList<>(retiringModules.keySet())) {
+            RetiringModule retiringModule = retiringModules.remove(moduleName);
+            if (retiringModule != null) {
+                try {
+                    this.closeRetiringModule(moduleName, retiringModule);
+                } catch (RuntimeException e) {
+                    LOG.warn("关闭旧版本模块失败：" + moduleName, e);
+                }
+            }
+        }
+        super.destroy();
+    }
+
+    public ThreadPoolExecutor getInstallExecutor() {
+        return installExecutor;
+    }
+
+    public void setInstallExecutor(ThreadPoolExecutor installExecutor) {
+        this.installExecutor = installExecutor;
+    }
+
+    public SharedLibraryRegistry getSharedLibraryRegistry() {
+        return sharedLibraryRegistry;
+    }
+
+    public void setSharedLibraryRegistry(SharedLibraryRegistry sharedLibraryRegistry) {
+        this.sharedLibraryRegistry = sharedLibraryRegistry;
     }
 
     @Override
@@ -143,4 +989,62 @@ public class ApplicationModulesRegistrar extends AbstractGraphModulesRegistrar i
         this.applicationClassLoader = classLoader;
     }
 
+    /**
+     * 批量安装中的模块，字段在批量安装的线程之间通过CompletableFuture的依赖关系传递
+     */
+    protected static class BatchModule {
+
+        final ModuleInfo moduleInfo;
+        volatile SpringModule springModule;
+        volatile boolean refreshing;
+        volatile AnnotationApplicationModuleContext applicationContext;
+
+        BatchModule(ModuleInfo moduleInfo) {
+            this.moduleInfo = moduleInfo;
+        }
+    }
+
+    /**
+     * 进行中的灰度发布
+     */
+    protected static class CanaryDeployment {
+
+        final AnnotationApplicationModuleContext baseContext;
+        final AnnotationApplicationModuleContext canaryContext;
+        final ModuleInfo moduleInfo;
+        final ModuleCanary canary;
+        volatile ScheduledFuture<?> evaluation;
+
+        CanaryDeployment(AnnotationApplicationModuleContext baseContext,
+                AnnotationApplicationModuleContext canaryContext, ModuleInfo moduleInfo, ModuleCanary canary) {
+            this.baseContext = baseContext;
+            this.canaryContext = canaryContext;
+            this.moduleInfo = moduleInfo;
+            this.canary = canary;
+        }
+
+        void cancelEvaluation() {
+            ScheduledFuture<?> evaluation = this.evaluation;
+            if (evaluation != null) {
+                evaluation.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * 等待关闭的旧版本模块
+     */
+    protected record RetiringModule(AnnotationApplicationModuleContext applicationContext,
+                                    @Nullable ModuleInfo moduleInfo) {
+    }
+
+    /**
+     * 加载模块包的方式
+     */
+    @FunctionalInterface
+    protected interface ModuleInfoLoader {
+
+        ModuleInfo load() throws IOException;
+    }
+
 }
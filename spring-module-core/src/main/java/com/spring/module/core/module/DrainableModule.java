@@ -0,0 +1,37 @@
+package com.spring.module.core.module;
+
+import org.springframework.context.ApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模块关闭之前的排空处理
+ * <p>
+ * 卸载模块时先对所有处理器调用{@link #suspendModule(ApplicationContext)}停止把新的请求交给模块，
+ * 再在同一个截止时间内依次调用{@link #awaitModule(ApplicationContext, long, TimeUnit)}等待正在处理的请求结束，之后才关闭模块上下文和类加载器
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-16
+ * @since 1.0
+ */
+public interface DrainableModule {
+
+    /**
+     * 停止把新的请求交给模块
+     *
+     * @param applicationContext 模块应用上下文
+     */
+    void suspendModule(ApplicationContext applicationContext);
+
+    /**
+     * 等待模块正在处理的请求结束
+     *
+     * @param applicationContext 模块应用上下文
+     * @param timeout            最长等待时间
+     * @param unit               时间单位
+     * @return 请求在等待时间内全部结束时返回true
+     * @throws InterruptedException 等待被中断
+     */
+    boolean awaitModule(ApplicationContext applicationContext, long timeout, TimeUnit unit) throws InterruptedException;
+
+}
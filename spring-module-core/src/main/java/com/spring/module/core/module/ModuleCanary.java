@@ -0,0 +1,203 @@
+package com.spring.module.core.module;
+
+import org.springframework.lang.Nullable;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 模块的灰度发布
+ * <p>
+ * 新旧两个版本同时安装，相同的接口按权重分流到新版本。请求带有粘性标识时按标识的哈希分流，同一个标识总是访问同一个版本；
+ * 没有标识时随机分流。两个版本分别统计请求数、错误数和耗时，根据{@link Policy}自动决定全量发布或者回滚
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-15
+ * @since 1.0
+ */
+public class ModuleCanary {
+
+    private final String baseModule;
+    private final String canaryModule;
+    private final String stickyHeader;
+    private final String stickyCookie;
+    private final Stats baseStats = new Stats();
+    private final Stats canaryStats = new Stats();
+    private volatile int weight;
+
+    /**
+     * @param baseModule   旧版本的模块名
+     * @param canaryModule 新版本的模块名
+     * @param weight       分流到新版本的百分比
+     * @param stickyHeader 粘性标识的请求头，可以为null
+     * @param stickyCookie 粘性标识的Cookie，可以为null
+     */
+    public ModuleCanary(String baseModule, String canaryModule, int weight,
+            @Nullable String stickyHeader, @Nullable String stickyCookie) {
+        this.baseModule = baseModule;
+        this.canaryModule = canaryModule;
+        this.stickyHeader = stickyHeader;
+        this.stickyCookie = stickyCookie;
+        this.setWeight(weight);
+    }
+
+    /**
+     * 判断请求是否分流到新版本
+     *
+     * @param stickyKey 请求的粘性标识，为null时随机分流
+     * @return 分流到新版本时返回true
+     */
+    public boolean routeToCanary(@Nullable String stickyKey) {
+        int weight = this.weight;
+        if (weight <= 0) {
+            return false;
+        }
+        if (weight >= 100) {
+            return true;
+        }
+        int bucket;
+        if (stickyKey == null) {
+            bucket = ThreadLocalRandom.current().nextInt(100);
+        } else {
+            // 混入模块名，不同模块的灰度不会总是命中同一批用户
+            int hash = stickyKey.hashCode() * 31 + canaryModule.hashCode();
+            bucket = Math.floorMod(hash ^ (hash >>> 16), 100);
+        }
+        return bucket < weight;
+    }
+
+    /**
+     * 根据两个版本的统计决定下一步
+     *
+     * @param policy 灰度策略
+     * @return 灰度的决定
+     */
+    public Decision evaluate(Policy policy) {
+        long requests = canaryStats.getRequests();
+        if (requests < policy.minRequests()) {
+            return Decision.CONTINUE;
+        }
+        if (canaryStats.getErrorRate() > baseStats.getErrorRate() + policy.maxErrorRateIncrease()) {
+            return Decision.ROLLBACK;
+        }
+        if (baseStats.getRequests() >= policy.minRequests()
+                && canaryStats.getAverageLatencyNanos() > baseStats.getAverageLatencyNanos() * policy.maxLatencyRatio()) {
+            return Decision.ROLLBACK;
+        }
+        return requests >= policy.promoteRequests() ? Decision.PROMOTE : Decision.CONTINUE;
+    }
+
+    public String getBaseModule() {
+        return baseModule;
+    }
+
+    public String getCanaryModule() {
+        return canaryModule;
+    }
+
+    @Nullable
+    public String getStickyHeader() {
+        return stickyHeader;
+    }
+
+    @Nullable
+    public String getStickyCookie() {
+        return stickyCookie;
+    }
+
+    public Stats getBaseStats() {
+        return baseStats;
+    }
+
+    public Stats getCanaryStats() {
+        return canaryStats;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public void setWeight(int weight) {
+        if (weight < 0 || weight > 100) {
+            throw new IllegalArgumentException("灰度权重必须在0到100之间：" + weight);
+        }
+        this.weight = weight;
+    }
+
+    @Override
+    public String toString() {
+        return baseModule + " -> " + canaryModule + "(" + weight + "%)";
+    }
+
+    /**
+     * 单个版本的请求统计，请求线程只做累加
+     */
+    public static class Stats {
+
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder latencyNanos = new LongAdder();
+
+        public void record(long nanos, boolean error) {
+            requests.increment();
+            latencyNanos.add(nanos);
+            if (error) {
+                errors.increment();
+            }
+        }
+
+        public long getRequests() {
+            return requests.sum();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public double getErrorRate() {
+            long requests = this.getRequests();
+            return requests == 0 ? 0 : (double) this.getErrors() / requests;
+        }
+
+        public double getAverageLatencyNanos() {
+            long requests = this.getRequests();
+            return requests == 0 ? 0 : (double) latencyNanos.sum() / requests;
+        }
+
+        @Override
+        public String toString() {
+            return "requests=" + this.getRequests() + ", errors=" + this.getErrors()
+                    + ", avgLatencyMs=" + this.getAverageLatencyNanos() / 1_000_000;
+        }
+    }
+
+    /**
+     * 灰度策略
+     *
+     * @param minRequests          新版本至少处理多少请求后才做决定
+     * @param promoteRequests      新版本处理多少请求且指标正常后全量发布
+     * @param maxErrorRateIncrease 新版本错误率比旧版本最多高出的比例，超过后回滚
+     * @param maxLatencyRatio      新版本平均耗时最多是旧版本的倍数，超过后回滚
+     */
+    public record Policy(long minRequests, long promoteRequests, double maxErrorRateIncrease, double maxLatencyRatio) {
+    }
+
+    public enum Decision {
+        /**
+         * 继续灰度
+         */
+        CONTINUE,
+
+        /**
+         * 全量发布新版本
+         */
+        PROMOTE,
+
+        /**
+         * 回滚到旧版本
+         */
+        ROLLBACK,
+
+    }
+
+}
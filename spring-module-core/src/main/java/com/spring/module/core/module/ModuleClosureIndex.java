@@ -0,0 +1,207 @@
+package com.spring.module.core.module;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 模块依赖的传递闭包索引
+ * <p>
+ * 每个模块分配一个稠密的整数编号，祖先模块和后代模块分别用位图保存，安装和卸载模块时增量更新。
+ * 合并模块、可达性判断和查询依赖当前模块的模块都转换为按字的位运算，不再遍历模块名集合。
+ * 卸载模块释放的编号会被之后安装的模块复用，位图的长度与同时注册的模块数量成正比
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-12
+ * @since 1.0
+ */
+public class ModuleClosureIndex {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> moduleIds = new HashMap<>();
+    private final BitSet freeIds = new BitSet();
+    private String[] moduleNames = new String[16];
+    private BitSet[] ancestors = new BitSet[16];
+    private BitSet[] descendants = new BitSet[16];
+    private int nextId;
+
+    /**
+     * 添加模块，祖先模块是直接父模块和它们的祖先模块的并集
+     *
+     * @param moduleName    模块名
+     * @param parentModules 直接依赖的父模块，必须已经添加
+     * @throws IllegalStateException 模块已经存在
+     */
+    public void addModule(String moduleName, Collection<String> parentModules) {
+        lock.writeLock().lock();
+        try {
+            if (moduleIds.containsKey(moduleName)) {
+                throw new IllegalStateException("模块已经存在：" + moduleName);
+            }
+            BitSet moduleAncestors = new BitSet();
+            for (String parentModule : parentModules) {
+                int parentId = this.obtainId(parentModule);
+                moduleAncestors.set(parentId);
+                moduleAncestors.or(ancestors[parentId]);
+            }
+
+            int id = this.allocateId();
+            moduleIds.put(moduleName, id);
+            moduleNames[id] = moduleName;
+            ancestors[id] = moduleAncestors;
+            descendants[id] = new BitSet();
+            for (int i = moduleAncestors.nextSetBit(0); i >= 0; i = moduleAncestors.nextSetBit(i + 1)) {
+                descendants[i].set(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 移除模块，只能移除没有后代模块的模块
+     *
+     * @param moduleName 模块名
+     * @return 模块存在时返回true
+     * @throws IllegalStateException 模块还被其他模块依赖
+     */
+    public boolean removeModule(String moduleName) {
+        lock.writeLock().lock();
+        try {
+            Integer id = moduleIds.get(moduleName);
+            if (id == null) {
+                return false;
+            }
+            if (!descendants[id].isEmpty()) {
+                throw new IllegalStateException("模块[" + moduleName + "]被其他模块依赖：" + this.toNames(descendants[id]));
+            }
+            BitSet moduleAncestors = ancestors[id];
+            for (int i = moduleAncestors.nextSetBit(0); i >= 0; i = moduleAncestors.nextSetBit(i + 1)) {
+                descendants[i].clear(id);
+            }
+            moduleIds.remove(moduleName);
+            moduleNames[id] = null;
+            ancestors[id] = null;
+            descendants[id] = null;
+            freeIds.set(id);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 合并模块，去掉是其他模块祖先的模块，只保留没有关系的顶级模块，保持原有的顺序
+     *
+     * @param modules 模块名，未注册的模块原样保留
+     * @return 新的模块列表
+     */
+    public List<String> mergeModules(List<String> modules) {
+        lock.readLock().lock();
+        try {
+            BitSet covered = new BitSet();
+            for (String module : modules) {
+                Integer id = moduleIds.get(module);
+                if (id != null) {
+                    covered.or(ancestors[id]);
+                }
+            }
+            List<String> merged = new ArrayList<>(modules.size());
+            for (String module : modules) {
+                Integer id = moduleIds.get(module);
+                if (id == null || !covered.get(id)) {
+                    merged.add(module);
+                }
+            }
+            return merged;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 判断模块是否直接或者间接依赖祖先模块
+     */
+    public boolean isAncestor(String ancestorModule, String moduleName) {
+        lock.readLock().lock();
+        try {
+            Integer ancestorId = moduleIds.get(ancestorModule);
+            Integer id = moduleIds.get(moduleName);
+            return ancestorId != null && id != null && ancestors[id].get(ancestorId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 当前模块直接或者间接依赖的所有模块
+     */
+    public Set<String> getAncestors(String moduleName) {
+        lock.readLock().lock();
+        try {
+            Integer id = moduleIds.get(moduleName);
+            return id == null ? Set.of() : this.toNames(ancestors[id]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 直接或者间接依赖当前模块的所有模块
+     */
+    public Set<String> getDescendants(String moduleName) {
+        lock.readLock().lock();
+        try {
+            Integer id = moduleIds.get(moduleName);
+            return id == null ? Set.of() : this.toNames(descendants[id]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 是否有模块直接或者间接依赖当前模块
+     */
+    public boolean hasDescendants(String moduleName) {
+        lock.readLock().lock();
+        try {
+            Integer id = moduleIds.get(moduleName);
+            return id != null && !descendants[id].isEmpty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int obtainId(String moduleName) {
+        Integer id = moduleIds.get(moduleName);
+        if (id == null) {
+            throw new IllegalStateException("父模块不存在：" + moduleName);
+        }
+        return id;
+    }
+
+    private int allocateId() {
+        int id = freeIds.nextSetBit(0);
+        if (id >= 0) {
+            freeIds.clear(id);
+            return id;
+        }
+        id = nextId++;
+        if (id == moduleNames.length) {
+            int capacity = moduleNames.length << 1;
+            moduleNames = Arrays.copyOf(moduleNames, capacity);
+            ancestors = Arrays.copyOf(ancestors, capacity);
+            descendants = Arrays.copyOf(descendants, capacity);
+        }
+        return id;
+    }
+
+    private Set<String> toNames(BitSet ids) {
+        Set<String> names = new LinkedHashSet<>(ids.cardinality() * 2);
+        for (int i = ids.nextSetBit(0); i >= 0; i = ids.nextSetBit(i + 1)) {
+            names.add(moduleNames[i]);
+        }
+        return names;
+    }
+
+}
@@ -0,0 +1,117 @@
+package com.spring.module.core.module;
+
+import org.jgrapht.Graph;
+import org.jgrapht.Graphs;
+import org.jgrapht.graph.AsUnmodifiableGraph;
+import org.jgrapht.graph.DefaultEdge;
+import org.jgrapht.graph.DirectedAcyclicGraph;
+import org.jgrapht.graph.EdgeReversedGraph;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 模块依赖图，边的方向为父模块指向子模块
+ * <p>
+ * 安装和卸载模块时直接修改内部的图，只涉及模块自身的边，不再复制整个图。
+ * 读取时返回不可修改的快照，快照在图变化后第一次读取时生成并缓存，之后的读取不加锁；反向视图随快照一起缓存。
+ * <p>
+ * 快照不是增量维护的：图变化后的第一次读取仍然复制整个图，代价为O(V+E)，只是把复制从每次安装、卸载推迟到读取，
+ * 连续的多次变化只复制一次。安装后立即读取的场景和原来一样是一次完整复制
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-11
+ * @since 1.0
+ */
+public class ModuleGraph {
+
+    /**
+     * 当前的依赖图，只在当前对象的锁内访问
+     */
+    private final Graph<String, DefaultEdge> graph = new DirectedAcyclicGraph<>(DefaultEdge.class);
+    private volatile Snapshot snapshot;
+
+    /**
+     * 添加模块及其与父模块的边
+     *
+     * @param moduleName    模块名
+     * @param parentModules 直接依赖的父模块，必须已经添加
+     * @throws IllegalArgumentException 父模块不存在或者产生循环依赖
+     */
+    public synchronized void addModule(String moduleName, Collection<String> parentModules) {
+        graph.addVertex(moduleName);
+        try {
+            for (String parentModule : parentModules) {
+                graph.addEdge(parentModule, moduleName);
+            }
+        } catch (IllegalArgumentException e) {
+            graph.removeVertex(moduleName);
+            throw e;
+        } finally {
+            this.snapshot = null;
+        }
+    }
+
+    /**
+     * 移除模块及其所有的边
+     *
+     * @param moduleName 模块名
+     * @return 模块存在时返回true
+     */
+    public synchronized boolean removeModule(String moduleName) {
+        boolean removed = graph.removeVertex(moduleName);
+        if (removed) {
+            this.snapshot = null;
+        }
+        return removed;
+    }
+
+    /**
+     * 直接依赖当前模块的子模块数量
+     */
+    public synchronized int childCount(String moduleName) {
+        return graph.containsVertex(moduleName) ? graph.outDegreeOf(moduleName) : 0;
+    }
+
+    /**
+     * 直接依赖当前模块的子模块
+     */
+    public synchronized List<String> getChildModules(String moduleName) {
+        return graph.containsVertex(moduleName) ? Graphs.successorListOf(graph, moduleName) : List.of();
+    }
+
+    /**
+     * 不可修改的依赖图快照，边的方向为父模块指向子模块
+     */
+    public Graph<String, DefaultEdge> getSnapshot() {
+        return this.obtainSnapshot().graph();
+    }
+
+    /**
+     * 不可修改的反向依赖图快照，边的方向为子模块指向父模块
+     */
+    public Graph<String, DefaultEdge> getReversedSnapshot() {
+        return this.obtainSnapshot().reversedGraph();
+    }
+
+    private Snapshot obtainSnapshot() {
+        Snapshot snapshot = this.snapshot;
+        return snapshot != null ? snapshot : this.createSnapshot();
+    }
+
+    private synchronized Snapshot createSnapshot() {
+        Snapshot snapshot = this.snapshot;
+        if (snapshot == null) {
+            Graph<String, DefaultEdge> copy = new DirectedAcyclicGraph<>(DefaultEdge.class);
+            Graphs.addGraph(copy, graph);
+            snapshot = new Snapshot(new AsUnmodifiableGraph<>(copy),
+                    new AsUnmodifiableGraph<>(new EdgeReversedGraph<>(copy)));
+            this.snapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    private record Snapshot(Graph<String, DefaultEdge> graph, Graph<String, DefaultEdge> reversedGraph) {
+    }
+
+}
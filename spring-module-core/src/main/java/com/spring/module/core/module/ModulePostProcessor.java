@@ -27,4 +27,14 @@ public interface ModulePostProcessor {
      */
     void postProcessAfterModule(ApplicationContext applicationContext);
 
+    /**
+     * 模块上下文刷新失败后处理，此时不会再调用{@link #postProcessAfterModule(ApplicationContext)}，
+     * 需要释放{@link #postProcessBeforeModule(SpringModule, ApplicationContext)}中持有的资源
+     *
+     * @param applicationContext 刷新失败的模块的应用上下文
+     * @param ex                 刷新失败的异常
+     */
+    default void postProcessModuleFailure(ApplicationContext applicationContext, Throwable ex) {
+    }
+
 }
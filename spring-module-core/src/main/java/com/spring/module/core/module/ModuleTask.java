@@ -0,0 +1,184 @@
+package com.spring.module.core.module;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 异步执行的模块安装、卸载任务
+ * <p>
+ * 取消是协作式的：任务在进入下一个阶段之前检查取消标记，正在执行的阶段会执行完，之后回滚已经完成的步骤。
+ * 模块上下文刷新期间取消时，刷新完成后关闭模块上下文和类加载器，并删除解压的模块文件
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-10
+ * @since 1.0
+ */
+public class ModuleTask<T> {
+
+    private static final Log LOG = LogFactory.getLog(ModuleTask.class);
+
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+    private final List<Consumer<Phase>> phaseListeners = new CopyOnWriteArrayList<>();
+    private volatile Phase phase = Phase.PENDING;
+    private volatile boolean cancelRequested;
+
+    /**
+     * 执行任务，任务的结果和异常写入{@link #toCompletableFuture()}
+     *
+     * @param action 任务的内容
+     */
+    void run(Action<T> action) {
+        try {
+            T result = action.execute(this);
+            this.changePhase(Phase.COMPLETED);
+            future.complete(result);
+        } catch (Throwable e) {
+            this.fail(e);
+        }
+    }
+
+    void fail(Throwable e) {
+        this.changePhase(e instanceof CancellationException ? Phase.CANCELLED : Phase.FAILED);
+        future.completeExceptionally(e);
+    }
+
+    /**
+     * 进入下一个阶段，已经请求取消时抛出{@link CancellationException}，由调用方回滚
+     *
+     * @param next 下一个阶段
+     * @throws CancellationException 任务已经被取消
+     */
+    void enterPhase(Phase next) throws CancellationException {
+        if (cancelRequested) {
+            throw new CancellationException("模块任务在" + phase + "阶段之后被取消");
+        }
+        this.changePhase(next);
+    }
+
+    private void changePhase(Phase next) {
+        this.phase = next;
+        for (Consumer<Phase> listener : phaseListeners) {
+            try {
+                listener.accept(next);
+            } catch (RuntimeException e) {
+                LOG.warn("模块任务的阶段监听器执行异常", e);
+            }
+        }
+    }
+
+    /**
+     * 请求取消任务
+     *
+     * @return 任务已经结束时返回false
+     */
+    public boolean cancel() {
+        if (future.isDone()) {
+            return false;
+        }
+        this.cancelRequested = true;
+        return true;
+    }
+
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    /**
+     * 当前所处的阶段
+     */
+    public Phase getPhase() {
+        return phase;
+    }
+
+    /**
+     * 监听阶段的变化，监听器在执行任务的线程中回调
+     *
+     * @param listener 阶段监听器
+     * @return 当前任务
+     */
+    public ModuleTask<T> onPhaseChange(Consumer<Phase> listener) {
+        phaseListeners.add(listener);
+        return this;
+    }
+
+    public boolean isDone() {
+        return future.isDone();
+    }
+
+    /**
+     * 等待任务完成
+     *
+     * @return 任务的结果
+     */
+    public T join() {
+        return future.join();
+    }
+
+    /**
+     * 获取任务结果的副本，对副本的取消或完成不影响任务本身，取消任务请使用{@link #cancel()}
+     */
+    public CompletableFuture<T> toCompletableFuture() {
+        return future.copy();
+    }
+
+    @FunctionalInterface
+    public interface Action<T> {
+
+        T execute(ModuleTask<T> task) throws Exception;
+    }
+
+    public enum Phase {
+        /**
+         * 等待执行
+         */
+        PENDING,
+
+        /**
+         * 读取、校验并解压模块包，分析模块依赖
+         */
+        LOADING,
+
+        /**
+         * 创建模块类加载器
+         */
+        CLASS_LOADING,
+
+        /**
+         * 创建并刷新模块上下文
+         */
+        REFRESHING,
+
+        /**
+         * 注册模块上下文
+         */
+        REGISTERING,
+
+        /**
+         * 卸载模块
+         */
+        UNINSTALLING,
+
+        /**
+         * 执行成功
+         */
+        COMPLETED,
+
+        /**
+         * 已取消，完成的步骤已经回滚
+         */
+        CANCELLED,
+
+        /**
+         * 执行失败
+         */
+        FAILED,
+
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.spring.module.core.module;
+
+import com.abm.module.api.SpringModule;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * 模块升级时切换新旧版本的处理器
+ * <p>
+ * 新版本在旧版本旁边安装，刷新期间新版本对外的入口先暂存不生效，刷新成功后一次性从旧版本切换到新版本，
+ * 或者先按灰度权重分流，全量发布时再切换到新版本
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-14
+ * @since 1.0
+ */
+public interface ModuleUpgradeProcessor {
+
+    /**
+     * 新版本的模块上下文刷新之前调用
+     *
+     * @param springModule 新版本的模块信息
+     */
+    void prepareUpgrade(SpringModule springModule);
+
+    /**
+     * 新版本的模块上下文刷新成功后，把入口从旧版本切换到新版本
+     *
+     * @param oldContext 旧版本的模块上下文
+     * @param newContext 新版本的模块上下文
+     */
+    void switchModule(ApplicationContext oldContext, ApplicationContext newContext);
+
+    /**
+     * 升级失败时丢弃新版本暂存的入口，旧版本的入口不受影响
+     *
+     * @param springModule 新版本的模块信息
+     */
+    void abortUpgrade(SpringModule springModule);
+
+    /**
+     * 新版本的模块上下文刷新成功后开始灰度，新版本和旧版本按灰度权重分流
+     *
+     * @param oldContext 旧版本的模块上下文
+     * @param newContext 新版本的模块上下文
+     * @param canary     灰度发布
+     */
+    default void startCanary(ApplicationContext oldContext, ApplicationContext newContext, ModuleCanary canary) {
+    }
+
+    /**
+     * 回滚灰度，之后全部流量回到旧版本
+     *
+     * @param canary 灰度发布
+     */
+    default void stopCanary(ModuleCanary canary) {
+    }
+
+}
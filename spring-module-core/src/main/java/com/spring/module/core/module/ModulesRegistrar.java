@@ -10,6 +10,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -28,14 +30,36 @@ public interface ModulesRegistrar {
      * @return 模块应用上下文
      * @throws IOException 加载模块的IO异常
      */
-    AnnotationApplicationModuleContext installModule(InputStream is) throws IOException;
+    default AnnotationApplicationModuleContext installModule(InputStream is) throws IOException {
+        return this.installModule(is, null);
+    }
+
+    /**
+     * 通过模块包的输入流加载模块，并校验模块包的摘要
+     *
+     * @param is             模块包输入流
+     * @param expectedDigest 模块包预期的SHA-256摘要，十六进制格式，为null时只按模块包中的摘要清单校验
+     * @return 模块应用上下文
+     * @throws IOException 加载模块的IO异常
+     */
+    AnnotationApplicationModuleContext installModule(InputStream is, @Nullable String expectedDigest) throws IOException;
 
     /**
      * @see #installModule(InputStream)
      */
     default AnnotationApplicationModuleContext installModule(File jarFile) throws IOException {
+        return this.installModule(jarFile, null);
+    }
+
+    /**
+     * @see #installModule(InputStream, String)
+     */
+    default AnnotationApplicationModuleContext installModule(File jarFile, @Nullable String expectedDigest)
+            throws IOException {
         Assert.isTrue(jarFile.exists(), () -> "不存在的JAR路径：" + jarFile);
-        return this.installModule(new FileInputStream(jarFile));
+        try (FileInputStream fis = new FileInputStream(jarFile)) {
+            return this.installModule(fis, expectedDigest);
+        }
     }
 
     /**
@@ -45,6 +69,42 @@ public interface ModulesRegistrar {
         return this.installModule(new File(jarPath));
     }
 
+    /**
+     * 批量安装模块，同一批次中的模块可以互相依赖。所有模块包先解压并合并依赖关系，
+     * 之后并行创建模块类加载器和刷新模块上下文，每个模块只等待自己的父模块，总耗时接近依赖关系中最长的一条链。
+     * 任一模块安装失败时，卸载本批次已经安装的模块，并删除本批次解压的模块文件
+     *
+     * @param inputs 模块包输入流
+     * @return 按依赖的拓扑顺序排列的模块上下文，父模块在前
+     * @throws IOException 加载模块的IO异常
+     */
+    List<AnnotationApplicationModuleContext> installModules(Collection<InputStream> inputs) throws IOException;
+
+    /**
+     * 在模块安装线程池中异步加载模块，模块包的输入流在调用线程中读取到临时文件，方法返回前关闭
+     *
+     * @param is             模块包输入流
+     * @param expectedDigest 模块包预期的SHA-256摘要，十六进制格式，可以为null
+     * @return 模块安装任务，线程池已满时任务直接失败
+     */
+    ModuleTask<AnnotationApplicationModuleContext> installModuleAsync(InputStream is, @Nullable String expectedDigest);
+
+    /**
+     * @see #installModuleAsync(InputStream, String)
+     */
+    default ModuleTask<AnnotationApplicationModuleContext> installModuleAsync(InputStream is) {
+        return this.installModuleAsync(is, null);
+    }
+
+    /**
+     * 在模块安装线程池中异步加载模块
+     *
+     * @param jarFile        模块包文件
+     * @param expectedDigest 模块包预期的SHA-256摘要，十六进制格式，可以为null
+     * @return 模块安装任务，线程池已满时任务直接失败
+     */
+    ModuleTask<AnnotationApplicationModuleContext> installModuleAsync(File jarFile, @Nullable String expectedDigest);
+
     /**
      * 注册模块应用上下文
      *
@@ -62,7 +122,7 @@ public interface ModulesRegistrar {
     AnnotationApplicationModuleContext applicationContext(String moduleName);
 
     /**
-     * 卸载模块
+     * 卸载模块，先停止把请求路由到模块，等待正在处理的请求结束或者超时后再关闭模块上下文和类加载器
      *
      * @param moduleName 模块名
      */
@@ -75,11 +135,77 @@ public interface ModulesRegistrar {
         this.uninstallModule(applicationModuleContext.getId());
     }
 
+    /**
+     * 升级模块
+     * <p>
+     * 新版本在旧版本旁边使用新的类加载器和模块上下文安装，刷新成功后一次性把接口从旧版本切换到新版本，
+     * 旧版本在后台等待正在处理的请求结束后关闭。被其他模块依赖的模块不能升级
+     *
+     * @param moduleName 旧版本的模块名
+     * @param is         新版本的模块包
+     * @return 新版本的模块上下文
+     * @throws IOException 加载模块包的IO异常
+     */
+    AnnotationApplicationModuleContext upgradeModule(String moduleName, InputStream is) throws IOException;
+
+    /**
+     * 灰度发布模块
+     * <p>
+     * 新版本在旧版本旁边安装，两个版本相同的接口按权重分流，请求带有粘性标识时同一个标识总是访问同一个版本。
+     * 两个版本分别统计请求数、错误率和耗时，定时评估后自动全量发布或者回滚，也可以手动调整权重、全量发布或者回滚
+     *
+     * @param moduleName 旧版本的模块名
+     * @param is         新版本的模块包
+     * @param weight     分流到新版本的百分比
+     * @return 新版本的模块上下文
+     * @throws IOException 加载模块包的IO异常
+     */
+    AnnotationApplicationModuleContext canaryModule(String moduleName, InputStream is, int weight) throws IOException;
+
+    /**
+     * 调整灰度权重
+     *
+     * @param moduleName 旧版本的模块名
+     * @param weight     分流到新版本的百分比
+     */
+    void adjustCanary(String moduleName, int weight);
+
+    /**
+     * 全量发布灰度中的新版本，接口全部切换到新版本，旧版本在后台关闭
+     *
+     * @param moduleName 旧版本的模块名
+     */
+    void promoteCanary(String moduleName);
+
+    /**
+     * 回滚灰度，接口全部回到旧版本，卸载新版本
+     *
+     * @param moduleName 旧版本的模块名
+     */
+    void rollbackCanary(String moduleName);
+
+    /**
+     * 查询进行中的灰度发布
+     *
+     * @param moduleName 旧版本的模块名
+     * @return 灰度发布，没有进行中的灰度发布时返回null
+     */
+    @Nullable
+    ModuleCanary getCanary(String moduleName);
+
+    /**
+     * 在模块安装线程池中异步卸载模块，只能在开始卸载之前取消
+     *
+     * @param moduleName 模块名
+     * @return 模块卸载任务
+     */
+    ModuleTask<Void> uninstallModuleAsync(String moduleName);
+
     /**
      * 获取模块依赖关系
      *
      * @param strategy 依赖的策略
-     * @return 关系图
+     * @return 不可修改的关系图快照，之后安装或卸载的模块不会反映到已经返回的快照中
      */
     Graph<String, DefaultEdge> obtainModuleDependencies(DependencyStrategy strategy);
 
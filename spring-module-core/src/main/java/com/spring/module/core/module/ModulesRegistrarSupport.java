@@ -6,24 +6,33 @@ import com.spring.module.core.loading.JarClassLoader;
 import com.spring.module.core.loading.ZipClassLoader;
 import com.spring.module.core.parse.ModuleNameResolver;
 import com.spring.module.core.utils.BeanUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.boot.ApplicationContextFactory;
 import org.springframework.boot.Banner;
 import org.springframework.boot.BootstrapRegistryInitializer;
 import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.autoconfigure.logging.ConditionEvaluationReportLoggingListener;
+import org.springframework.boot.context.annotation.ImportCandidates;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.context.ApplicationContextInitializer;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.core.io.DefaultResourceLoader;
 import org.springframework.lang.NonNull;
-import org.springframework.util.ReflectionUtils;
+import org.springframework.lang.Nullable;
+import org.springframework.util.CollectionUtils;
 
-import java.lang.reflect.Constructor;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+
+import static com.spring.module.core.exception.ModuleRegistryException.notExistModule;
 
 /**
  * 模块注册的支持
@@ -35,31 +44,32 @@ import java.util.List;
 @SuppressWarnings("SpellCheckingInspection")
 public abstract class ModulesRegistrarSupport implements ApplicationContextAware, SmartInitializingSingleton {
 
-    public static final ApplicationContextInitializer<?>[] APPLICATION_CONTEXT_INITIALIZERS;
+    private static final Log LOG = LogFactory.getLog(ModulesRegistrarSupport.class);
+
+    /**
+     * 按定义类的类加载器共享类元数据，主应用和父模块的类不随每个子模块重复解析
+     */
+    public static final ApplicationContextInitializer<?>[] APPLICATION_CONTEXT_INITIALIZERS = {
+            new ConditionEvaluationReportLoggingListener(),
+            new ModuleMetadataReaderFactoryContextInitializer()
+    };
+
+    /**
+     * AOT模式不再解析配置类，不需要共享的元数据读取器
+     */
+    public static final ApplicationContextInitializer<?>[] AOT_APPLICATION_CONTEXT_INITIALIZERS = {
+            new ConditionEvaluationReportLoggingListener()
+    };
 
     ModuleNameResolver moduleNameResolver;
+    private boolean aotEnabled;
+    private boolean excludeParentAutoConfigurations;
     private SpringApplicationCreater applicationCreater;
     protected ConfigurableApplicationContext applicationContext;
     private ApplicationContextFactory applicationContextFactory;
     private BootstrapRegistryInitializer bootstrapRegistryInitializer;
     private ApplicationContextInitializer<ConfigurableApplicationContext> applicationContextInitializer;
 
-    static {
-        try {
-            Class<?> initializerClass = Class.forName("org.springframework.boot.autoconfigure.SharedMetadataReaderFactoryContextInitializer");
-            Constructor<?> constructor = initializerClass.getDeclaredConstructor();
-            ReflectionUtils.makeAccessible(constructor);
-            ApplicationContextInitializer<?> readerFactoryContextInitializer =
-                    (ApplicationContextInitializer<?>) constructor.newInstance();
-            APPLICATION_CONTEXT_INITIALIZERS = new ApplicationContextInitializer<?>[]{
-                    new ConditionEvaluationReportLoggingListener(),
-                    readerFactoryContextInitializer
-            };
-        } catch (Exception ex) {
-            throw new RuntimeException(ex);
-        }
-    }
-
     /**
      * 构建模块的上下文，并且刷新
      *
@@ -71,10 +81,17 @@ public abstract class ModulesRegistrarSupport implements ApplicationContextAware
     protected AnnotationApplicationModuleContext createApplicationModuleContext(SpringModule springModule,
             DefaultResourceLoader resourceLoader, List<AnnotationApplicationModuleContext> applicationContexts) {
         String moduleName = springModule.getModuleName();
-        Class<?> source = applicationCreater.createVirtualApplication(springModule.getProjectMetadata(), resourceLoader.getClassLoader());
+        ClassLoader classLoader = resourceLoader.getClassLoader();
+        Class<?> aotSource = this.resolveAotApplication(springModule, classLoader, applicationContexts);
+        Class<?> source = aotSource != null ? aotSource : applicationCreater.createVirtualApplication(
+                springModule.getProjectMetadata(), classLoader, this.resolveExcludeAutoConfigurations(classLoader, applicationContexts));
         BootstrapRegistryInitializer bootstrapRegistryInitializer = this.bootstrapRegistryInitializer == null ?
                 new ApplicationBootstrapRegistry(springModule) : this.bootstrapRegistryInitializer;
-        return (AnnotationApplicationModuleContext) new SpringModuleApplicationBuilder(moduleName, resourceLoader, source)
+        SpringModuleApplicationBuilder builder = new SpringModuleApplicationBuilder(moduleName, resourceLoader, source);
+        if (aotSource != null) {
+            builder.aotInitializer(aotSource.getName() + SpringApplicationCreater.AOT_INITIALIZER_SUFFIX);
+        }
+        return (AnnotationApplicationModuleContext) builder
                 .addParents(applicationContexts)
                 .springModule(springModule)
                 .main(source)
@@ -82,7 +99,7 @@ public abstract class ModulesRegistrarSupport implements ApplicationContextAware
                 .parent(this.applicationContext)
                 .contextFactory(new ApplicationModuleApplicationContextFactory())
                 //.environment(this.applicationContext.getEnvironment())  // 不能使用同一个环境，否则会产生类加载器的泄漏
-                .initializers(APPLICATION_CONTEXT_INITIALIZERS)
+                .initializers(aotSource != null ? AOT_APPLICATION_CONTEXT_INITIALIZERS : APPLICATION_CONTEXT_INITIALIZERS)
                 .initializers(this.applicationContextInitializer)
                 .addBootstrapRegistryInitializer(bootstrapRegistryInitializer)
                 .logStartupInfo(true)
@@ -91,6 +108,57 @@ public abstract class ModulesRegistrarSupport implements ApplicationContextAware
                 .run();
     }
 
+    /**
+     * 模块包中有构建时AOT生成的初始化器时直接注册生成的bean定义，跳过组件扫描和自动配置的条件评估。
+     * 构建时条件注解按模块自身的类路径评估，看不到父模块的bean和类，依赖父模块的模块总是在运行时刷新
+     *
+     * @param springModule        模块加载的信息
+     * @param classLoader         模块类加载器
+     * @param applicationContexts 模块上下文的所有父类上下文
+     * @return 不使用AOT时返回null
+     */
+    @Nullable
+    protected Class<?> resolveAotApplication(SpringModule springModule, ClassLoader classLoader,
+            @Nullable List<AnnotationApplicationModuleContext> applicationContexts) {
+        if (!this.aotEnabled) {
+            return null;
+        }
+        Class<?> aotSource = applicationCreater.findAotApplication(springModule.getProjectMetadata(), classLoader);
+        if (aotSource != null && !CollectionUtils.isEmpty(applicationContexts)) {
+            LOG.info("模块[" + springModule.getModuleName() + "]依赖其他模块，不使用构建时AOT生成的初始化器");
+            return null;
+        }
+        return aotSource;
+    }
+
+    /**
+     * 主应用和父模块已经应用的自动配置，模块上下文不再导入和评估条件，通过父上下文使用它们注册的bean
+     *
+     * @param classLoader         模块类加载器
+     * @param applicationContexts 模块上下文的所有父类上下文，没有依赖其他模块时为null
+     * @return 模块可见的自动配置候选类中需要排除的类，没有开启时返回空集合
+     */
+    protected Set<String> resolveExcludeAutoConfigurations(ClassLoader classLoader,
+            @Nullable List<AnnotationApplicationModuleContext> applicationContexts) {
+        if (!this.excludeParentAutoConfigurations) {
+            return Set.of();
+        }
+
+        List<ConfigurableListableBeanFactory> beanFactories = new ArrayList<>();
+        beanFactories.add(this.applicationContext.getBeanFactory());
+        if (applicationContexts != null) {
+            applicationContexts.forEach(parentContext -> beanFactories.add(parentContext.getBeanFactory()));
+        }
+        // 自动配置类的bean名称就是全类名，存在bean定义说明父上下文导入了这个自动配置并且条件匹配
+        Set<String> excludeNames = new LinkedHashSet<>();
+        for (String candidate : ImportCandidates.load(AutoConfiguration.class, classLoader)) {
+            if (beanFactories.stream().anyMatch(beanFactory -> beanFactory.containsBeanDefinition(candidate))) {
+                excludeNames.add(candidate);
+            }
+        }
+        return excludeNames;
+    }
+
     protected AnnotationApplicationModuleContext createApplicationModuleContext(SpringModule springModule) {
         if (!(springModule.getClassLoader() instanceof ZipClassLoader classLoader)) {
             throw new IllegalStateException("模块类加载器的类型不对：" + springModule);
@@ -100,6 +168,9 @@ public abstract class ModulesRegistrarSupport implements ApplicationContextAware
         List<AnnotationApplicationModuleContext> applicationContexts = new ArrayList<>();
         for (String parentModuleName : parentModuleNames) {
             AnnotationApplicationModuleContext parentContext = this.applicationContext(parentModuleName);
+            if (parentContext == null) {
+                notExistModule("模块[" + springModule.getModuleName() + "]依赖的模块[" + parentModuleName + "]未注册");
+            }
             classLoader.addParent((JarClassLoader) parentContext.getClassLoader());
             applicationContexts.add(parentContext);
         }
@@ -147,6 +218,28 @@ public abstract class ModulesRegistrarSupport implements ApplicationContextAware
      */
     protected abstract List<String> mergeModules(List<String> modules);
 
+    public boolean isAotEnabled() {
+        return aotEnabled;
+    }
+
+    /**
+     * @param aotEnabled 模块包中有构建时AOT生成的初始化器时是否使用，默认不使用
+     */
+    public void setAotEnabled(boolean aotEnabled) {
+        this.aotEnabled = aotEnabled;
+    }
+
+    public boolean isExcludeParentAutoConfigurations() {
+        return excludeParentAutoConfigurations;
+    }
+
+    /**
+     * @param excludeParentAutoConfigurations 模块上下文是否排除主应用和父模块已经应用的自动配置
+     */
+    public void setExcludeParentAutoConfigurations(boolean excludeParentAutoConfigurations) {
+        this.excludeParentAutoConfigurations = excludeParentAutoConfigurations;
+    }
+
     public SpringApplicationCreater getApplicationCreater() {
         return applicationCreater;
     }
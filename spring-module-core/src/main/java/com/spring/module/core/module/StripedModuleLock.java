@@ -0,0 +1,103 @@
+package com.spring.module.core.module;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 按模块名分段的模块锁
+ * <p>
+ * 安装、卸载模块时持有模块所在分段的写锁，安装模块时还持有直接父模块所在分段的读锁：
+ * 没有关系的模块可以并发安装，子模块安装期间父模块不能卸载。父模块存在时更上层的祖先模块也不能卸载，所以只需要锁直接父模块。
+ * 多个分段按下标从小到大加锁，避免死锁
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-13
+ * @since 1.0
+ */
+public class StripedModuleLock {
+
+    private static final int DEFAULT_STRIPES = 64;
+
+    private final ReentrantReadWriteLock[] stripes;
+
+    public StripedModuleLock() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes 分段数量，向上取整为2的幂
+     */
+    public StripedModuleLock(int stripes) {
+        int size = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.stripes = new ReentrantReadWriteLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    /**
+     * 锁定模块和它的直接父模块
+     *
+     * @param moduleName    加写锁的模块名
+     * @param parentModules 加读锁的父模块名
+     * @return 释放锁的句柄
+     */
+    public ModuleLock lock(String moduleName, Collection<String> parentModules) {
+        TreeMap<Integer, Lock> locks = new TreeMap<>();
+        for (String parentModule : parentModules) {
+            int index = this.indexOf(parentModule);
+            locks.put(index, stripes[index].readLock());
+        }
+        // 同一个分段只加写锁
+        int index = this.indexOf(moduleName);
+        locks.put(index, stripes[index].writeLock());
+
+        List<Lock> acquired = new ArrayList<>(locks.size());
+        try {
+            for (Lock lock : locks.values()) {
+                lock.lock();
+                acquired.add(lock);
+            }
+        } catch (RuntimeException | Error e) {
+            new ModuleLock(acquired).close();
+            throw e;
+        }
+        return new ModuleLock(acquired);
+    }
+
+    /**
+     * 锁定单个模块
+     *
+     * @param moduleName 加写锁的模块名
+     * @return 释放锁的句柄
+     */
+    public ModuleLock lock(String moduleName) {
+        return this.lock(moduleName, List.of());
+    }
+
+    private int indexOf(String moduleName) {
+        int hash = moduleName.hashCode();
+        return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+    }
+
+    public static final class ModuleLock implements AutoCloseable {
+
+        private final List<Lock> locks;
+
+        private ModuleLock(List<Lock> locks) {
+            this.locks = locks;
+        }
+
+        @Override
+        public void close() {
+            for (int i = locks.size() - 1; i >= 0; i--) {
+                locks.get(i).unlock();
+            }
+        }
+    }
+
+}
@@ -65,6 +65,7 @@ public class MavenDependencyAnalyzer implements DependencyAnalyzer,
         }
 
         moduleDependency.setDependencies(graph.vertexSet());
+        moduleDependency.setDependencyGraph(graph);
         this.analyzeDependOnModules(graph, moduleDependency);
         return moduleDependency;
     }
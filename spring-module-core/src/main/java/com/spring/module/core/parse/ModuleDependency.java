@@ -1,6 +1,8 @@
 package com.spring.module.core.parse;
 
 import com.abm.module.api.TriadMetadata;
+import org.jgrapht.Graph;
+import org.jgrapht.graph.DefaultEdge;
 
 import java.util.HashSet;
 import java.util.List;
@@ -24,6 +26,11 @@ public class ModuleDependency {
 
     private List<String> parentModules;
 
+    /**
+     * 依赖关系图，边的方向：被依赖的JAR包 -> 依赖它的JAR包
+     */
+    private Graph<TriadMetadata, DefaultEdge> dependencyGraph;
+
     public TriadMetadata getProjectMetadata() {
         return projectMetadata;
     }
@@ -48,6 +55,14 @@ public class ModuleDependency {
         this.parentModules = parentModules;
     }
 
+    public Graph<TriadMetadata, DefaultEdge> getDependencyGraph() {
+        return dependencyGraph;
+    }
+
+    public void setDependencyGraph(Graph<TriadMetadata, DefaultEdge> dependencyGraph) {
+        this.dependencyGraph = dependencyGraph;
+    }
+
     public Set<TriadMetadata> copyExcludeSelfDependencies() {
         Set<TriadMetadata> dependencies = new HashSet<>(this.dependencies);
         dependencies.remove(projectMetadata);
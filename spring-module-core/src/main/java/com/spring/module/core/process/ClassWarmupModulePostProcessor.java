@@ -0,0 +1,227 @@
+package com.spring.module.core.process;
+
+import com.abm.module.api.SpringModule;
+import com.spring.module.core.autoconfigure.ModuleProperties;
+import com.spring.module.core.autoconfigure.ModuleProperties.ClassWarmup;
+import com.spring.module.core.context.AnnotationApplicationModuleContext;
+import com.spring.module.core.loading.JarClassLoader;
+import com.spring.module.core.module.DisposableModule;
+import com.spring.module.core.module.ModulePostProcessor;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.Ordered;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 模块类预热的处理器
+ * <p>
+ * 模块首次安装时记录类加载器定义的类，写入模块目录下的类清单；之后安装时在模块上下文刷新的同时并行预加载类清单中的类，
+ * 在{@link ControllerModulePostProcessor}注册接口之前等待预加载完成，避免部署后的首批请求承担类加载的开销
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-08
+ * @since 1.0
+ */
+public class ClassWarmupModulePostProcessor implements ModulePostProcessor, DisposableModule, DisposableBean, Ordered {
+
+    private static final Log LOG = LogFactory.getLog(ClassWarmupModulePostProcessor.class);
+
+    public static final String CLASS_LIST_NAME = "classlist";
+
+    private final ModuleProperties moduleProperties;
+    private final ThreadPoolExecutor executor;
+    private final Map<ClassLoader, Warmup> warmups = new ConcurrentHashMap<>();
+
+    public ClassWarmupModulePostProcessor(ModuleProperties moduleProperties) {
+        this.moduleProperties = moduleProperties;
+        int threads = Runtime.getRuntime().availableProcessors();
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("module-warmup-");
+        threadFactory.setDaemon(true);
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), threadFactory);
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 模块上下文刷新之前开始预加载
+     */
+    @Override
+    public void postProcessBeforeModule(SpringModule springModule, ApplicationContext applicationContext) {
+        if (moduleProperties.getClassWarmup() == ClassWarmup.NONE
+                || !(springModule.getClassLoader() instanceof JarClassLoader classLoader)) {
+            return;
+        }
+        Path classList = getClassListPath(springModule.getJarFile());
+        if (Files.notExists(classList)) {
+            return;
+        }
+
+        List<String> classNames;
+        try {
+            classNames = Files.readAllLines(classList, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            LOG.warn("读取模块类清单失败：" + classList, e);
+            return;
+        }
+        warmups.put(classLoader, this.preload(classLoader, classNames));
+    }
+
+    /**
+     * 等待预加载完成，顺序在注册接口之前
+     */
+    @Override
+    public void postProcessAfterModule(ApplicationContext applicationContext) {
+        ClassLoader classLoader = applicationContext.getClassLoader();
+        Warmup warmup = classLoader != null ? warmups.remove(classLoader) : null;
+        if (warmup != null) {
+            try {
+                int loaded = warmup.future().get(moduleProperties.getWarmupTimeout().toMillis(), TimeUnit.MILLISECONDS);
+                LOG.info("模块[" + applicationContext.getId() + "]预加载类：" + loaded);
+            } catch (TimeoutException e) {
+                warmup.cancel();
+                LOG.warn("模块[" + applicationContext.getId() + "]预加载类超时，剩余的类不再预加载");
+            } catch (InterruptedException e) {
+                warmup.cancel();
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                LOG.warn("模块[" + applicationContext.getId() + "]预加载类异常", e.getCause());
+            }
+        }
+        this.writeClassList(applicationContext);
+    }
+
+    /**
+     * 刷新失败时取消预加载，不再持有模块类加载器，类清单保持不变
+     */
+    @Override
+    public void postProcessModuleFailure(ApplicationContext applicationContext, Throwable ex) {
+        ClassLoader classLoader = applicationContext.getClassLoader();
+        Warmup warmup = classLoader != null ? warmups.remove(classLoader) : null;
+        if (warmup != null) {
+            warmup.cancel();
+        }
+    }
+
+    /**
+     * 卸载模块时重新写入类清单，包含运行期间处理请求加载的类
+     */
+    @Override
+    public void destroy(ApplicationContext applicationContext) {
+        ClassLoader classLoader = applicationContext.getClassLoader();
+        Warmup warmup = classLoader != null ? warmups.remove(classLoader) : null;
+        if (warmup != null) {
+            warmup.cancel();
+        }
+        this.writeClassList(applicationContext);
+    }
+
+    protected Warmup preload(ClassLoader classLoader, List<String> classNames) {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        int partitions = Math.max(1, Math.min(executor.getMaximumPoolSize(), classNames.size()));
+        int partitionSize = (classNames.size() + partitions - 1) / partitions;
+        List<CompletableFuture<Integer>> futures = new ArrayList<>(partitions);
+        for (int i = 0; i < classNames.size(); i += partitionSize) {
+            List<String> partition = classNames.subList(i, Math.min(i + partitionSize, classNames.size()));
+            futures.add(CompletableFuture.supplyAsync(() -> loadClasses(classLoader, partition, cancelled), executor));
+        }
+        CompletableFuture<Integer> future = CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> futures.stream().mapToInt(CompletableFuture::join).sum());
+        return new Warmup(future, cancelled);
+    }
+
+    private static int loadClasses(ClassLoader classLoader, List<String> classNames, AtomicBoolean cancelled) {
+        int loaded = 0;
+        for (String className : classNames) {
+            if (cancelled.get()) {
+                break;
+            }
+            if (className.isBlank()) {
+                continue;
+            }
+            try {
+                // 只加载不初始化，静态代码块仍按业务代码的顺序执行
+                Class.forName(className, false, classLoader);
+                loaded++;
+            } catch (ClassNotFoundException | LinkageError ignored) {
+                // 类清单可能来自旧版本的模块
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * 记录模式下把类加载器定义的类写入类清单
+     */
+    protected void writeClassList(ApplicationContext applicationContext) {
+        if (!(applicationContext instanceof AnnotationApplicationModuleContext moduleContext)
+                || !(moduleContext.getClassLoader() instanceof JarClassLoader classLoader)
+                || !classLoader.isRecordDefinedClasses() || moduleContext.getSpringModule() == null) {
+            return;
+        }
+
+        Path classList = getClassListPath(moduleContext.getSpringModule().getJarFile());
+        List<String> classNames = new ArrayList<>(classLoader.getDefinedClassNames());
+        classNames.sort(null);
+        try {
+            Path tempFile = Files.createTempFile(classList.getParent(), CLASS_LIST_NAME, null);
+            Files.write(tempFile, classNames, StandardCharsets.UTF_8);
+            Files.move(tempFile, classList, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("写入模块类清单失败：" + classList, e);
+        }
+    }
+
+    /**
+     * 判断模块类加载器是否需要记录定义的类
+     *
+     * @param classWarmup 预热方式
+     * @param jarFile     模块JAR包
+     * @return 需要记录时返回true
+     */
+    public static boolean isRecording(ClassWarmup classWarmup, File jarFile) {
+        return switch (classWarmup) {
+            case NONE -> false;
+            case AUTO -> Files.notExists(getClassListPath(jarFile));
+            case RECORD -> true;
+        };
+    }
+
+    /**
+     * 类清单和模块JAR包在同一目录
+     */
+    public static Path getClassListPath(File jarFile) {
+        return jarFile.toPath().resolveSibling(CLASS_LIST_NAME);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    protected record Warmup(CompletableFuture<Integer> future, AtomicBoolean cancelled) {
+
+        void cancel() {
+            cancelled.set(true);
+        }
+    }
+
+}
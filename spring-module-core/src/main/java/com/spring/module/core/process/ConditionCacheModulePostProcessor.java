@@ -0,0 +1,258 @@
+package com.spring.module.core.process;
+
+import com.abm.module.api.SpringModule;
+import com.abm.module.api.TriadMetadata;
+import com.spring.module.core.autoconfigure.ModuleProperties;
+import com.spring.module.core.autoconfigure.ModuleProperties.ConditionCache;
+import com.spring.module.core.context.AnnotationApplicationModuleContext;
+import com.spring.module.core.loading.SharedLibraryStore;
+import com.spring.module.core.module.ModulePostProcessor;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.boot.SpringBootVersion;
+import org.springframework.boot.autoconfigure.condition.ConditionEvaluationReport;
+import org.springframework.boot.autoconfigure.condition.ConditionEvaluationReport.ConditionAndOutcome;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.Ordered;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.ConcurrentReferenceHashMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * 跨模块上下文的条件评估缓存
+ * <p>
+ * 模块上下文刷新后从条件评估报告中收集自动配置类上不匹配的类存在性条件，按模块的类加载器谱系缓存。
+ * 同一谱系的模块再次安装时，{@link com.spring.module.core.autoconfigure.CachedConditionImportFilter}在自动配置过滤阶段
+ * 直接排除这些自动配置类，不再逐个加载条件中的类，并把缓存的结果记录到条件评估报告中。
+ * <p>
+ * 类存在性只和类加载器谱系有关，与模块的环境属性无关；依赖bean和属性的条件仍在每个模块上下文中评估
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-18
+ * @since 1.0
+ */
+public class ConditionCacheModulePostProcessor implements ModulePostProcessor, Ordered {
+
+    private static final Log LOG = LogFactory.getLog(ConditionCacheModulePostProcessor.class);
+
+    public static final String CONDITION_CACHE_NAME = "conditions";
+
+    /**
+     * 只缓存结果只和类加载器有关的条件
+     */
+    public static final Set<String> CACHEABLE_CONDITIONS = Set.of(
+            "org.springframework.boot.autoconfigure.condition.OnClassCondition"
+    );
+
+    private static final int MAX_LINEAGES = 256;
+    private static final String HOST_FINGERPRINT = SpringBootVersion.getVersion() + "|" + System.getProperty("java.class.path");
+
+    private static final Map<File, JarDigest> JAR_DIGESTS = new ConcurrentReferenceHashMap<>();
+
+    private final ModuleProperties moduleProperties;
+    private final Map<String, Map<String, List<CachedOutcome>>> outcomes = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Map<String, List<CachedOutcome>>> eldest) {
+                    return size() > MAX_LINEAGES;
+                }
+            });
+
+    public ConditionCacheModulePostProcessor(ModuleProperties moduleProperties) {
+        this.moduleProperties = moduleProperties;
+    }
+
+    /**
+     * 持久化模式下读取模块目录中上次安装记录的条件结果
+     */
+    @Override
+    public void postProcessBeforeModule(SpringModule springModule, ApplicationContext applicationContext) {
+        if (moduleProperties.getConditionCache() != ConditionCache.PERSISTENT
+                || !(applicationContext instanceof AnnotationApplicationModuleContext moduleContext)) {
+            return;
+        }
+        String lineage = lineage(moduleContext);
+        if (outcomes.containsKey(lineage)) {
+            return;
+        }
+
+        Path conditionCache = getConditionCachePath(springModule);
+        if (Files.notExists(conditionCache)) {
+            return;
+        }
+        try {
+            List<String> lines = Files.readAllLines(conditionCache, StandardCharsets.UTF_8);
+            // 第一行是类加载器谱系，模块依赖或者主应用变化后缓存失效
+            if (lines.isEmpty() || !lineage.equals(lines.get(0))) {
+                return;
+            }
+            Map<String, List<CachedOutcome>> cached = new HashMap<>();
+            for (String line : lines.subList(1, lines.size())) {
+                String[] columns = line.split("\t", 3);
+                if (columns.length == 3) {
+                    cached.computeIfAbsent(columns[0], key -> new ArrayList<>()).add(new CachedOutcome(columns[1], columns[2]));
+                }
+            }
+            outcomes.put(lineage, cached);
+        } catch (IOException e) {
+            LOG.warn("读取模块条件缓存失败：" + conditionCache, e);
+        }
+    }
+
+    /**
+     * 从条件评估报告中收集可以缓存的条件结果，包含本次从缓存中记录的结果
+     */
+    @Override
+    public void postProcessAfterModule(ApplicationContext applicationContext) {
+        if (moduleProperties.getConditionCache() == ConditionCache.NONE
+                || !(applicationContext instanceof AnnotationApplicationModuleContext moduleContext)
+                || moduleContext.getSpringModule() == null) {
+            return;
+        }
+        ConditionEvaluationReport report = ConditionEvaluationReport.find(moduleContext.getBeanFactory());
+        if (report == null) {
+            return;
+        }
+
+        Map<String, List<CachedOutcome>> collected = new HashMap<>();
+        report.getConditionAndOutcomesBySource().forEach((source, conditionAndOutcomes) -> {
+            // 方法上的条件不在自动配置过滤阶段评估
+            if (source.indexOf('#') >= 0) {
+                return;
+            }
+            for (ConditionAndOutcome conditionAndOutcome : conditionAndOutcomes) {
+                String conditionClass = conditionAndOutcome.getCondition().getClass().getName();
+                if (!conditionAndOutcome.getOutcome().isMatch() && CACHEABLE_CONDITIONS.contains(conditionClass)) {
+                    collected.computeIfAbsent(source, key -> new ArrayList<>())
+                            .add(new CachedOutcome(conditionClass, Objects.toString(conditionAndOutcome.getOutcome().getMessage(), "")));
+                }
+            }
+        });
+
+        String lineage = lineage(moduleContext);
+        Map<String, List<CachedOutcome>> previous = outcomes.put(lineage, collected);
+        if (moduleProperties.getConditionCache() == ConditionCache.PERSISTENT && !collected.equals(previous)) {
+            this.writeConditionCache(moduleContext.getSpringModule(), lineage, collected);
+        }
+    }
+
+    /**
+     * 查找模块上下文类加载器谱系缓存的条件结果
+     *
+     * @param moduleContext 模块上下文
+     * @return 自动配置类和它不匹配的条件，没有缓存时返回空集合
+     */
+    public Map<String, List<CachedOutcome>> getOutcomes(AnnotationApplicationModuleContext moduleContext) {
+        if (moduleProperties.getConditionCache() == ConditionCache.NONE || moduleContext.getSpringModule() == null) {
+            return Map.of();
+        }
+        Map<String, List<CachedOutcome>> cached = outcomes.get(lineage(moduleContext));
+        return cached != null ? cached : Map.of();
+    }
+
+    protected void writeConditionCache(SpringModule springModule, String lineage, Map<String, List<CachedOutcome>> collected) {
+        Path conditionCache = getConditionCachePath(springModule);
+        List<String> lines = new ArrayList<>();
+        lines.add(lineage);
+        new TreeMap<>(collected).forEach((source, cachedOutcomes) -> cachedOutcomes.forEach(cachedOutcome ->
+                lines.add(source + "\t" + cachedOutcome.conditionClass() + "\t"
+                        + cachedOutcome.message().replace('\n', ' ').replace('\r', ' '))));
+        try {
+            Path tempFile = Files.createTempFile(conditionCache.getParent(), CONDITION_CACHE_NAME, null);
+            Files.write(tempFile, lines, StandardCharsets.UTF_8);
+            Files.move(tempFile, conditionCache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("写入模块条件缓存失败：" + conditionCache, e);
+        }
+    }
+
+    /**
+     * 模块上下文的类加载器谱系：主应用的类路径、模块和所有父模块的坐标、JAR包内容摘要和依赖
+     *
+     * @param moduleContext 模块上下文
+     * @return 谱系的摘要
+     */
+    public static String lineage(AnnotationApplicationModuleContext moduleContext) {
+        StringBuilder lineage = new StringBuilder(HOST_FINGERPRINT);
+        appendLineage(lineage, moduleContext);
+        MessageDigest messageDigest = SharedLibraryStore.createMessageDigest();
+        return HexFormat.of().formatHex(messageDigest.digest(lineage.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void appendLineage(StringBuilder lineage, AnnotationApplicationModuleContext moduleContext) {
+        SpringModule springModule = moduleContext.getSpringModule();
+        lineage.append('|').append(springModule.getProjectMetadata());
+        if (springModule.getJarFile() != null) {
+            lineage.append('@').append(jarDigest(springModule.getJarFile()));
+        }
+        Set<TriadMetadata> dependencies = springModule.getDependencies();
+        if (!CollectionUtils.isEmpty(dependencies)) {
+            dependencies.stream().map(TriadMetadata::toString).sorted().forEach(dependency -> lineage.append(',').append(dependency));
+        }
+        for (AnnotationConfigApplicationContext parent : moduleContext.getParents()) {
+            if (parent instanceof AnnotationApplicationModuleContext parentContext && parentContext.getSpringModule() != null) {
+                lineage.append('<');
+                appendLineage(lineage, parentContext);
+            }
+        }
+    }
+
+    /**
+     * 模块JAR包的内容摘要，相同坐标重新打包后内容变化，大小不变时也不会命中旧的缓存
+     * <p>
+     * 摘要按文件大小和修改时间缓存，同一个JAR包多次计算谱系时只读取一次文件
+     */
+    private static String jarDigest(File jarFile) {
+        JarDigest cached = JAR_DIGESTS.get(jarFile);
+        long length = jarFile.length();
+        long lastModified = jarFile.lastModified();
+        if (cached != null && cached.length() == length && cached.lastModified() == lastModified) {
+            return cached.digest();
+        }
+        try {
+            String digest = SharedLibraryStore.digest(jarFile.toPath());
+            JAR_DIGESTS.put(jarFile, new JarDigest(length, lastModified, digest));
+            return digest;
+        } catch (IOException e) {
+            LOG.warn("计算模块JAR包摘要失败，使用文件大小和修改时间：" + jarFile, e);
+            return length + ":" + lastModified;
+        }
+    }
+
+    /**
+     * 条件缓存和模块JAR包在同一目录
+     */
+    public static Path getConditionCachePath(SpringModule springModule) {
+        return springModule.getJarFile().toPath().resolveSibling(CONDITION_CACHE_NAME);
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+
+    /**
+     * 缓存的不匹配结果
+     *
+     * @param conditionClass 条件类名
+     * @param message        条件评估的消息
+     */
+    public record CachedOutcome(String conditionClass, String message) {
+    }
+
+    /**
+     * 计算摘要时模块JAR包的大小和修改时间
+     */
+    private record JarDigest(long length, long lastModified, String digest) {
+    }
+
+}
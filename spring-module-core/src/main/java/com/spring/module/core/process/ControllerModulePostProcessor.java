@@ -4,13 +4,18 @@ import com.abm.module.api.SpringModule;
 import com.spring.module.core.context.AnnotationApplicationModuleContext;
 import com.spring.module.core.context.ControllerHandlerMapping;
 import com.spring.module.core.module.DisposableModule;
+import com.spring.module.core.module.DrainableModule;
+import com.spring.module.core.module.ModuleCanary;
 import com.spring.module.core.module.ModulePostProcessor;
+import com.spring.module.core.module.ModuleUpgradeProcessor;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Controller;
 import org.springframework.util.CollectionUtils;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 模块接口的注册处理器
@@ -19,7 +24,8 @@ import java.util.Objects;
  * @date 2024-01-08
  * @since 1.0
  */
-public class ControllerModulePostProcessor implements DisposableModule, ModulePostProcessor {
+public class ControllerModulePostProcessor
+        implements DisposableModule, DrainableModule, ModulePostProcessor, ModuleUpgradeProcessor {
 
     private final ControllerHandlerMapping controllerHandlerMapping;
 
@@ -43,17 +49,69 @@ public class ControllerModulePostProcessor implements DisposableModule, ModulePo
         }
     }
 
+    /**
+     * 新版本刷新时不注册控制器，等待切换
+     */
+    @Override
+    public void prepareUpgrade(SpringModule springModule) {
+        controllerHandlerMapping.standby(springModule.getClassLoader());
+    }
+
+    @Override
+    public void switchModule(ApplicationContext oldContext, ApplicationContext newContext) {
+        controllerHandlerMapping.switchControllers(oldContext.getClassLoader(), this.moduleControllers(newContext));
+        controllerHandlerMapping.cancelStandby(newContext.getClassLoader());
+    }
+
+    @Override
+    public void startCanary(ApplicationContext oldContext, ApplicationContext newContext, ModuleCanary canary) {
+        controllerHandlerMapping.startCanary(canary, oldContext.getClassLoader(), this.moduleControllers(newContext));
+        controllerHandlerMapping.cancelStandby(newContext.getClassLoader());
+    }
+
+    @Override
+    public void stopCanary(ModuleCanary canary) {
+        controllerHandlerMapping.stopCanary(canary);
+    }
+
+    private List<Object> moduleControllers(ApplicationContext applicationContext) {
+        Map<String, Object> controllerBeans = applicationContext.getBeansWithAnnotation(Controller.class);
+        return controllerBeans.values().stream()
+                .filter(controller -> Objects.equals(applicationContext.getClassLoader(), controller.getClass().getClassLoader()))
+                .toList();
+    }
+
+    @Override
+    public void abortUpgrade(SpringModule springModule) {
+        controllerHandlerMapping.cancelStandby(springModule.getClassLoader());
+    }
+
+    /**
+     * 注销模块的路由，之后到达的请求不会再进入模块
+     */
+    @Override
+    public void suspendModule(ApplicationContext applicationContext) {
+        if (applicationContext instanceof AnnotationApplicationModuleContext) {
+            controllerHandlerMapping.suspendControllers(applicationContext.getClassLoader());
+        }
+    }
+
+    @Override
+    public boolean awaitModule(ApplicationContext applicationContext, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        if (applicationContext instanceof AnnotationApplicationModuleContext) {
+            return controllerHandlerMapping.awaitControllers(applicationContext.getClassLoader(), timeout, unit);
+        }
+        return true;
+    }
+
+    /**
+     * 按类加载器注销，灰度期间新版本新增的控制器和代理的控制器也一起注销
+     */
     @Override
     public void destroy(ApplicationContext applicationContext) {
         if (applicationContext instanceof AnnotationApplicationModuleContext) {
-            Map<String, Object> controllerBeans = applicationContext.getBeansWithAnnotation(Controller.class);
-            if (!CollectionUtils.isEmpty(controllerBeans)) {
-                controllerBeans.values().forEach(controllerBean -> {
-                    Class<?> controllerClass = controllerBean.getClass();
-                    controllerHandlerMapping.unregisterController(controllerClass, controller ->
-                            Objects.equals(applicationContext.getClassLoader(), controller.getClassLoader()));
-                });
-            }
+            controllerHandlerMapping.unregisterControllers(applicationContext.getClassLoader());
         }
     }
 
@@ -1,6 +1,7 @@
 package com.spring.module.core.process;
 
 import com.spring.module.core.context.AnnotationApplicationModuleContext;
+import com.spring.module.core.context.SharedMetadataReaderCache;
 import com.spring.module.core.module.DisposableModule;
 import com.spring.module.tools.utils.Reflections;
 import org.springframework.beans.factory.config.BeanDefinition;
@@ -33,9 +34,11 @@ public class DestructionModulePostProcessor implements DisposableModule, Ordered
     private static final Map<Method, String> beanNameCache;
     private static final Map<Method, Boolean> scopedProxyCache;
     public static final Map<ClassLoader, Map<String, SpringFactoriesLoader>> CLASSLOADER_CACHE;
+    private static final Map<ClassLoader, ?> componentsIndexCache;
 
     static {
         CLASSLOADER_CACHE = Reflections.getField("cache", SpringFactoriesLoader.class);
+        componentsIndexCache = resolveComponentsIndexCache();
         Class<?> beanAnnotationHelperClass = ClassUtils.resolveClassName("org.springframework.context.annotation.BeanAnnotationHelper", null);
         beanNameCache = Reflections.getField("beanNameCache", beanAnnotationHelperClass);
         scopedProxyCache = Reflections.getField("scopedProxyCache", beanAnnotationHelperClass);
@@ -53,6 +56,10 @@ public class DestructionModulePostProcessor implements DisposableModule, Ordered
             this.requiresDestructionBeanAnnotationHelper(applicationModuleContext);
             // 4.解决AbstractClassGenerator的全局缓存
             this.requiresDestructionClassGeneratorCache(applicationModuleContext);
+            // 5.解决CandidateComponentsIndexLoader缓存模块类加载器
+            this.requiresDestructionComponentsIndex(applicationModuleContext);
+            // 6.解决SharedMetadataReaderCache缓存模块类加载器
+            this.requiresDestructionMetadataReaderCache(applicationModuleContext);
         }
     }
 
@@ -123,6 +130,38 @@ public class DestructionModulePostProcessor implements DisposableModule, Ordered
         }
     }
 
+    /**
+     * 获取CandidateComponentsIndexLoader按类加载器缓存组件索引的全局缓存
+     * <p>
+     * 组件索引在Spring中已经标记为待移除，但是模块扫描组件时仍然会读取并缓存模块类加载器的索引。
+     * 按类名反射获取，不在编译期引用待移除的API，Spring移除组件索引后不需要清理
+     *
+     * @return 组件索引的全局缓存，Spring不再提供组件索引时返回null
+     */
+    private static Map<ClassLoader, ?> resolveComponentsIndexCache() {
+        String loaderClassName = "org.springframework.context.index.CandidateComponentsIndexLoader";
+        if (!ClassUtils.isPresent(loaderClassName, null)) {
+            return null;
+        }
+        return Reflections.getField("cache", ClassUtils.resolveClassName(loaderClassName, null));
+    }
+
+    /**
+     * 清理CandidateComponentsIndexLoader全局缓存的模块组件索引
+     */
+    protected void requiresDestructionComponentsIndex(AnnotationApplicationModuleContext applicationModuleContext) {
+        if (componentsIndexCache != null) {
+            componentsIndexCache.remove(applicationModuleContext.getClassLoader());
+        }
+    }
+
+    /**
+     * 清理{@link SharedMetadataReaderCache}中模块类加载器定义的类
+     */
+    protected void requiresDestructionMetadataReaderCache(AnnotationApplicationModuleContext applicationModuleContext) {
+        SharedMetadataReaderCache.getShared().evict(applicationModuleContext.getClassLoader());
+    }
+
     @Override
     public int getOrder() {
         return Ordered.LOWEST_PRECEDENCE;
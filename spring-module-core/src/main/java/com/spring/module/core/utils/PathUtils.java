@@ -1,8 +1,12 @@
 package com.spring.module.core.utils;
 
+import com.spring.module.core.exception.ModuleLoadException;
+
 import java.io.File;
 import java.nio.file.Path;
 
+import static com.spring.module.core.exception.ModuleLoadException.invalidModuleFile;
+
 /**
  * 路径工具类
  *
@@ -14,7 +18,9 @@ public class PathUtils {
 
     public static final String LIB_NAME = "lib";
     public static final String JAR_NAME = ".jar";
+    public static final String ZIP_NAME = ".zip";
     public static final String DEPENDENCY_NAME = "dependencies.dot";
+    public static final String DIGEST_MANIFEST_NAME = "digests.sha256";
 
 
     public static Path subpath(Path path, Path prepath) {
@@ -38,4 +44,41 @@ public class PathUtils {
         return new File(jarFile.getParent(), LIB_NAME);
     }
 
+    /**
+     * 通过模块JAR包获取其在模块包中的条目名称
+     *
+     * @param jarFile 模块JAR包
+     * @return 条目名称，形如：module-a/module-a.jar
+     * @throws ModuleLoadException 模块JAR包不是按 {@code <根目录>/<根目录>.jar} 存放
+     */
+    public static String getArchiveEntryName(File jarFile) {
+        return getArchiveRootName(jarFile) + "/" + jarFile.getName();
+    }
+
+    /**
+     * 通过模块JAR包获取依赖在模块包中的条目名称
+     *
+     * @param jarFile 模块JAR包
+     * @param lib     依赖的文件名
+     * @return 条目名称，形如：module-a/lib/xxx.jar
+     * @throws ModuleLoadException 模块JAR包不是按 {@code <根目录>/<根目录>.jar} 存放，或者依赖不是lib目录下的文件名
+     */
+    public static String getArchiveEntryName(File jarFile, Path lib) {
+        if (lib == null || lib.isAbsolute() || lib.getNameCount() != 1) {
+            invalidModuleFile("模块依赖必须是lib目录下的文件名：" + lib);
+        }
+        return getArchiveRootName(jarFile) + "/" + LIB_NAME + "/" + lib;
+    }
+
+    /**
+     * 模块包的根目录名称，模块JAR包必须和根目录同名
+     */
+    private static String getArchiveRootName(File jarFile) {
+        File rootFile = jarFile != null ? jarFile.getParentFile() : null;
+        if (rootFile == null || !jarFile.getName().equals(rootFile.getName() + JAR_NAME)) {
+            invalidModuleFile("模块JAR包必须按[<根目录>/<根目录>" + JAR_NAME + "]存放在模块包中：" + jarFile);
+        }
+        return rootFile.getName();
+    }
+
 }
@@ -2,16 +2,24 @@ package com.spring.module.core.utils;
 
 import org.springframework.util.FileSystemUtils;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.Set;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
@@ -30,6 +38,26 @@ import java.util.zip.ZipOutputStream;
 public abstract class ZipUtil {
 
     private static final String SLASH = "/";
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final int UNZIP_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 所有解压共用的线程池，空闲线程超时回收，每次解压的并行数由提交的任务数控制
+     */
+    private static final ExecutorService UNZIP_EXECUTOR;
+
+    static {
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(UNZIP_THREADS, UNZIP_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "module-unzip-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        UNZIP_EXECUTOR = executor;
+    }
 
     /**
      * 指定多个文件压缩为zip
@@ -50,42 +78,404 @@ public abstract class ZipUtil {
         }
     }
 
+    /**
+     * 解压输入流，先将输入流顺序写入目标目录下的临时文件，再通过{@link #unzip(Path, Path)}并行解压
+     *
+     * @param is            zip输入流
+     * @param destDirectory 解压的目标目录
+     * @return zip文件中所有条目对应的路径
+     * @throws IOException io异常
+     */
     public static Set<Path> unzip(InputStream is, Path destDirectory) throws IOException {
+        Files.createDirectories(destDirectory);
+        Path tempFile = Files.createTempFile(destDirectory, "unzip", ".zip");
+        try {
+            Files.copy(is, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            return unzip(tempFile, destDirectory);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * @see #unzip(Path, Path, Predicate)
+     */
+    public static Set<Path> unzip(Path zipFile, Path destDirectory) throws IOException {
+        return unzip(zipFile, destDirectory, entry -> true);
+    }
+
+    /**
+     * 按需解压zip文件，只有满足过滤条件的文件才写入磁盘，目录全部创建
+     * <p>
+     * 只读取一次中央目录，文件条目按压缩大小降序由共享的有界线程池并行解压，
+     * 总耗时取决于最大的条目而不是所有条目之和
+     *
+     * @param zipFile       zip文件
+     * @param destDirectory 解压的目标目录
+     * @param filter        需要写入磁盘的条目过滤器
+     * @return zip文件中所有条目对应的路径，包含未解压的文件
+     * @throws IOException io异常
+     */
+    public static Set<Path> unzip(Path zipFile, Path destDirectory, Predicate<ZipEntry> filter) throws IOException {
+        return unzip(zipFile, destDirectory, filter, UNZIP_THREADS);
+    }
+
+    /**
+     * @param parallelism 解压的最大并行数
+     * @see #unzip(Path, Path, Predicate)
+     */
+    public static Set<Path> unzip(Path zipFile, Path destDirectory, Predicate<ZipEntry> filter,
+            int parallelism) throws IOException {
+        return unzip(zipFile, destDirectory, filter, null, parallelism);
+    }
+
+    /**
+     * 按需解压zip文件，写入磁盘的同时计算每个条目的SHA-256摘要并交给校验器，校验失败时删除已经解压的文件
+     *
+     * @param zipFile       zip文件
+     * @param destDirectory 解压的目标目录
+     * @param filter        需要写入磁盘的条目过滤器
+     * @param verifier      条目摘要的校验器，为null时不计算摘要
+     * @return zip文件中所有条目对应的路径，包含未解压的文件
+     * @throws IOException io异常
+     * @see #unzip(Path, Path, Predicate)
+     */
+    public static Set<Path> unzip(Path zipFile, Path destDirectory, Predicate<ZipEntry> filter,
+            EntryVerifier verifier) throws IOException {
+        return unzip(zipFile, destDirectory, filter, verifier, UNZIP_THREADS);
+    }
+
+    /**
+     * @param verifier    条目摘要的校验器，为null时不计算摘要
+     * @param parallelism 解压的最大并行数
+     * @see #unzip(Path, Path, Predicate, EntryVerifier)
+     */
+    public static Set<Path> unzip(Path zipFile, Path destDirectory, Predicate<ZipEntry> filter,
+            EntryVerifier verifier, int parallelism) throws IOException {
         Set<Path> paths = new HashSet<>();
-        try (ZipInputStream zis = new ZipInputStream(is)) {
-            ZipEntry entry = zis.getNextEntry();
-            while (entry != null) {
-                try {
-                    unzip(destDirectory, entry, zis, paths);
-                } catch (Exception e) {
-                    zis.closeEntry();
-                    throw e;
+        Set<Path> directories = new TreeSet<>();
+        List<ZipEntry> fileEntries = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                Path filePath = resolveEntryPath(destDirectory, entry);
+                paths.add(filePath);
+                if (entry.isDirectory()) {
+                    directories.add(filePath);
+                } else if (filter.test(entry)) {
+                    directories.add(filePath.getParent());
+                    fileEntries.add(entry);
+                }
+            }
+
+            // 只检查顶层路径，顶层路径不存在则其下的所有路径都不存在
+            Set<Path> rootPaths = resolveRootPaths(destDirectory, paths);
+            for (Path rootPath : rootPaths) {
+                if (Files.exists(rootPath)) {
+                    throw new FileAlreadyExistsException("路径[" + rootPath + "]已经存在");
+                }
+            }
+
+            try {
+                for (Path directory : directories) {
+                    Files.createDirectories(directory);
                 }
-                entry = zis.getNextEntry();
+                fileEntries.sort(Comparator.comparingLong(ZipEntry::getCompressedSize).reversed());
+                unzip(zip, destDirectory, fileEntries, verifier, parallelism);
+            } catch (Exception e) {
+                deleteRecursively(rootPaths);
+                throw e;
             }
         }
         return paths;
     }
 
-    private static void unzip(Path destDirectory, ZipEntry entry, ZipInputStream zis, Set<Path> paths) throws IOException {
-        Path filePath = destDirectory.resolve(entry.getName());
-        if (Files.exists(filePath)) {
-            for (Path path : paths) {
-                if (Files.exists(path)) {
-                    FileSystemUtils.deleteRecursively(path);
+    /**
+     * 顺序读取整个zip文件解压，读取的同时计算整个文件的SHA-256摘要，读取结束后交给模块包校验器，不需要为了整个文件的摘要单独读取一遍。
+     * 不满足过滤条件的文件条目同样读取，只计算摘要交给条目校验器，不写入磁盘。任一校验失败时删除已经解压的文件
+     *
+     * @param zipFile         zip文件
+     * @param destDirectory   解压的目标目录
+     * @param filter          需要写入磁盘的条目过滤器
+     * @param verifier        条目摘要的校验器，为null时不计算条目的摘要
+     * @param archiveVerifier 整个文件摘要的校验器，为null时按中央目录并行解压
+     * @return zip文件中所有条目对应的路径，包含未解压的文件
+     * @throws IOException io异常
+     * @see #unzip(Path, Path, Predicate, EntryVerifier)
+     */
+    public static Set<Path> unzip(Path zipFile, Path destDirectory, Predicate<ZipEntry> filter,
+            EntryVerifier verifier, ArchiveVerifier archiveVerifier) throws IOException {
+        if (archiveVerifier == null) {
+            return unzip(zipFile, destDirectory, filter, verifier);
+        }
+
+        Set<Path> rootPaths = rootPaths(zipFile, destDirectory);
+        for (Path rootPath : rootPaths) {
+            if (Files.exists(rootPath)) {
+                throw new FileAlreadyExistsException("路径[" + rootPath + "]已经存在");
+            }
+        }
+
+        int rootIndex = destDirectory.getNameCount();
+        Set<Path> paths = new HashSet<>();
+        MessageDigest archiveDigest = createMessageDigest();
+        try {
+            try (InputStream is = new DigestInputStream(
+                    new BufferedInputStream(Files.newInputStream(zipFile), BUFFER_SIZE), archiveDigest)) {
+                ZipInputStream zis = new ZipInputStream(is);
+                ZipEntry entry;
+                while ((entry = zis.getNextEntry()) != null) {
+                    Path filePath = resolveEntryPath(destDirectory, entry);
+                    // 本地文件头和中央目录不一致时，不能写入没有检查过的顶层路径
+                    if (filePath.getNameCount() > rootIndex
+                            && !rootPaths.contains(destDirectory.resolve(filePath.getName(rootIndex)))) {
+                        throw new ZipException("条目[" + entry.getName() + "]不在中央目录中");
+                    }
+                    paths.add(filePath);
+                    if (entry.isDirectory()) {
+                        Files.createDirectories(filePath);
+                    } else if (filter.test(entry)) {
+                        Files.createDirectories(filePath.getParent());
+                        unzip(zis, entry, filePath, verifier);
+                    } else if (verifier != null) {
+                        verifier.verify(entry, digest(zis));
+                    }
                 }
+                // 中央目录在所有条目之后，同样计入摘要
+                is.transferTo(OutputStream.nullOutputStream());
             }
-            throw new FileAlreadyExistsException("路径[" + filePath + "]已经存在");
+            archiveVerifier.verify(archiveDigest.digest());
+        } catch (Exception e) {
+            deleteRecursively(rootPaths);
+            throw e;
         }
+        return paths;
+    }
 
-        paths.add(filePath);
-        if (entry.isDirectory()) {
-            Files.createDirectories(filePath);
-        } else {
-            try (OutputStream os = Files.newOutputStream(filePath, StandardOpenOption.CREATE_NEW)) {
-                zis.transferTo(os);
+    private static void unzip(ZipInputStream zis, ZipEntry entry, Path filePath, EntryVerifier verifier) throws IOException {
+        MessageDigest digest = verifier != null ? createMessageDigest() : null;
+        Files.copy(digest != null ? new DigestInputStream(zis, digest) : zis, filePath);
+        if (verifier != null) {
+            verifier.verify(entry, digest.digest());
+        }
+    }
+
+    private static byte[] digest(ZipInputStream zis) throws IOException {
+        MessageDigest digest = createMessageDigest();
+        new DigestInputStream(zis, digest).transferTo(OutputStream.nullOutputStream());
+        return digest.digest();
+    }
+
+    private static void unzip(ZipFile zip, Path destDirectory, List<ZipEntry> fileEntries,
+            EntryVerifier verifier, int parallelism) throws IOException {
+        if (fileEntries.isEmpty()) {
+            return;
+        }
+
+        int threads = Math.max(1, Math.min(parallelism, fileEntries.size()));
+        if (threads == 1) {
+            for (ZipEntry entry : fileEntries) {
+                unzip(zip, entry, resolveEntryPath(destDirectory, entry), verifier);
             }
+            return;
         }
+
+        // 条目按顺序领取，调用线程也参与解压，共享线程池中只提交threads - 1个任务
+        AtomicInteger nextEntry = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Runnable worker = () -> {
+            int index;
+            while (failure.get() == null && (index = nextEntry.getAndIncrement()) < fileEntries.size()) {
+                ZipEntry entry = fileEntries.get(index);
+                try {
+                    unzip(zip, entry, resolveEntryPath(destDirectory, entry), verifier);
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        };
+        CountDownLatch workers = new CountDownLatch(threads - 1);
+        for (int i = 1; i < threads; i++) {
+            UNZIP_EXECUTOR.execute(() -> {
+                try {
+                    worker.run();
+                } finally {
+                    workers.countDown();
+                }
+            });
+        }
+        worker.run();
+        awaitWorkers(workers, failure);
+
+        Throwable e = failure.get();
+        if (e instanceof IOException ex) {
+            throw ex;
+        }
+        if (e instanceof RuntimeException ex) {
+            throw ex;
+        }
+        if (e instanceof Error ex) {
+            throw ex;
+        }
+    }
+
+    /**
+     * 等待本次解压的所有任务结束，中断时不再领取新的条目，但是仍然等待正在解压的条目完成，避免删除文件时还有线程在写入
+     */
+    private static void awaitWorkers(CountDownLatch workers, AtomicReference<Throwable> failure) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                workers.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+                failure.compareAndSet(null, new InterruptedIOException("解压被中断"));
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 解压单个文件条目，已知大小的文件预先分配空间，通过{@link FileChannel}写入
+     */
+    private static void unzip(ZipFile zip, ZipEntry entry, Path filePath, EntryVerifier verifier) throws IOException {
+        long size = entry.getSize();
+        MessageDigest digest = verifier != null ? createMessageDigest() : null;
+        try (InputStream is = digest != null ? new DigestInputStream(zip.getInputStream(entry), digest)
+                : zip.getInputStream(entry);
+             FileChannel channel = FileChannel.open(filePath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            if (size > 0) {
+                // 预分配文件大小
+                channel.write(ByteBuffer.allocate(1), size - 1);
+                long position = 0;
+                ReadableByteChannel source = Channels.newChannel(is);
+                while (position < size) {
+                    long transferred = channel.transferFrom(source, position, size - position);
+                    if (transferred <= 0) {
+                        throw new EOFException("条目[" + entry.getName() + "]的数据不完整");
+                    }
+                    position += transferred;
+                }
+            } else {
+                is.transferTo(Channels.newOutputStream(channel));
+            }
+        }
+        if (verifier != null) {
+            verifier.verify(entry, digest.digest());
+        }
+    }
+
+    /**
+     * 计算zip文件中单个条目的SHA-256摘要，用于校验不解压的条目
+     *
+     * @param zip   zip文件
+     * @param entry 条目
+     * @return 条目内容的摘要
+     * @throws IOException io异常
+     */
+    public static byte[] digest(ZipFile zip, ZipEntry entry) throws IOException {
+        MessageDigest digest = createMessageDigest();
+        try (InputStream is = new DigestInputStream(zip.getInputStream(entry), digest)) {
+            is.transferTo(OutputStream.nullOutputStream());
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest createMessageDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 读取zip文件的中央目录，获取解压后的顶层路径，不写入任何文件
+     *
+     * @param zipFile       zip文件
+     * @param destDirectory 解压的目标目录
+     * @return 解压后的顶层路径
+     * @throws IOException io异常，条目超出目标目录时抛出{@link ZipException}
+     */
+    public static Set<Path> rootPaths(Path zipFile, Path destDirectory) throws IOException {
+        Set<Path> paths = new HashSet<>();
+        try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                paths.add(resolveEntryPath(destDirectory, entries.nextElement()));
+            }
+        }
+        return resolveRootPaths(destDirectory, paths);
+    }
+
+    /**
+     * 条目在目标目录下的路径，拒绝绝对路径和通过{@code ../}超出目标目录的条目
+     */
+    private static Path resolveEntryPath(Path destDirectory, ZipEntry entry) throws ZipException {
+        Path entryPath;
+        try {
+            entryPath = destDirectory.getFileSystem().getPath(entry.getName()).normalize();
+        } catch (InvalidPathException e) {
+            throw new ZipException("条目[" + entry.getName() + "]不是合法的路径");
+        }
+        if (entryPath.isAbsolute() || entryPath.getRoot() != null || entryPath.startsWith("..")) {
+            throw new ZipException("条目[" + entry.getName() + "]超出解压的目标目录");
+        }
+        return destDirectory.resolve(entryPath);
+    }
+
+    private static Set<Path> resolveRootPaths(Path destDirectory, Set<Path> paths) {
+        int rootIndex = destDirectory.getNameCount();
+        Set<Path> rootPaths = new HashSet<>();
+        for (Path path : paths) {
+            if (path.getNameCount() > rootIndex) {
+                rootPaths.add(destDirectory.resolve(path.getName(rootIndex)));
+            }
+        }
+        return rootPaths;
+    }
+
+    private static void deleteRecursively(Set<Path> paths) throws IOException {
+        for (Path path : paths) {
+            if (Files.exists(path)) {
+                FileSystemUtils.deleteRecursively(path);
+            }
+        }
+    }
+
+    /**
+     * 解压条目的摘要校验器
+     */
+    @FunctionalInterface
+    public interface EntryVerifier {
+
+        /**
+         * 条目写入磁盘之后回调，抛出异常时中止解压
+         *
+         * @param entry  条目
+         * @param digest 条目内容的SHA-256摘要
+         * @throws IOException 校验失败
+         */
+        void verify(ZipEntry entry, byte[] digest) throws IOException;
+    }
+
+    /**
+     * 整个zip文件的摘要校验器
+     */
+    @FunctionalInterface
+    public interface ArchiveVerifier {
+
+        /**
+         * 读取完整个文件之后回调，抛出异常时删除已经解压的文件
+         *
+         * @param digest 整个文件的SHA-256摘要
+         * @throws IOException 校验失败
+         */
+        void verify(byte[] digest) throws IOException;
     }
 
     /**
@@ -0,0 +1,115 @@
+package com.spring.module.core.benchmark;
+
+import com.spring.module.core.loading.SpringClassLoader;
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.description.annotation.AnnotationDescription;
+import net.bytebuddy.dynamic.DynamicType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * 模块组件扫描的基准测试：读取{@code META-INF/spring.components}组件索引和逐个读取类文件扫描
+ * <p>
+ * 两个模块包包含相同的类，其中只有少量组件，区别只在是否包含组件索引。每次扫描都使用新的类加载器，
+ * 和安装模块时一样包含读取索引的耗时
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-18
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ComponentIndexBenchmark {
+
+    private static final String BASE_PACKAGE = "com.example.module";
+    private static final int COMPONENTS = 50;
+
+    @Param({"1000", "5000"})
+    private int classes;
+
+    private Path workDir;
+    private URL indexedJar;
+    private URL scannedJar;
+
+    @Setup(Level.Trial)
+    public void createModuleJars() throws IOException {
+        workDir = Files.createTempDirectory("component-index-benchmark");
+        Path indexed = workDir.resolve("indexed.jar");
+        Path scanned = workDir.resolve("scanned.jar");
+        StringBuilder index = new StringBuilder();
+        try (OutputStream indexedOs = Files.newOutputStream(indexed); JarOutputStream indexedJos = new JarOutputStream(indexedOs);
+             OutputStream scannedOs = Files.newOutputStream(scanned); JarOutputStream scannedJos = new JarOutputStream(scannedOs)) {
+            for (int i = 0; i < classes; i++) {
+                String className = BASE_PACKAGE + ".pkg" + (i % 20) + ".Class" + i;
+                DynamicType.Builder<Object> builder = new ByteBuddy().subclass(Object.class).name(className);
+                if (i % (classes / COMPONENTS) == 0) {
+                    builder = builder.annotateType(AnnotationDescription.Builder.ofType(Component.class).build());
+                    index.append(className).append('=').append(Component.class.getName()).append('\n');
+                }
+                byte[] bytes = builder.make().getBytes();
+                String entryName = className.replace('.', '/') + ".class";
+                writeEntry(indexedJos, entryName, bytes);
+                writeEntry(scannedJos, entryName, bytes);
+            }
+            writeEntry(indexedJos, SpringClassLoader.COMPONENTS_INDEX_FILE,
+                    index.toString().getBytes(StandardCharsets.ISO_8859_1));
+        }
+        indexedJar = indexed.toUri().toURL();
+        scannedJar = scanned.toUri().toURL();
+    }
+
+    private static void writeEntry(JarOutputStream jos, String name, byte[] bytes) throws IOException {
+        jos.putNextEntry(new JarEntry(name));
+        jos.write(bytes);
+        jos.closeEntry();
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        FileSystemUtils.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public int indexed() throws IOException {
+        return this.findCandidateComponents(indexedJar);
+    }
+
+    @Benchmark
+    public int scanned() throws IOException {
+        return this.findCandidateComponents(scannedJar);
+    }
+
+    private int findCandidateComponents(URL jar) throws IOException {
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{jar}, getClass().getClassLoader())) {
+            ClassPathScanningCandidateComponentProvider provider = new ClassPathScanningCandidateComponentProvider(true);
+            provider.setResourceLoader(new DefaultResourceLoader(classLoader));
+            return provider.findCandidateComponents(BASE_PACKAGE).size();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ComponentIndexBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.spring.module.core.benchmark;
+
+import com.spring.module.core.context.ControllerHandlerMapping;
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.description.annotation.AnnotationDescription;
+import net.bytebuddy.description.modifier.Visibility;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import net.bytebuddy.implementation.FixedValue;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.support.StaticWebApplicationContext;
+import org.springframework.web.servlet.HandlerExecutionChain;
+import org.springframework.web.util.ServletRequestPathUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模块路由查找的基准测试：每个模块由独立的类加载器定义一个控制器，路由使用模块自己的前缀
+ * <p>
+ * 分别测试命中最后一个模块的路由和命中应用自身的路由，以及再加一个根路径通配路由的模块时两者的耗时，
+ * 通配模块的路由表是每次查找的候选，查找模块路由时还要和应用自身的路由表一起比较
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-18
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ControllerHandlerMappingBenchmark {
+
+    @Param({"10", "100"})
+    private int modules;
+
+    @Param({"false", "true"})
+    private boolean wildcardModule;
+
+    private ControllerHandlerMapping handlerMapping;
+    private String modulePath;
+
+    @Setup(Level.Trial)
+    public void registerModules() throws Exception {
+        StaticWebApplicationContext context = new StaticWebApplicationContext();
+        context.setServletContext(new MockServletContext());
+        context.registerSingleton("hostController", HostController.class);
+        context.refresh();
+        handlerMapping = new ControllerHandlerMapping();
+        handlerMapping.setApplicationContext(context);
+        handlerMapping.afterPropertiesSet();
+
+        for (int i = 0; i < modules; i++) {
+            handlerMapping.registerController(this.createController(i, "/module" + i + "/items/{id}"), controller -> true);
+        }
+        if (wildcardModule) {
+            handlerMapping.registerController(this.createController(modules, "/{name}/{id}"), controller -> true);
+        }
+        modulePath = "/module" + (modules - 1) + "/items/42";
+    }
+
+    /**
+     * 生成只有一个路由的控制器，由新的类加载器定义
+     */
+    private Object createController(int index, String pattern) throws Exception {
+        return new ByteBuddy()
+                .subclass(Object.class)
+                .name("com.example.module" + index + ".ItemController")
+                .annotateType(AnnotationDescription.Builder.ofType(RestController.class).build())
+                .defineMethod("item", String.class, Visibility.PUBLIC)
+                .intercept(FixedValue.value("item"))
+                .annotateMethod(AnnotationDescription.Builder.ofType(GetMapping.class)
+                        .defineArray("value", pattern).build())
+                .make()
+                .load(getClass().getClassLoader(), ClassLoadingStrategy.Default.WRAPPER)
+                .getLoaded()
+                .getDeclaredConstructor()
+                .newInstance();
+    }
+
+    @Benchmark
+    public Object moduleRoute() throws Exception {
+        return this.lookup(modulePath);
+    }
+
+    @Benchmark
+    public Object hostRoute() throws Exception {
+        return this.lookup("/host/items/42");
+    }
+
+    private Object lookup(String path) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        ServletRequestPathUtils.parseAndCache(request);
+        HandlerExecutionChain chain = handlerMapping.getHandler(request);
+        return chain == null ? null : chain.getHandler();
+    }
+
+    @RestController
+    public static class HostController {
+
+        @GetMapping("/host/items/{id}")
+        public String item() {
+            return "host";
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ControllerHandlerMappingBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
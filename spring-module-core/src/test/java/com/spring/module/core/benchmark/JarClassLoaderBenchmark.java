@@ -0,0 +1,105 @@
+package com.spring.module.core.benchmark;
+
+import com.spring.module.core.loading.JarClassLoader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * 模块类路径资源查找的基准测试：按包名和资源名建立索引的{@link JarClassLoader}和逐个JAR包查找的{@link URLClassLoader}
+ * <p>
+ * 类路径由多个JAR包组成，每个JAR包使用独立的包名，分别测试命中最后一个JAR包和全部未命中的查找，
+ * 未命中对应模块之间委派查找父模块时的情况
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-18
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JarClassLoaderBenchmark {
+
+    private static final int ENTRIES_PER_JAR = 200;
+
+    @Param({"10", "100"})
+    private int jars;
+
+    private Path workDir;
+    private JarClassLoader indexedClassLoader;
+    private URLClassLoader urlClassLoader;
+    private String lastJarResource;
+    private String missingResource;
+
+    @Setup(Level.Trial)
+    public void createClassPath() throws IOException {
+        workDir = Files.createTempDirectory("classloader-benchmark");
+        URL[] urls = new URL[jars];
+        indexedClassLoader = new JarClassLoader(null);
+        for (int i = 0; i < jars; i++) {
+            File jarFile = workDir.resolve("lib-" + i + ".jar").toFile();
+            try (OutputStream os = Files.newOutputStream(jarFile.toPath()); JarOutputStream jos = new JarOutputStream(os)) {
+                for (int j = 0; j < ENTRIES_PER_JAR; j++) {
+                    jos.putNextEntry(new JarEntry("com/example/lib" + i + "/Class" + j + ".class"));
+                    jos.write(new byte[]{(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE});
+                    jos.closeEntry();
+                }
+            }
+            urls[i] = jarFile.toURI().toURL();
+            indexedClassLoader.addJar(jarFile);
+        }
+        urlClassLoader = new URLClassLoader(urls, null);
+        lastJarResource = "com/example/lib" + (jars - 1) + "/Class" + (ENTRIES_PER_JAR - 1) + ".class";
+        missingResource = "com/example/missing/Missing.class";
+        // 预先打开所有JAR包，只测试查找
+        urlClassLoader.findResource(missingResource);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        indexedClassLoader.close();
+        urlClassLoader.close();
+        FileSystemUtils.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public URL indexedHit() {
+        return indexedClassLoader.findResource(lastJarResource);
+    }
+
+    @Benchmark
+    public URL indexedMiss() {
+        return indexedClassLoader.findResource(missingResource);
+    }
+
+    @Benchmark
+    public URL scanHit() {
+        return urlClassLoader.findResource(lastJarResource);
+    }
+
+    @Benchmark
+    public URL scanMiss() {
+        return urlClassLoader.findResource(missingResource);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(JarClassLoaderBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
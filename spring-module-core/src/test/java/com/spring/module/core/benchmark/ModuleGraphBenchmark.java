@@ -0,0 +1,128 @@
+package com.spring.module.core.benchmark;
+
+import com.spring.module.core.module.ModuleClosureIndex;
+import com.spring.module.core.module.ModuleGraph;
+import org.jgrapht.Graph;
+import org.jgrapht.graph.DefaultEdge;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模块依赖图和祖先索引的基准测试：合并父模块、依赖关系查询、安装卸载的增量维护和图快照
+ * <p>
+ * 依赖图随机生成，每个模块依赖之前生成的0到3个模块。{@link #mergeModulesBaseline()}是改为位图索引之前的实现，
+ * 按每个模块的祖先集合两两比较，作为对比的基准
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-18
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ModuleGraphBenchmark {
+
+    private static final String LEAF_MODULE = "leaf";
+
+    @Param({"1000"})
+    private int modules;
+
+    @Param({"10", "100"})
+    private int mergedModules;
+
+    private ModuleGraph moduleGraph;
+    private ModuleClosureIndex closureIndex;
+    private Map<String, Set<String>> ancestors;
+    private List<String> candidates;
+    private List<String> leafParents;
+    private String[] queryPairs;
+    private int nextQuery;
+
+    @Setup(Level.Trial)
+    public void createModules() {
+        Random random = new Random(42);
+        moduleGraph = new ModuleGraph();
+        closureIndex = new ModuleClosureIndex();
+        ancestors = new HashMap<>();
+        List<String> moduleNames = new ArrayList<>(modules);
+        for (int i = 0; i < modules; i++) {
+            String moduleName = "module-" + i;
+            Set<String> parentModules = new LinkedHashSet<>();
+            int parents = i == 0 ? 0 : random.nextInt(4);
+            for (int j = 0; j < parents; j++) {
+                parentModules.add(moduleNames.get(random.nextInt(i)));
+            }
+            moduleGraph.addModule(moduleName, parentModules);
+            closureIndex.addModule(moduleName, parentModules);
+            moduleNames.add(moduleName);
+        }
+        for (String moduleName : moduleNames) {
+            ancestors.put(moduleName, closureIndex.getAncestors(moduleName));
+        }
+
+        Collections.shuffle(moduleNames, random);
+        candidates = List.copyOf(moduleNames.subList(0, mergedModules));
+        leafParents = List.copyOf(moduleNames.subList(0, 3));
+        queryPairs = new String[1024];
+        for (int i = 0; i < queryPairs.length; i++) {
+            queryPairs[i] = moduleNames.get(random.nextInt(modules));
+        }
+    }
+
+    @Benchmark
+    public List<String> mergeModules() {
+        return closureIndex.mergeModules(candidates);
+    }
+
+    @Benchmark
+    public List<String> mergeModulesBaseline() {
+        List<String> merged = new ArrayList<>(candidates);
+        Set<String> deleteModules = new HashSet<>();
+        for (String module : merged) {
+            Set<String> dependencies = ancestors.get(module);
+            merged.stream().filter(dependencies::contains).forEach(deleteModules::add);
+        }
+        merged.removeAll(deleteModules);
+        return merged;
+    }
+
+    @Benchmark
+    public boolean isAncestor() {
+        int index = nextQuery;
+        nextQuery = (index + 2) & (queryPairs.length - 1);
+        return closureIndex.isAncestor(queryPairs[index], queryPairs[index + 1]);
+    }
+
+    /**
+     * 安装和卸载一个依赖3个模块的叶子模块，只更新涉及的边和祖先集合
+     */
+    @Benchmark
+    public boolean installAndUninstall() {
+        moduleGraph.addModule(LEAF_MODULE, leafParents);
+        closureIndex.addModule(LEAF_MODULE, leafParents);
+        return closureIndex.removeModule(LEAF_MODULE) & moduleGraph.removeModule(LEAF_MODULE);
+    }
+
+    /**
+     * 图变化后第一次读取快照，包含一次完整复制
+     */
+    @Benchmark
+    public Graph<String, DefaultEdge> snapshotAfterChange() {
+        moduleGraph.addModule(LEAF_MODULE, leafParents);
+        moduleGraph.removeModule(LEAF_MODULE);
+        return moduleGraph.getSnapshot();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ModuleGraphBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,131 @@
+package com.spring.module.core.benchmark;
+
+import com.spring.module.core.utils.ZipUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 模块包解压的基准测试：串行解压和按中央目录并行解压
+ * <p>
+ * {@link #sequentialBaseline()}是改为并行解压之前的实现，通过{@link ZipInputStream}顺序读取并逐个写入条目，作为对比的基准，
+ * 不受{@code parallelism}参数影响
+ * <p>
+ * 模块包按标准结构生成：根目录下的模块JAR包、lib目录下大小不一的依赖和若干配置文件，依赖内容随机不可压缩
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-18
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ZipUtilBenchmark {
+
+    @Param({"1", "4", "8"})
+    private int parallelism;
+
+    @Param({"64"})
+    private int libs;
+
+    private Path workDir;
+    private Path zipFile;
+    private Path destDir;
+
+    @Setup(Level.Trial)
+    public void createModulePackage() throws IOException {
+        workDir = Files.createTempDirectory("unzip-benchmark");
+        zipFile = workDir.resolve("module-a.zip");
+        Random random = new Random(42);
+        try (OutputStream os = Files.newOutputStream(zipFile); ZipOutputStream zos = new ZipOutputStream(os)) {
+            writeEntry(zos, "module-a/module-a.jar", randomBytes(random, 512 * 1024));
+            writeEntry(zos, "module-a/dependencies.dot", "digraph {}".getBytes());
+            writeEntry(zos, "module-a/application.yml", "spring:\n  application:\n    name: module-a\n".getBytes());
+            zos.putNextEntry(new ZipEntry("module-a/lib/"));
+            zos.closeEntry();
+            for (int i = 0; i < libs; i++) {
+                // 少数大依赖和大量小依赖，接近真实模块包的分布
+                int size = i % 16 == 0 ? 4 * 1024 * 1024 : 64 * 1024 + random.nextInt(256 * 1024);
+                writeEntry(zos, "module-a/lib/lib-" + i + ".jar", randomBytes(random, size));
+            }
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void createDestDir() throws IOException {
+        destDir = Files.createTempDirectory(workDir, "dest");
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteDestDir() throws IOException {
+        FileSystemUtils.deleteRecursively(destDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteWorkDir() throws IOException {
+        FileSystemUtils.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public Set<Path> unzip() throws IOException {
+        return ZipUtil.unzip(zipFile, destDir, entry -> true, parallelism);
+    }
+
+    @Benchmark
+    public Set<Path> sequentialBaseline() throws IOException {
+        Set<Path> paths = new HashSet<>();
+        try (InputStream is = Files.newInputStream(zipFile); ZipInputStream zis = new ZipInputStream(is)) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                Path filePath = destDir.resolve(entry.getName());
+                paths.add(filePath);
+                if (entry.isDirectory()) {
+                    Files.createDirectories(filePath);
+                } else {
+                    // 生成的模块包没有根目录条目，这里补建父目录
+                    Files.createDirectories(filePath.getParent());
+                    try (OutputStream os = Files.newOutputStream(filePath, StandardOpenOption.CREATE_NEW)) {
+                        zis.transferTo(os);
+                    }
+                }
+            }
+        }
+        return paths;
+    }
+
+    private static void writeEntry(ZipOutputStream zos, String name, byte[] content) throws IOException {
+        zos.putNextEntry(new ZipEntry(name));
+        zos.write(content);
+        zos.closeEntry();
+    }
+
+    private static byte[] randomBytes(Random random, int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ZipUtilBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.spring.module.core.context;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.test.generate.TestGenerationContext;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.aot.ApplicationContextAotGenerator;
+import org.springframework.core.test.tools.TestCompiler;
+import org.springframework.javapoet.ClassName;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 使用构建时AOT生成的初始化器刷新的上下文与运行时解析配置类刷新的上下文注册相同的bean
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-18
+ * @since 1.0
+ */
+public class AotModuleContextInitializerTest {
+
+    @Test
+    public void aotRefreshRegistersSameBeans() {
+        Set<String> expected;
+        try (AnnotationConfigApplicationContext runtimeContext = new AnnotationConfigApplicationContext(ModuleConfiguration.class)) {
+            expected = applicationBeanNames(runtimeContext);
+        }
+
+        AnnotationConfigApplicationContext sourceContext = new AnnotationConfigApplicationContext();
+        sourceContext.register(ModuleConfiguration.class);
+        TestGenerationContext generationContext = new TestGenerationContext();
+        ClassName initializerClassName = new ApplicationContextAotGenerator().processAheadOfTime(sourceContext, generationContext);
+        generationContext.writeGeneratedContent();
+
+        TestCompiler.forSystem().with(generationContext).compile(compiled -> {
+            // 和模块上下文一样，创建时已经注册了注解处理器
+            try (AnnotationConfigApplicationContext aotContext = new AnnotationConfigApplicationContext()) {
+                aotContext.setClassLoader(compiled.getClassLoader());
+                new SpringModuleApplicationBuilder.AotModuleContextInitializer(initializerClassName.canonicalName())
+                        .initialize(aotContext);
+                aotContext.refresh();
+
+                assertThat(applicationBeanNames(aotContext)).isEqualTo(expected)
+                        .contains("greeting", "greetingService", GreetingService.class.getName());
+                assertThat(aotContext.getBean("greetingService", GreetingService.class).greet()).isEqualTo("hello");
+            }
+        });
+    }
+
+    /**
+     * 应用自身的bean，不包括Spring的基础设施
+     */
+    private static Set<String> applicationBeanNames(ApplicationContext applicationContext) {
+        return Arrays.stream(applicationContext.getBeanDefinitionNames())
+                .filter(beanName -> !beanName.startsWith("org.springframework."))
+                .collect(Collectors.toSet());
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @Import(GreetingService.class)
+    public static class ModuleConfiguration {
+
+        @Bean
+        public String greeting() {
+            return "hello";
+        }
+
+        @Bean
+        public GreetingService greetingService(String greeting) {
+            return new GreetingService(greeting);
+        }
+    }
+
+    public static class GreetingService {
+
+        private final String greeting;
+
+        public GreetingService(String greeting) {
+            this.greeting = greeting;
+        }
+
+        public String greet() {
+            return greeting;
+        }
+    }
+
+}
@@ -0,0 +1,286 @@
+package com.spring.module.core.context;
+
+import com.spring.module.core.context.controller.*;
+import com.spring.module.core.module.ModuleCanary;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.lang.Nullable;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.support.StaticWebApplicationContext;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerExecutionChain;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.ServletRequestPathUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * {@link ControllerHandlerMapping}的测试，每个模块版本的控制器由独立的类加载器定义
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-18
+ * @since 1.0
+ */
+public class ControllerHandlerMappingTest {
+
+    private ControllerHandlerMapping handlerMapping;
+
+    @BeforeEach
+    public void setUp() {
+        StaticWebApplicationContext context = new StaticWebApplicationContext();
+        context.setServletContext(new MockServletContext());
+        context.registerSingleton("hostController", HostController.class);
+        context.refresh();
+        this.handlerMapping = new ControllerHandlerMapping();
+        this.handlerMapping.setApplicationContext(context);
+        this.handlerMapping.afterPropertiesSet();
+    }
+
+    @Test
+    public void switchControllersReplacesRoutes() throws Exception {
+        Object v1 = this.registerController(V1Controller.class);
+        Object v2 = this.loadController(V2Controller.class);
+
+        handlerMapping.switchControllers(v1.getClass().getClassLoader(), List.of(v2));
+        assertThat(this.lookup("/hello").getBeanType()).isSameAs(v2.getClass());
+        assertThat(this.lookup("/v2").getBeanType()).isSameAs(v2.getClass());
+        assertThat(this.lookup("/host").getBeanType()).isSameAs(HostController.class);
+    }
+
+    @Test
+    public void failedSwitchRestoresOldRoutes() throws Exception {
+        Object v1 = this.registerController(V1Controller.class);
+        Object conflict = this.loadController(ConflictController.class);
+
+        assertThatThrownBy(() -> handlerMapping.switchControllers(v1.getClass().getClassLoader(), List.of(conflict)))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(this.lookup("/hello").getBeanType()).isSameAs(v1.getClass());
+        assertThat(this.lookup("/host").getBeanType()).isSameAs(HostController.class);
+    }
+
+    @Test
+    public void canaryRoutesSharedPathsByWeight() throws Exception {
+        Object v1 = this.registerController(V1Controller.class);
+        Object v2 = this.loadController(V2Controller.class);
+        ModuleCanary canary = new ModuleCanary("v1", "v2", 100, null, null);
+
+        handlerMapping.startCanary(canary, v1.getClass().getClassLoader(), List.of(v2));
+        assertThat(this.lookup("/hello").getBeanType()).isSameAs(v2.getClass());
+        assertThat(this.lookup("/v2").getBeanType()).isSameAs(v2.getClass());
+        canary.setWeight(0);
+        assertThat(this.lookup("/hello").getBeanType()).isSameAs(v1.getClass());
+
+        canary.setWeight(100);
+        handlerMapping.stopCanary(canary);
+        assertThat(this.lookup("/hello").getBeanType()).isSameAs(v1.getClass());
+    }
+
+    @Test
+    public void unregisteringCanaryKeepsBaseRoutes() throws Exception {
+        Object v1 = this.registerController(V1Controller.class);
+        Object v2 = this.loadController(V2Controller.class);
+        ModuleCanary canary = new ModuleCanary("v1", "v2", 100, null, null);
+
+        handlerMapping.startCanary(canary, v1.getClass().getClassLoader(), List.of(v2));
+        handlerMapping.stopCanary(canary);
+        handlerMapping.unregisterControllers(v2.getClass().getClassLoader());
+        assertThat(this.lookup("/hello").getBeanType()).isSameAs(v1.getClass());
+        assertThat(this.lookup("/v2")).isNull();
+    }
+
+    @Test
+    public void failedCanaryRegistersNothing() throws Exception {
+        Object v1 = this.registerController(V1Controller.class);
+        Object conflict = this.loadController(ConflictController.class);
+        ModuleCanary canary = new ModuleCanary("v1", "conflict", 100, null, null);
+
+        assertThatThrownBy(() -> handlerMapping.startCanary(canary, v1.getClass().getClassLoader(), List.of(conflict)))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(this.lookup("/hello").getBeanType()).isSameAs(v1.getClass());
+        assertThat(this.lookup("/host").getBeanType()).isSameAs(HostController.class);
+    }
+
+    @Test
+    public void suspendWaitsForInflightRequests() throws Exception {
+        Object v1 = this.registerController(V1Controller.class);
+        ClassLoader classLoader = v1.getClass().getClassLoader();
+        MockHttpServletRequest request = this.request("/hello");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        HandlerExecutionChain chain = handlerMapping.getHandler(request);
+        assertThat(this.preHandle(chain, request, response)).isTrue();
+
+        handlerMapping.suspendControllers(classLoader);
+        assertThat(this.lookup("/hello")).isNull();
+        assertThat(handlerMapping.awaitControllers(classLoader, 50, TimeUnit.MILLISECONDS)).isFalse();
+
+        this.afterCompletion(chain, request, response);
+        assertThat(handlerMapping.awaitControllers(classLoader, 5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void suspendRejectsResolvedButNotStartedRequests() throws Exception {
+        Object v1 = this.registerController(V1Controller.class);
+        ClassLoader classLoader = v1.getClass().getClassLoader();
+        MockHttpServletRequest request = this.request("/hello");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        HandlerExecutionChain chain = handlerMapping.getHandler(request);
+
+        handlerMapping.suspendControllers(classLoader);
+        assertThat(this.preHandle(chain, request, response)).isFalse();
+        assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        assertThat(handlerMapping.awaitControllers(classLoader, 0, TimeUnit.MILLISECONDS)).isTrue();
+    }
+
+    @Test
+    public void hostRequestsAreNotCounted() throws Exception {
+        Object v1 = this.registerController(V1Controller.class);
+        MockHttpServletRequest request = this.request("/host");
+        HandlerExecutionChain chain = handlerMapping.getHandler(request);
+        assertThat(chain.getInterceptorList()).noneMatch(InflightRequests.class::isInstance);
+
+        handlerMapping.suspendControllers(v1.getClass().getClassLoader());
+        assertThat(this.lookup("/host").getBeanType()).isSameAs(HostController.class);
+    }
+
+    @Test
+    public void moduleWildcardDoesNotShadowHostRoutes() throws Exception {
+        Object wildcard = this.registerController(WildcardController.class);
+
+        MockHttpServletRequest request = this.request("/host");
+        HandlerExecutionChain chain = handlerMapping.getHandler(request);
+        assertThat(((HandlerMethod) chain.getHandler()).getBeanType()).isSameAs(HostController.class);
+        assertThat(request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE)).isEqualTo("/host");
+
+        request = this.request("/other");
+        chain = handlerMapping.getHandler(request);
+        assertThat(((HandlerMethod) chain.getHandler()).getBeanType()).isSameAs(wildcard.getClass());
+        assertThat(request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE))
+                .isEqualTo(Map.of("name", "other"));
+        assertThat(this.lookup("/files/a/b").getBeanType()).isSameAs(wildcard.getClass());
+    }
+
+    @Test
+    public void mostSpecificRouteWinsAcrossRegistries() throws Exception {
+        Object specific = this.registerController(SpecificController.class);
+
+        assertThat(this.lookup("/api/items").getBeanType()).isSameAs(specific.getClass());
+        assertThat(this.lookup("/api/orders").getBeanType()).isSameAs(HostController.class);
+    }
+
+    @Test
+    public void moduleRouteCanBeRegisteredOnlyOnce() throws Exception {
+        this.registerController(V1Controller.class);
+
+        assertThatThrownBy(() -> this.registerController(V1Controller.class))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(this.lookup("/hello")).isNotNull();
+    }
+
+    private boolean preHandle(HandlerExecutionChain chain, MockHttpServletRequest request,
+            MockHttpServletResponse response) throws Exception {
+        for (HandlerInterceptor interceptor : chain.getInterceptorList()) {
+            if (!interceptor.preHandle(request, response, chain.getHandler())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void afterCompletion(HandlerExecutionChain chain, MockHttpServletRequest request,
+            MockHttpServletResponse response) throws Exception {
+        for (HandlerInterceptor interceptor : chain.getInterceptorList()) {
+            interceptor.afterCompletion(request, response, chain.getHandler(), null);
+        }
+    }
+
+    private Object registerController(Class<?> controllerClass) throws Exception {
+        Object controller = this.loadController(controllerClass);
+        handlerMapping.registerController(controller, candidate -> true);
+        return controller;
+    }
+
+    /**
+     * 用新的类加载器定义控制器类，模拟一个模块版本
+     */
+    private Object loadController(Class<?> controllerClass) throws Exception {
+        ClassLoader classLoader = new ModuleClassLoader(controllerClass.getName());
+        return classLoader.loadClass(controllerClass.getName()).getDeclaredConstructor().newInstance();
+    }
+
+    @Nullable
+    private HandlerMethod lookup(String path) throws Exception {
+        HandlerExecutionChain chain = handlerMapping.getHandler(this.request(path));
+        return chain == null ? null : (HandlerMethod) chain.getHandler();
+    }
+
+    private MockHttpServletRequest request(String path) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        ServletRequestPathUtils.parseAndCache(request);
+        return request;
+    }
+
+    @RestController
+    public static class HostController {
+
+        @GetMapping("/host")
+        public String host() {
+            return "host";
+        }
+
+        @GetMapping("/api/{name}")
+        public String api() {
+            return "host";
+        }
+    }
+
+    /**
+     * 只定义指定的类，其他类交给父类加载器
+     * <p>
+     * 控制器必须是顶层类：嵌套类单独定义时，新类加载器中没有对应的外部类，InnerClasses属性不一致，获取类名时抛出异常
+     */
+    private static class ModuleClassLoader extends ClassLoader {
+
+        private final String className;
+
+        ModuleClassLoader(String className) {
+            super(ControllerHandlerMappingTest.class.getClassLoader());
+            this.className = className;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(className)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (this.getClassLoadingLock(name)) {
+                Class<?> loadedClass = this.findLoadedClass(name);
+                if (loadedClass != null) {
+                    return loadedClass;
+                }
+                try (InputStream is = this.getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+                    if (is == null) {
+                        throw new ClassNotFoundException(name);
+                    }
+                    byte[] bytes = is.readAllBytes();
+                    return this.defineClass(name, bytes, 0, bytes.length);
+                } catch (IOException e) {
+                    throw new ClassNotFoundException(name, e);
+                }
+            }
+        }
+    }
+
+}
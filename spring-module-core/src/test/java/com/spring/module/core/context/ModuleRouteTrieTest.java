@@ -0,0 +1,74 @@
+package com.spring.module.core.context;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link ModuleRouteTrie}的测试
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-18
+ * @since 1.0
+ */
+public class ModuleRouteTrieTest {
+
+    @Test
+    public void staticPrefixStopsAtVariables() {
+        assertThat(ModuleRouteTrie.staticPrefix("/api/items", true)).containsExactly("api", "items");
+        assertThat(ModuleRouteTrie.staticPrefix("/api/{id}/detail", true)).containsExactly("api");
+        assertThat(ModuleRouteTrie.staticPrefix("/api/item*", true)).containsExactly("api");
+        assertThat(ModuleRouteTrie.staticPrefix("/**", true)).isEmpty();
+        assertThat(ModuleRouteTrie.staticPrefix("", true)).isEmpty();
+        assertThat(ModuleRouteTrie.staticPrefix("/API/Items", false)).containsExactly("api", "items");
+    }
+
+    @Test
+    public void longerPrefixesMatchFirst() {
+        ModuleRouteTrie<String> trie = new ModuleRouteTrie<>();
+        trie.add(List.of(List.of()), "root");
+        trie.add(List.of(List.of("api")), "api");
+        trie.add(List.of(List.of("api", "items")), "items");
+
+        assertThat(trie.match(List.of("api", "items", "1"))).containsExactly("items", "api", "root");
+        assertThat(trie.match(List.of("api", "orders"))).containsExactly("api", "root");
+        assertThat(trie.match(List.of("other"))).containsExactly("root");
+    }
+
+    @Test
+    public void targetIsReturnedOnce() {
+        ModuleRouteTrie<String> trie = new ModuleRouteTrie<>();
+        trie.add(List.of(List.of("api"), List.of("api", "items")), "module");
+
+        assertThat(trie.match(List.of("api", "items"))).containsExactly("module");
+    }
+
+    @Test
+    public void prefixesAreCounted() {
+        ModuleRouteTrie<String> trie = new ModuleRouteTrie<>();
+        assertThat(trie.isEmpty()).isTrue();
+        trie.add(List.of(List.of("api")), "module");
+        trie.add(List.of(List.of("api")), "module");
+
+        trie.remove(List.of(List.of("api")), "module");
+        assertThat(trie.match(List.of("api"))).containsExactly("module");
+        trie.remove(List.of(List.of("api")), "module");
+        assertThat(trie.match(List.of("api"))).isEmpty();
+        assertThat(trie.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void removingUnknownTargetKeepsOthers() {
+        ModuleRouteTrie<String> trie = new ModuleRouteTrie<>();
+        trie.add(List.of(List.of("api")), "a");
+        trie.add(List.of(List.of("api")), "b");
+
+        trie.remove(List.of(List.of("api")), "c");
+        trie.remove(List.of(List.of("missing")), "a");
+        trie.remove(List.of(List.of("api")), "a");
+        assertThat(trie.match(List.of("api"))).containsExactly("b");
+    }
+
+}
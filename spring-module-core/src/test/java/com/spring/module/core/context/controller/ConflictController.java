@@ -0,0 +1,26 @@
+package com.spring.module.core.context.controller;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * 路由和宿主应用冲突的模块控制器
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-18
+ * @since 1.0
+ */
+@RestController
+public class ConflictController {
+
+    @GetMapping("/hello")
+    public String hello() {
+        return "conflict";
+    }
+
+    @GetMapping("/host")
+    public String host() {
+        return "conflict";
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.spring.module.core.context.controller;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * 模块第一个版本的控制器
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-18
+ * @since 1.0
+ */
+@RestController
+public class V1Controller {
+
+    @GetMapping("/hello")
+    public String hello() {
+        return "v1";
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.spring.module.core.context.controller;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * 模块第二个版本的控制器，保留旧版本的路由并新增路由
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-18
+ * @since 1.0
+ */
+@RestController
+public class V2Controller {
+
+    @GetMapping("/hello")
+    public String hello() {
+        return "v2";
+    }
+
+    @GetMapping("/v2")
+    public String added() {
+        return "v2";
+    }
+
+}
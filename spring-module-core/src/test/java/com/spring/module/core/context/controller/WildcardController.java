@@ -0,0 +1,26 @@
+package com.spring.module.core.context.controller;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * 根路径通配和多级通配路由的模块控制器
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-18
+ * @since 1.0
+ */
+@RestController
+public class WildcardController {
+
+    @GetMapping("/{name}")
+    public String name() {
+        return "wildcard";
+    }
+
+    @GetMapping("/files/**")
+    public String files() {
+        return "wildcard";
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.spring.module.core.loading;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link JarClassLoader}读取本地JAR包和嵌套JAR包中资源的测试
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-18
+ * @since 1.0
+ */
+public class JarClassLoaderTest {
+
+    private static final String RESOURCE_NAME = "templates/module page.html";
+
+    private Path workDir;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        workDir = Files.createTempDirectory("jar-class-loader-test");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(workDir);
+    }
+
+    @Test
+    public void readsResourcesFromLocalJar() throws IOException {
+        Path jarFile = workDir.resolve("module.jar");
+        Files.write(jarFile, jar());
+        try (JarClassLoader classLoader = new JarClassLoader(null)) {
+            classLoader.addJar(jarFile.toFile());
+            this.assertResource(classLoader);
+        }
+    }
+
+    @Test
+    public void readsResourcesFromNestedJar() throws IOException {
+        Path archiveFile = workDir.resolve("module.zip");
+        byte[] jar = jar();
+        try (OutputStream os = Files.newOutputStream(archiveFile); ZipOutputStream zos = new ZipOutputStream(os)) {
+            // 嵌套的JAR包必须未压缩存储
+            ZipEntry entry = new ZipEntry("module/lib/module.jar");
+            CRC32 crc = new CRC32();
+            crc.update(jar);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(jar.length);
+            entry.setCrc(crc.getValue());
+            zos.putNextEntry(entry);
+            zos.write(jar);
+            zos.closeEntry();
+        }
+        try (JarClassLoader classLoader = new JarClassLoader(null)) {
+            classLoader.addNestedJar(archiveFile.toFile(), "module/lib/module.jar");
+            this.assertResource(classLoader);
+        }
+    }
+
+    private void assertResource(JarClassLoader classLoader) throws IOException {
+        URL resource = classLoader.findResource(RESOURCE_NAME);
+        assertThat(resource).isNotNull();
+        try (InputStream is = resource.openStream()) {
+            assertThat(new String(is.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("page");
+        }
+        assertThat(classLoader.findResource("templates/missing.html")).isNull();
+    }
+
+    private static byte[] jar() throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(os)) {
+            zos.putNextEntry(new ZipEntry(RESOURCE_NAME));
+            zos.write("page".getBytes(StandardCharsets.UTF_8));
+            zos.closeEntry();
+        }
+        return os.toByteArray();
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.spring.module.core.loading;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link JarFilePool}按访问时间淘汰的测试
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-18
+ * @since 1.0
+ */
+public class JarFilePoolTest {
+
+    private Path workDir;
+    private final JarFilePool pool = new JarFilePool(2);
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        workDir = Files.createTempDirectory("jar-file-pool-test");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(workDir);
+    }
+
+    @Test
+    public void leastRecentlyUsedJarIsEvicted() throws IOException {
+        try (IndexedJar a = this.open("a"); IndexedJar b = this.open("b")) {
+            // a在b之后访问，打开c时淘汰b
+            assertThat(a.hasEntry("a.txt")).isTrue();
+            try (IndexedJar c = this.open("c")) {
+                assertThat(pool.getOpenCount()).isEqualTo(2);
+                assertThat(pool.getEvictionCount()).isEqualTo(1);
+                assertThat(a.jarFile).isNotNull();
+                assertThat(b.jarFile).isNull();
+
+                // 再次访问时重新打开
+                assertThat(b.hasEntry("b.txt")).isTrue();
+                assertThat(pool.getReopenCount()).isEqualTo(1);
+                assertThat(pool.getOpenCount()).isEqualTo(2);
+                assertThat(c.jarFile).isNotNull();
+            }
+        }
+        assertThat(pool.getOpenCount()).isZero();
+    }
+
+    @Test
+    public void pinnedJarIsNotEvicted() throws IOException {
+        pool.setMaxOpenFiles(1);
+        try (IndexedJar a = this.open("a")) {
+            // 读取a期间打开b，a是最久未使用的但是正在使用，只能淘汰b
+            IndexedJar b = a.withJarFile(jarFile -> this.open("b"));
+            try (b) {
+                assertThat(a.jarFile).isNotNull();
+                assertThat(b.jarFile).isNull();
+            }
+        }
+    }
+
+    private IndexedJar open(String name) throws IOException {
+        File file = workDir.resolve(name + ".jar").toFile();
+        try (OutputStream os = Files.newOutputStream(file.toPath()); JarOutputStream jos = new JarOutputStream(os)) {
+            jos.putNextEntry(new JarEntry(name + ".txt"));
+            jos.closeEntry();
+        }
+        return new IndexedJar(file.toURI().toURL(), IndexedJar.toBaseUrl(file.toURI().toURL()),
+                IndexedJar.fileOpener(file), pool);
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.spring.module.core.loading;
+
+import com.abm.module.api.TriadMetadata;
+import org.jgrapht.Graph;
+import org.jgrapht.graph.DefaultEdge;
+import org.jgrapht.graph.DirectedAcyclicGraph;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link SharedLibraryRegistry}的测试，依赖不需要真实的JAR包，只验证引用计数和关闭回调
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-18
+ * @since 1.0
+ */
+public class SharedLibraryRegistryTest {
+
+    private static final TriadMetadata MODULE = TriadMetadata.create("com.example:module:jar:1.0");
+    private static final TriadMetadata COMMONS = TriadMetadata.create("com.example:commons:jar:1.0");
+    private static final TriadMetadata CLIENT = TriadMetadata.create("com.example:client:jar:1.0");
+
+    private final SharedLibraryRegistry registry = new SharedLibraryRegistry(getClass().getClassLoader());
+    private final List<SharedLibraryClassLoader> closed = new ArrayList<>();
+
+    {
+        registry.addCloseListener(closed::add);
+    }
+
+    @Test
+    public void closeListenerRunsOnLastRelease() throws Exception {
+        Graph<TriadMetadata, DefaultEdge> graph = graph();
+        SharedLibraryClassLoader first = this.acquire(Set.of(COMMONS), graph).get(COMMONS);
+        SharedLibraryClassLoader second = this.acquire(Set.of(COMMONS), graph).get(COMMONS);
+        assertThat(second).isSameAs(first);
+
+        registry.release(first);
+        assertThat(closed).isEmpty();
+        assertThat(registry.getSharedLibraries()).containsExactly(COMMONS);
+
+        registry.release(second);
+        assertThat(closed).containsExactly(first);
+        assertThat(registry.getSharedLibraries()).isEmpty();
+    }
+
+    @Test
+    public void closeListenerRunsForReleasedDependencies() throws Exception {
+        Map<TriadMetadata, SharedLibraryClassLoader> acquired = this.acquire(Set.of(COMMONS, CLIENT), graph());
+        SharedLibraryClassLoader commons = acquired.get(COMMONS);
+        SharedLibraryClassLoader client = acquired.get(CLIENT);
+
+        registry.release(commons);
+        assertThat(closed).isEmpty();
+
+        // client持有commons的引用，关闭client时一起释放
+        registry.release(client);
+        assertThat(closed).containsExactly(client, commons);
+    }
+
+    @Test
+    public void failingListenerDoesNotStopRelease() throws Exception {
+        registry.addCloseListener(classLoader -> {
+            throw new IllegalStateException("listener");
+        });
+        List<SharedLibraryClassLoader> afterFailure = new ArrayList<>();
+        registry.addCloseListener(afterFailure::add);
+
+        SharedLibraryClassLoader commons = this.acquire(Set.of(COMMONS), graph()).get(COMMONS);
+        registry.release(commons);
+        assertThat(closed).containsExactly(commons);
+        assertThat(afterFailure).containsExactly(commons);
+        assertThat(registry.getSharedLibraries()).isEmpty();
+    }
+
+    private Map<TriadMetadata, SharedLibraryClassLoader> acquire(Set<TriadMetadata> candidates,
+            Graph<TriadMetadata, DefaultEdge> graph) throws Exception {
+        return registry.acquire(candidates, graph, Set.of(MODULE), (classLoader, metadata) -> {
+        });
+    }
+
+    /**
+     * 模块依赖client和commons，client依赖commons
+     */
+    private static Graph<TriadMetadata, DefaultEdge> graph() {
+        Graph<TriadMetadata, DefaultEdge> graph = new DirectedAcyclicGraph<>(DefaultEdge.class);
+        graph.addVertex(MODULE);
+        graph.addVertex(COMMONS);
+        graph.addVertex(CLIENT);
+        graph.addEdge(COMMONS, CLIENT);
+        graph.addEdge(CLIENT, MODULE);
+        graph.addEdge(COMMONS, MODULE);
+        return graph;
+    }
+
+}
@@ -0,0 +1,156 @@
+package com.spring.module.core.loading;
+
+import com.spring.module.core.autoconfigure.ModuleProperties;
+import com.spring.module.core.autoconfigure.ModuleProperties.LoadingMode;
+import com.spring.module.core.exception.ModuleLoadException;
+import com.spring.module.core.parse.ModuleDependency;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * {@link SpringModuleLoader}解压模块包的测试，依赖分析使用空的依赖信息
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-18
+ * @since 1.0
+ */
+public class SpringModuleLoaderTest {
+
+    private Path packagesPath;
+    private ModuleProperties moduleProperties;
+    private SpringModuleLoader moduleLoader;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        packagesPath = Files.createTempDirectory("module-loader-test");
+        moduleProperties = new ModuleProperties();
+        moduleProperties.setPackagesPath(packagesPath.toString());
+        moduleLoader = new SpringModuleLoader(moduleProperties);
+        moduleLoader.setDependencyAnalyzer(resource -> new ModuleDependency());
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(packagesPath);
+    }
+
+    @Test
+    public void extractedModuleCanBeUploadedTwice() throws IOException {
+        moduleProperties.setLoadingMode(LoadingMode.EXTRACT);
+        this.uploadTwice();
+    }
+
+    @Test
+    public void nestedModuleCanBeUploadedTwice() throws IOException {
+        moduleProperties.setLoadingMode(LoadingMode.NESTED);
+        ModuleInfo moduleInfo = this.uploadTwice();
+        assertThat(moduleInfo.getArchiveFile().toPath()).isEqualTo(packagesPath.resolve("demo.zip"));
+        assertThat(Files.exists(packagesPath.resolve("demo/demo.jar"))).isFalse();
+    }
+
+    @Test
+    public void nestedSpooledModuleIsMovedIntoPlace() throws IOException {
+        moduleProperties.setLoadingMode(LoadingMode.NESTED);
+        Path spoolFile = Files.createTempFile(packagesPath, "spool", ".zip");
+        try (InputStream is = zip(moduleEntries("v1"))) {
+            Files.copy(is, spoolFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        ModuleInfo moduleInfo = moduleLoader.loadingTempModule(packagesPath, spoolFile, null, null);
+        assertThat(moduleInfo.getArchiveFile().toPath()).isEqualTo(packagesPath.resolve("demo.zip"));
+        assertThat(Files.exists(spoolFile)).isFalse();
+    }
+
+    @Test
+    public void archiveDigestIsVerifiedWhileExtracting() throws IOException {
+        Path archiveFile = Files.createTempFile("module", ".zip");
+        try {
+            try (InputStream is = zip(moduleEntries("v1"))) {
+                Files.copy(is, archiveFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String digest = SharedLibraryStore.digest(archiveFile);
+
+            assertThatThrownBy(() -> moduleLoader.loadingExtractedModule(packagesPath, archiveFile, null,
+                    moduleLoader.createArchiveVerifier("0".repeat(64))))
+                    .isInstanceOf(ModuleLoadException.class);
+            assertThat(Files.exists(packagesPath.resolve("demo"))).isFalse();
+
+            ModuleInfo moduleInfo = moduleLoader.loadingExtractedModule(packagesPath, archiveFile, null,
+                    moduleLoader.createArchiveVerifier(digest));
+            assertThat(Files.readString(moduleInfo.getJarFile().toPath())).isEqualTo("v1");
+        } finally {
+            Files.deleteIfExists(archiveFile);
+        }
+    }
+
+    @Test
+    public void entriesOutsideTheModuleDirectoryAreRejected() throws IOException {
+        moduleProperties.setLoadingMode(LoadingMode.EXTRACT);
+        Map<String, String> entries = moduleEntries("v1");
+        entries.put("demo/../../evil.txt", "evil");
+
+        assertThatThrownBy(() -> moduleLoader.extractSpecModule(zip(entries), null))
+                .isInstanceOf(ZipException.class);
+        assertThat(Files.exists(packagesPath.getParent().resolve("evil.txt"))).isFalse();
+        assertThat(Files.exists(packagesPath.resolve("demo"))).isFalse();
+    }
+
+    /**
+     * 第二次上传的模块包内容不同，覆盖后只保留新的文件
+     */
+    private ModuleInfo uploadTwice() throws IOException {
+        Map<String, String> first = moduleEntries("v1");
+        first.put("demo/application-old.properties", "old");
+        moduleLoader.extractSpecModule(zip(first), null);
+
+        ModuleInfo moduleInfo = moduleLoader.extractSpecModule(zip(moduleEntries("v2")), null);
+        Path rootPath = packagesPath.resolve("demo");
+        assertThat(moduleInfo.getJarFile().toPath()).isEqualTo(rootPath.resolve("demo.jar"));
+        assertThat(Files.readString(rootPath.resolve("dependencies.dot"))).isEqualTo("v2");
+        assertThat(Files.exists(rootPath.resolve("application-old.properties"))).isFalse();
+        return moduleInfo;
+    }
+
+    private static Map<String, String> moduleEntries(String version) {
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("demo/", null);
+        entries.put("demo/lib/", null);
+        entries.put("demo/demo.jar", version);
+        entries.put("demo/dependencies.dot", version);
+        return entries;
+    }
+
+    private static InputStream zip(Map<String, String> entries) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(os)) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                zos.putNextEntry(new ZipEntry(entry.getKey()));
+                if (entry.getValue() != null) {
+                    zos.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                }
+                zos.closeEntry();
+            }
+        }
+        return new ByteArrayInputStream(os.toByteArray());
+    }
+
+}
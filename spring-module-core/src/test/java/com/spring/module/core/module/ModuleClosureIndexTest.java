@@ -0,0 +1,98 @@
+package com.spring.module.core.module;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * {@link ModuleClosureIndex}的测试
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-18
+ * @since 1.0
+ */
+public class ModuleClosureIndexTest {
+
+    /**
+     * a <- b <- d, a <- c <- d, e没有依赖
+     */
+    private ModuleClosureIndex diamond() {
+        ModuleClosureIndex index = new ModuleClosureIndex();
+        index.addModule("a", List.of());
+        index.addModule("b", List.of("a"));
+        index.addModule("c", List.of("a"));
+        index.addModule("d", List.of("b", "c"));
+        index.addModule("e", List.of());
+        return index;
+    }
+
+    @Test
+    public void transitiveClosure() {
+        ModuleClosureIndex index = this.diamond();
+
+        assertThat(index.getAncestors("d")).containsExactlyInAnyOrder("a", "b", "c");
+        assertThat(index.getDescendants("a")).containsExactlyInAnyOrder("b", "c", "d");
+        assertThat(index.isAncestor("a", "d")).isTrue();
+        assertThat(index.isAncestor("d", "a")).isFalse();
+        assertThat(index.isAncestor("e", "d")).isFalse();
+        assertThat(index.hasDescendants("b")).isTrue();
+        assertThat(index.hasDescendants("e")).isFalse();
+        assertThat(index.getAncestors("missing")).isEmpty();
+    }
+
+    @Test
+    public void mergeModulesKeepsTopLevelModulesInOrder() {
+        ModuleClosureIndex index = this.diamond();
+
+        assertThat(index.mergeModules(List.of("a", "e", "d", "b"))).containsExactly("e", "d");
+        assertThat(index.mergeModules(List.of("b", "c"))).containsExactly("b", "c");
+        assertThat(index.mergeModules(List.of("unknown", "a", "b"))).containsExactly("unknown", "b");
+    }
+
+    @Test
+    public void removeModuleWithDescendantsFails() {
+        ModuleClosureIndex index = this.diamond();
+
+        assertThatThrownBy(() -> index.removeModule("a")).isInstanceOf(IllegalStateException.class);
+        assertThat(index.removeModule("d")).isTrue();
+        assertThat(index.removeModule("d")).isFalse();
+        assertThat(index.getDescendants("a")).containsExactlyInAnyOrder("b", "c");
+    }
+
+    @Test
+    public void addModuleValidatesNames() {
+        ModuleClosureIndex index = this.diamond();
+
+        assertThatThrownBy(() -> index.addModule("a", List.of())).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> index.addModule("f", List.of("missing"))).isInstanceOf(IllegalStateException.class);
+        assertThat(index.getAncestors("f")).isEmpty();
+    }
+
+    @Test
+    public void reusedIdDoesNotInheritOldRelations() {
+        ModuleClosureIndex index = this.diamond();
+        index.removeModule("d");
+        index.addModule("f", List.of("e"));
+
+        assertThat(index.getAncestors("f")).containsExactly("e");
+        assertThat(index.getDescendants("b")).isEmpty();
+        assertThat(index.getDescendants("e")).containsExactly("f");
+    }
+
+    @Test
+    public void growsBeyondInitialCapacity() {
+        ModuleClosureIndex index = new ModuleClosureIndex();
+        index.addModule("m0", List.of());
+        for (int i = 1; i < 100; i++) {
+            index.addModule("m" + i, List.of("m" + (i - 1)));
+        }
+
+        assertThat(index.getAncestors("m99")).hasSize(99);
+        assertThat(index.getDescendants("m0")).hasSize(99);
+        assertThat(index.isAncestor("m17", "m80")).isTrue();
+    }
+
+}
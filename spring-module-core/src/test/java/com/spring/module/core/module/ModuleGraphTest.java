@@ -0,0 +1,86 @@
+package com.spring.module.core.module;
+
+import org.jgrapht.Graph;
+import org.jgrapht.graph.DefaultEdge;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * {@link ModuleGraph}的快照测试
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-18
+ * @since 1.0
+ */
+public class ModuleGraphTest {
+
+    @Test
+    public void snapshotIsCachedUntilChanged() {
+        ModuleGraph moduleGraph = new ModuleGraph();
+        moduleGraph.addModule("a", List.of());
+        moduleGraph.addModule("b", List.of("a"));
+
+        Graph<String, DefaultEdge> snapshot = moduleGraph.getSnapshot();
+        assertThat(moduleGraph.getSnapshot()).isSameAs(snapshot);
+        assertThat(snapshot.containsEdge("a", "b")).isTrue();
+
+        moduleGraph.addModule("c", List.of("b"));
+        Graph<String, DefaultEdge> next = moduleGraph.getSnapshot();
+        assertThat(next).isNotSameAs(snapshot);
+        assertThat(next.vertexSet()).containsExactlyInAnyOrder("a", "b", "c");
+        // 旧快照不受之后的修改影响
+        assertThat(snapshot.vertexSet()).containsExactlyInAnyOrder("a", "b");
+    }
+
+    @Test
+    public void snapshotIsUnmodifiable() {
+        ModuleGraph moduleGraph = new ModuleGraph();
+        moduleGraph.addModule("a", List.of());
+
+        assertThatThrownBy(() -> moduleGraph.getSnapshot().addVertex("b"))
+                .isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> moduleGraph.getReversedSnapshot().removeVertex("a"))
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    public void reversedSnapshotPointsToParents() {
+        ModuleGraph moduleGraph = new ModuleGraph();
+        moduleGraph.addModule("a", List.of());
+        moduleGraph.addModule("b", List.of("a"));
+
+        Graph<String, DefaultEdge> reversed = moduleGraph.getReversedSnapshot();
+        assertThat(reversed.containsEdge("b", "a")).isTrue();
+        assertThat(reversed.containsEdge("a", "b")).isFalse();
+    }
+
+    @Test
+    public void removeModuleInvalidatesSnapshot() {
+        ModuleGraph moduleGraph = new ModuleGraph();
+        moduleGraph.addModule("a", List.of());
+        moduleGraph.addModule("b", List.of("a"));
+        Graph<String, DefaultEdge> snapshot = moduleGraph.getSnapshot();
+
+        assertThat(moduleGraph.removeModule("b")).isTrue();
+        assertThat(moduleGraph.removeModule("b")).isFalse();
+        assertThat(moduleGraph.getSnapshot()).isNotSameAs(snapshot);
+        assertThat(moduleGraph.getSnapshot().vertexSet()).containsExactly("a");
+        assertThat(moduleGraph.childCount("a")).isZero();
+    }
+
+    @Test
+    public void failedAddLeavesGraphUnchanged() {
+        ModuleGraph moduleGraph = new ModuleGraph();
+        moduleGraph.addModule("a", List.of());
+
+        assertThatThrownBy(() -> moduleGraph.addModule("b", List.of("a", "missing")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(moduleGraph.getSnapshot().vertexSet()).containsExactly("a");
+        assertThat(moduleGraph.getChildModules("a")).isEmpty();
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.spring.module.core.module;
+
+import com.spring.module.core.exception.ModuleRegistryException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * {@link AbstractGraphModulesRegistrar.ModuleReservation}的测试，刷新期间的安装状态不持有分段锁
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-18
+ * @since 1.0
+ */
+public class ModuleReservationTest {
+
+    private final ApplicationModulesRegistrar registrar = new ApplicationModulesRegistrar();
+
+    @Test
+    public void sameModuleIsRejectedWhileInstalling() throws Exception {
+        try (AbstractGraphModulesRegistrar.ModuleReservation ignored = registrar.reserveModule("b", List.of("a"))) {
+            // 其他线程不会阻塞在分段锁上，而是直接失败
+            CompletableFuture<?> concurrent = CompletableFuture.runAsync(() -> registrar.reserveModule("b", List.of()));
+            assertThatThrownBy(() -> concurrent.get(5, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(ModuleRegistryException.class);
+
+            // 父模块被引用时不持有它的锁，兄弟模块可以同时安装
+            CompletableFuture.runAsync(() -> registrar.reserveModule("c", List.of("a")).close()).get(5, TimeUnit.SECONDS);
+        }
+        registrar.reserveModule("b", List.of("a")).close();
+    }
+
+}
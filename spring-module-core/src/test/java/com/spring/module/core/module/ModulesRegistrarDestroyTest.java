@@ -0,0 +1,89 @@
+package com.spring.module.core.module;
+
+import com.spring.module.core.context.AnnotationApplicationModuleContext;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link AbstractGraphModulesRegistrar#destroy()}的测试，模块上下文不刷新，只验证关闭顺序、类加载器和超时报告
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-18
+ * @since 1.0
+ */
+public class ModulesRegistrarDestroyTest {
+
+    private final List<String> closedClassLoaders = new CopyOnWriteArrayList<>();
+    private final List<String> hungModules = new CopyOnWriteArrayList<>();
+
+    private final ApplicationModulesRegistrar registrar = new ApplicationModulesRegistrar() {
+
+        @Override
+        protected void closeModuleClassLoader(AnnotationApplicationModuleContext applicationContext) {
+            closedClassLoaders.add(applicationContext.getId());
+        }
+
+        @Override
+        protected void reportHungModule(String moduleName, Thread thread) {
+            hungModules.add(moduleName);
+        }
+    };
+
+    @Test
+    public void classLoadersAreClosedWithTheirContexts() {
+        registrar.installModuleApplication(context("a", null));
+        AnnotationApplicationModuleContext b = context("b", null);
+        b.addParent(registrar.applicationContext("a"));
+        registrar.installModuleApplication(b);
+
+        registrar.destroy();
+        assertThat(closedClassLoaders).containsExactly("b", "a");
+        assertThat(hungModules).isEmpty();
+    }
+
+    @Test
+    public void queuedModulesAreNotReportedAsHung() {
+        CountDownLatch hung = new CountDownLatch(1);
+        registrar.setDestroyParallelism(1);
+        registrar.setDestroyTimeout(Duration.ofMillis(200));
+        // 先开始关闭的模块卡住，另一个模块一直在排队
+        registrar.installModuleApplication(context("a", hung));
+        registrar.installModuleApplication(context("b", hung));
+        try {
+            registrar.destroy();
+            assertThat(hungModules).hasSize(1);
+            assertThat(closedClassLoaders).isEmpty();
+        } finally {
+            hung.countDown();
+        }
+    }
+
+    /**
+     * @param closeLatch 不为null时关闭上下文阻塞到计数归零，忽略中断
+     */
+    private static AnnotationApplicationModuleContext context(String moduleName, CountDownLatch closeLatch) {
+        AnnotationApplicationModuleContext applicationContext = new AnnotationApplicationModuleContext() {
+            @Override
+            public void close() {
+                // 关闭线程池时的中断也不能让卡住的模块继续关闭
+                while (closeLatch != null) {
+                    try {
+                        closeLatch.await();
+                        break;
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                super.close();
+            }
+        };
+        applicationContext.setId(moduleName);
+        return applicationContext;
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.spring.module.core.module;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link StripedModuleLock}的测试，模块名a、b、c在1024个分段中互不冲突
+ *
+ * @author <a href="mailto:545896770@qq.com">DearYang</a>
+ * @date 2024-02-18
+ * @since 1.0
+ */
+public class StripedModuleLockTest {
+
+    private final StripedModuleLock moduleLock = new StripedModuleLock(1024);
+
+    @Test
+    public void sameModuleIsExclusive() throws Exception {
+        Waiter waiter;
+        try (StripedModuleLock.ModuleLock ignored = moduleLock.lock("a")) {
+            waiter = new Waiter(() -> moduleLock.lock("a"));
+            assertThat(waiter.acquired(100)).isFalse();
+        }
+        assertThat(waiter.acquired(5000)).isTrue();
+        waiter.release();
+    }
+
+    @Test
+    public void siblingsShareParent() throws Exception {
+        try (StripedModuleLock.ModuleLock ignored = moduleLock.lock("b", List.of("a"))) {
+            Waiter waiter = new Waiter(() -> moduleLock.lock("c", List.of("a")));
+            assertThat(waiter.acquired(5000)).isTrue();
+            waiter.release();
+        }
+    }
+
+    @Test
+    public void parentCannotBeLockedWhileChildInstalling() throws Exception {
+        Waiter waiter;
+        try (StripedModuleLock.ModuleLock ignored = moduleLock.lock("b", List.of("a"))) {
+            waiter = new Waiter(() -> moduleLock.lock("a"));
+            assertThat(waiter.acquired(100)).isFalse();
+        }
+        assertThat(waiter.acquired(5000)).isTrue();
+        waiter.release();
+    }
+
+    @Test
+    public void nestedLockIsReentrant() throws Exception {
+        try (StripedModuleLock.ModuleLock outer = moduleLock.lock("b", List.of("a", "c"))) {
+            // 注册时只锁定合并后的部分父模块
+            try (StripedModuleLock.ModuleLock inner = moduleLock.lock("b", List.of("a"))) {
+                assertThat(inner).isNotNull();
+            }
+        }
+        Waiter waiter = new Waiter(() -> moduleLock.lock("a"));
+        assertThat(waiter.acquired(5000)).isTrue();
+        waiter.release();
+    }
+
+    @Test
+    public void sharedStripeTakesOnlyWriteLock() throws Exception {
+        StripedModuleLock singleStripe = new StripedModuleLock(1);
+        StripedModuleLock.ModuleLock outer = singleStripe.lock("b", List.of("a"));
+        try (StripedModuleLock.ModuleLock inner = singleStripe.lock("b", List.of("a"))) {
+            assertThat(inner).isNotNull();
+        }
+        Waiter waiter = new Waiter(() -> singleStripe.lock("c"));
+        assertThat(waiter.acquired(100)).isFalse();
+        outer.close();
+        assertThat(waiter.acquired(5000)).isTrue();
+        waiter.release();
+    }
+
+    /**
+     * 在另一个线程中加锁，直到调用{@link #release()}才释放
+     */
+    private static class Waiter {
+
+        private final CountDownLatch acquired = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final Thread thread;
+
+        Waiter(Supplier<StripedModuleLock.ModuleLock> locker) {
+            this.thread = new Thread(() -> {
+                try (StripedModuleLock.ModuleLock ignored = locker.get()) {
+                    acquired.countDown();
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        boolean acquired(long millis) throws InterruptedException {
+            return acquired.await(millis, TimeUnit.MILLISECONDS);
+        }
+
+        void release() throws InterruptedException {
+            release.countDown();
+            thread.join(5000);
+        }
+    }
+
+}